@@ -73,7 +73,7 @@ public class AIOInterface extends PlayerDevice {
                     xdr.close ();
 
                     // Buffer for reading voltages
-                    buffer = new byte[PLAYER_AIO_MAX_INPUTS * 4];
+                    buffer = new byte[(voltagesCount + 1) * 4];
                     // Read voltages add one for the voltage count
                     is.readFully (buffer, 0, (voltagesCount + 1) * 4);
                     xdr = new XdrBufferDecodingStream (buffer);
@@ -32,6 +32,9 @@ package javaclient3;
  */
 public abstract class AbstractPositionDevice extends PlayerDevice {
 
+    // Odometry history, or null if disabled
+    protected OdometryHistory history;
+
     /**
      * Abstract constructor for each AbstractPositionDevice.
      * @param plc a reference to the PlayerClient object
@@ -42,4 +45,23 @@ public abstract class AbstractPositionDevice extends PlayerDevice {
     public abstract double getY     ();
     public abstract double getYaw   ();
     public abstract void  setSpeed (double speed, double turnrate);
+
+    /**
+     * Enable or disable the odometry history. When enabled, the pose and
+     * velocity of every data packet is recorded along with its timestamp.
+     * Changing the size discards the recorded samples.
+     * @param size number of samples kept, or 0 to disable the history
+     */
+    public synchronized void setHistorySize (int size) {
+        this.history = (size > 0) ? new OdometryHistory (size) : null;
+    }
+
+    /**
+     * Get the odometry history.
+     * @return the history, or null if disabled
+     * @see #setHistorySize(int)
+     */
+    public OdometryHistory getHistory () {
+        return this.history;
+    }
 }
@@ -85,7 +85,7 @@ public class AudioDSPInterface extends PlayerDevice {
                     xdr.close ();
                     
                     // Buffer for reading frequencies
-                    buffer = new byte[PLAYER_AUDIODSP_MAX_FREQS * 4];
+                    buffer = new byte[frequencyCount * 4];
                     // Read frequency values
                     is.readFully (buffer, 0, frequencyCount * 4);
                     xdr = new XdrBufferDecodingStream (buffer);
@@ -107,7 +107,7 @@ public class AudioDSPInterface extends PlayerDevice {
                     xdr.close ();
                     
                     // Buffer for reading amplitudes
-                    buffer = new byte[PLAYER_AUDIODSP_MAX_FREQS * 4];
+                    buffer = new byte[amplitudeCount * 4];
                     // Read amplitude values
                     is.readFully (buffer, 0, amplitudeCount * 4);
                     xdr = new XdrBufferDecodingStream (buffer);
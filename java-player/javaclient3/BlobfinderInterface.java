@@ -22,6 +22,7 @@
 package javaclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -53,12 +54,34 @@ public class BlobfinderInterface extends PlayerDevice {
     private PlayerBlobfinderData pbdata;
     private boolean              readyPbdata = false;
 
+    // Keep the raw payload and decode the blobs on first access
+    private boolean              lazyDecoding = false;
+
     /**
      * Constructor for BlobfinderInterface.
      * @param pc a reference to the PlayerClient object
      */
     public BlobfinderInterface (PlayerClient pc) { super(pc); }
 
+    /**
+     * Enable or disable lazy decoding. In lazy mode the blobs are kept in
+     * a raw payload buffer taken from the client's buffer pool, and can be
+     * read through a flyweight view without creating any objects. Consumers
+     * should call {@link PlayerBlobfinderData#release()} when done with the data so
+     * the buffer can be reused.
+     * @param lazy true to enable lazy decoding, false to decode eagerly
+     */
+    public synchronized void setLazyDecoding (boolean lazy) {
+        this.lazyDecoding = lazy;
+    }
+
+    /**
+     * Check if lazy decoding is enabled.
+     * @return true if the blobs are decoded lazily, false otherwise
+     * @see #setLazyDecoding(boolean)
+     */
+    public boolean isLazyDecoding () { return this.lazyDecoding; }
+
     /**
      * Read the list of detected blobs.
      */
@@ -68,6 +91,21 @@ public class BlobfinderInterface extends PlayerDevice {
                 case PLAYER_BLOBFINDER_DATA_BLOBS: {
                     this.timestamp = header.getTimestamp();
 
+                    if (lazyDecoding) {
+                        // Read width, height, blobs_count and the blobs at once
+                        byte[] payload = readPayload (header.getSize ());
+                        ByteBuffer bb = ByteBuffer.wrap (payload);
+
+                        pbdata = new PlayerBlobfinderData ();
+                        pbdata.setWidth  (bb.getInt (0));
+                        pbdata.setHeight (bb.getInt (4));
+                        pbdata.setPayload (payload, 16, bb.getInt (8),
+                                pc.getBufferPool ());
+
+                        readyPbdata = true;
+                        break;
+                    }
+
                     // Buffer for reading width, height, blobs_count
                     byte[] buffer = new byte[16];
                     // Read width, height, blobs_count
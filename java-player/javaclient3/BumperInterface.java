@@ -85,11 +85,11 @@ public class BumperInterface extends PlayerDevice {
                     xdr.close ();
                     
                     // Buffer for reading bumper values (non XDR)
-                    buffer = new byte[PLAYER_BUMPER_MAX_SAMPLES];
+                    byte[] bumpers = new byte[bumpersCount];
                     // Read bumper values
-                    is.readFully (buffer, 0, bumpersCount);
+                    is.readFully (bumpers, 0, bumpersCount);
                     pbdata.setBumpers_count (bumpersCount);        // the number of valid bumper readings
-                    pbdata.setBumpers       (buffer);            // array of bumper values     
+                    pbdata.setBumpers       (bumpers);            // array of bumper values     
                     
                     // Take care of the residual zero bytes
                     if ((bumpersCount % 4) != 0)
@@ -166,7 +166,7 @@ public class BumperInterface extends PlayerDevice {
             xdr.close ();
             
             // Buffer for reading bumper geometry values
-            buffer = new byte[PLAYER_BUMPER_MAX_SAMPLES * 20];
+            buffer = new byte[bumpersDefCount * 20];
             // Read bumper geometry values
             is.readFully (buffer, 0, bumpersDefCount * 20);
             xdr = new XdrBufferDecodingStream (buffer);
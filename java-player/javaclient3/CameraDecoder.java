@@ -0,0 +1,348 @@
+/*
+ *  Player Java Client 3 - CameraDecoder.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import javaclient3.structures.PlayerConstants;
+import javaclient3.structures.camera.PlayerCameraFrame;
+import javaclient3.structures.camera.PlayerCameraFramePool;
+
+/**
+ * Decode stage for camera frames. Once attached to a camera with
+ * {@link CameraInterface#setDecoder(CameraDecoder)}, every frame read by
+ * the camera is handed to the decoder, JPEG compressed frames are decoded
+ * exactly once on a bounded pool of worker threads, and the resulting raw
+ * frames (RGB888, or MONO8 for grey images) are published to all
+ * registered {@link CameraFrameListener}s. Raw frames are published as
+ * they are.
+ * <br><br>
+ * Only the most recent frame waits for a worker: a frame superseded by a
+ * newer one before its decoding started is dropped, so a slow decoder
+ * never builds a backlog and never holds up the thread reading from the
+ * server. Decoded images are written into frames taken from a
+ * {@link PlayerCameraFramePool}.
+ * @author agent
+ */
+public class CameraDecoder implements PlayerConstants {
+
+    // Logging support
+    private Logger logger = Logger.getLogger (CameraDecoder.class.getName ());
+
+    // Worker threads
+    private final ThreadPoolExecutor executor;
+    private final int                threads;
+    // Pool decoded images are written to
+    private final PlayerCameraFramePool outputPool;
+    // Subscribers
+    private final CopyOnWriteArrayList<CameraFrameListener> listeners =
+        new CopyOnWriteArrayList<CameraFrameListener> ();
+
+    // Latest frame waiting for a worker, holding one reference
+    private PlayerCameraFrame pending;
+    // Number of workers scheduled or running
+    private int    active;
+    // Timestamp of the latest published frame
+    private double published = Double.NEGATIVE_INFINITY;
+    // Statistics
+    private long   decodedCount;
+    private long   droppedCount;
+
+    private final Runnable worker = new Runnable () {
+        public void run () {
+            drain ();
+        }
+    };
+
+    /**
+     * Create a decoder using one worker thread.
+     */
+    public CameraDecoder () {
+        this (1);
+    }
+
+    /**
+     * Create a decoder.
+     * @param nThreads number of worker threads
+     */
+    public CameraDecoder (int nThreads) {
+        this (nThreads, new PlayerCameraFramePool (false, nThreads + 2));
+    }
+
+    /**
+     * Create a decoder writing decoded images to a given pool.
+     * @param nThreads number of worker threads
+     * @param pool the pool decoded frames are taken from
+     */
+    public CameraDecoder (int nThreads, PlayerCameraFramePool pool) {
+        if (nThreads < 1)
+            throw new IllegalArgumentException
+                ("At least one thread is needed: " + nThreads);
+        this.threads    = nThreads;
+        this.outputPool = pool;
+        this.executor   = new ThreadPoolExecutor
+            (nThreads, nThreads, 30, TimeUnit.SECONDS,
+             new LinkedBlockingQueue<Runnable> (),
+             new ThreadFactory () {
+                 public Thread newThread (Runnable r) {
+                     Thread t = new Thread (r, "CameraDecoder");
+                     t.setDaemon (true);
+                     return t;
+                 }
+             });
+        this.executor.allowCoreThreadTimeOut (true);
+    }
+
+    /**
+     * Register a listener for published frames.
+     * @param listener the listener
+     */
+    public void addListener (CameraFrameListener listener) {
+        listeners.addIfAbsent (listener);
+    }
+
+    /**
+     * Unregister a listener.
+     * @param listener the listener
+     */
+    public void removeListener (CameraFrameListener listener) {
+        listeners.remove (listener);
+    }
+
+    /**
+     * Hand a frame to the decoder. The decoder takes over the caller's
+     * reference, and releases it once the frame is decoded or dropped.
+     * @param frame the frame
+     */
+    public void submit (PlayerCameraFrame frame) {
+        PlayerCameraFrame dropped;
+        synchronized (this) {
+            if (executor.isShutdown ()) {
+                dropped = frame;
+            } else {
+                dropped = pending;
+                pending = frame;
+                if (active < threads) {
+                    active++;
+                    executor.execute (worker);
+                }
+            }
+            if (dropped != null)
+                droppedCount++;
+        }
+        if (dropped != null)
+            dropped.release ();
+    }
+
+    /**
+     * Worker loop: decode the latest pending frame until there is none.
+     */
+    private void drain () {
+        while (true) {
+            PlayerCameraFrame frame;
+            synchronized (this) {
+                frame = pending;
+                pending = null;
+                if (frame == null) {
+                    active--;
+                    return;
+                }
+            }
+            try {
+                process (frame);
+            } catch (RuntimeException e) {
+                logger.log (Level.WARNING, "[CameraDecoder] : " +
+                        "Error processing frame: " + e.toString (), e);
+            } finally {
+                frame.release ();
+            }
+        }
+    }
+
+    /**
+     * Decode a frame if needed and publish it.
+     */
+    private void process (PlayerCameraFrame frame) {
+        if (frame.getCompression () != PLAYER_CAMERA_COMPRESS_JPEG) {
+            publish (frame);
+            return;
+        }
+        BufferedImage image;
+        String reason = "unsupported image";
+        try {
+            image = ImageIO.read (new ByteBufferInputStream
+                    (frame.getImageBuffer ()));
+        } catch (IOException e) {
+            image  = null;
+            reason = e.toString ();
+        } catch (RuntimeException e) {
+            // Malformed streams may also fail with unchecked exceptions
+            image  = null;
+            reason = e.toString ();
+        }
+        if (image == null) {
+            logger.log (Level.WARNING, "[CameraDecoder] : " +
+                    "Could not decode JPEG frame of " +
+                    frame.getImage_count () + " bytes: " + reason);
+            return;
+        }
+        PlayerCameraFrame decoded = toFrame (image);
+        try {
+            decoded.setFdiv      (frame.getFdiv ());
+            decoded.setTimestamp (frame.getTimestamp ());
+            publish (decoded);
+        } finally {
+            decoded.release ();
+        }
+    }
+
+    /**
+     * Publish a frame to all listeners, unless a newer one was already
+     * published by another worker.
+     */
+    private void publish (PlayerCameraFrame frame) {
+        synchronized (this) {
+            if (frame.getTimestamp () < published) {
+                droppedCount++;
+                return;
+            }
+            published = frame.getTimestamp ();
+            decodedCount++;
+        }
+        for (CameraFrameListener listener : listeners)
+            try {
+                listener.frameReady (frame);
+            } catch (RuntimeException e) {
+                logger.log (Level.WARNING, "[CameraDecoder] : Listener " +
+                        listener + " failed: " + e.toString (), e);
+            }
+    }
+
+    /**
+     * Copy a decoded image into a raw frame.
+     */
+    private PlayerCameraFrame toFrame (BufferedImage image) {
+        int w = image.getWidth ();
+        int h = image.getHeight ();
+        boolean grey = image.getType () == BufferedImage.TYPE_BYTE_GRAY;
+        int length = w * h * (grey ? 1 : 3);
+        PlayerCameraFrame frame = outputPool.acquire (length);
+        ByteBuffer dst = frame.getBuffer ();
+        dst.clear ();
+        if (grey) {
+            DataBufferByte db = (DataBufferByte)image.getRaster ().getDataBuffer ();
+            dst.put (db.getData (), 0, length);
+            frame.setFormat (PLAYER_CAMERA_FORMAT_MONO8);
+            frame.setBpp    (8);
+        } else {
+            int[] row = new int[w];
+            for (int y = 0; y < h; y++) {
+                image.getRGB (0, y, w, 1, row, 0, w);
+                for (int x = 0; x < w; x++) {
+                    int rgb = row[x];
+                    dst.put ((byte)(rgb >> 16));
+                    dst.put ((byte)(rgb >> 8));
+                    dst.put ((byte)rgb);
+                }
+            }
+            frame.setFormat (PLAYER_CAMERA_FORMAT_RGB888);
+            frame.setBpp    (24);
+        }
+        dst.clear ();
+        frame.setWidth       (w);
+        frame.setHeight      (h);
+        frame.setCompression (PLAYER_CAMERA_COMPRESS_RAW);
+        frame.setImage_count (length);
+        return frame;
+    }
+
+    /**
+     * @return number of frames published so far
+     */
+    public synchronized long getDecodedCount () {
+        return this.decodedCount;
+    }
+
+    /**
+     * @return number of frames dropped because a newer frame superseded them
+     */
+    public synchronized long getDroppedCount () {
+        return this.droppedCount;
+    }
+
+    /**
+     * Stop the worker threads. Frames submitted afterwards are dropped.
+     */
+    public void shutdown () {
+        PlayerCameraFrame dropped;
+        synchronized (this) {
+            executor.shutdown ();
+            dropped = pending;
+            pending = null;
+        }
+        if (dropped != null)
+            dropped.release ();
+    }
+
+    /**
+     * Input stream reading the remaining bytes of a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream (ByteBuffer newBuffer) {
+            this.buffer = newBuffer;
+        }
+
+        public int read () {
+            return buffer.hasRemaining () ? (buffer.get () & 0xFF) : -1;
+        }
+
+        public int read (byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining ())
+                return -1;
+            int n = Math.min (len, buffer.remaining ());
+            buffer.get (b, off, n);
+            return n;
+        }
+
+        public int available () {
+            return buffer.remaining ();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ *  Player Java Client 3 - CameraFrameListener.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3;
+
+import javaclient3.structures.camera.PlayerCameraFrame;
+
+/**
+ * Receives the frames published by a {@link CameraDecoder}.
+ * @author agent
+ */
+public interface CameraFrameListener {
+
+    /**
+     * Called on a decoder thread for every published frame. The frame is
+     * only valid during the call; a listener that keeps it longer must
+     * take its own reference with {@link PlayerCameraFrame#retain()}.
+     * @param frame the decoded frame
+     */
+    public void frameReady (PlayerCameraFrame frame);
+}
@@ -22,14 +22,18 @@
 package javaclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
 import javaclient3.structures.PlayerMsgHdr;
 import javaclient3.structures.camera.PlayerCameraData;
+import javaclient3.structures.camera.PlayerCameraFrame;
+import javaclient3.structures.camera.PlayerCameraFramePool;
 import javaclient3.xdr.OncRpcException;
 import javaclient3.xdr.XdrBufferDecodingStream;
+import javaclient3.xdr.XdrBufferPool;
 
 /**
  * The camera interface is used to see what the camera sees. It is intended
@@ -54,12 +58,244 @@ public class CameraInterface extends PlayerDevice {
     private PlayerCameraData pcdata;
     private boolean          readyPcdata = false;
 
+    // Keep the raw payload and copy the image out on first access
+    private boolean          lazyDecoding = false;
+
+    // Pool frames are read into, or null to read into PlayerCameraData
+    private PlayerCameraFramePool framePool;
+    // Latest frame, holding one reference
+    private PlayerCameraFrame     frame;
+    // Decode stage frames are handed to, or null
+    private CameraDecoder         decoder;
+    // Pyramid fed with every frame, or null
+    private CameraPyramid         pyramid;
+    // Scratch buffers for the frame header and for filling direct buffers
+    private byte[]                frameHeader;
+    private byte[]                frameChunk;
+
     /**
      * Constructor for CameraInterface.
      * @param pc a reference to the PlayerClient object
      */
     public CameraInterface (PlayerClient pc) { super(pc); }
 
+    /**
+     * Enable or disable lazy decoding. In lazy mode each frame keeps its raw
+     * payload in a buffer taken from the client's buffer pool, and the image
+     * is only copied out when first requested. Consumers should call
+     * {@link PlayerCameraData#release()} when done with a frame so the buffer
+     * can be reused. Since a consumer may release the payload at any time,
+     * frames handed to a decoder or a pyramid are still copied out of it;
+     * use a frame pool to avoid that copy.
+     * @param lazy true to enable lazy decoding, false to decode eagerly
+     */
+    public synchronized void setLazyDecoding (boolean lazy) {
+        this.lazyDecoding = lazy;
+    }
+
+    /**
+     * Check if lazy decoding is enabled.
+     * @return true if frames are decoded lazily, false otherwise
+     * @see #setLazyDecoding(boolean)
+     */
+    public boolean isLazyDecoding () { return this.lazyDecoding; }
+
+    /**
+     * Read frames into buffers taken from a frame pool instead of
+     * allocating a new PlayerCameraData for each frame. The latest frame is
+     * obtained with {@link #acquireFrame()}; {@link #getData()} is no longer
+     * updated while a frame pool is set. Frame pooling takes precedence
+     * over lazy decoding.
+     * @param pool the frame pool, or null to go back to PlayerCameraData
+     */
+    public synchronized void setFramePool (PlayerCameraFramePool pool) {
+        this.framePool = pool;
+        if (pool == null && frame != null) {
+            frame.release ();
+            frame = null;
+        }
+    }
+
+    /**
+     * Get the frame pool.
+     * @return the frame pool, or null if frames are not pooled
+     * @see #setFramePool(PlayerCameraFramePool)
+     */
+    public PlayerCameraFramePool getFramePool () { return this.framePool; }
+
+    /**
+     * Get the latest frame read into the frame pool. The caller gets its
+     * own reference on the frame and must call
+     * {@link PlayerCameraFrame#release()} when done with it.
+     * @return the latest frame, or null if no frame was read yet
+     * @see #setFramePool(PlayerCameraFramePool)
+     */
+    public synchronized PlayerCameraFrame acquireFrame () {
+        return (frame == null) ? null : frame.retain ();
+    }
+
+    /**
+     * Attach a decode stage. Every frame read afterwards is handed to the
+     * decoder, which decodes compressed frames off the reading thread and
+     * publishes them to its listeners.
+     * @param newDecoder the decoder, or null to detach it
+     */
+    public synchronized void setDecoder (CameraDecoder newDecoder) {
+        this.decoder = newDecoder;
+    }
+
+    /**
+     * Get the decode stage.
+     * @return the decoder, or null if none is attached
+     * @see #setDecoder(CameraDecoder)
+     */
+    public CameraDecoder getDecoder () { return this.decoder; }
+
+    /**
+     * Attach an image pyramid, rebuilt lazily on every frame read
+     * afterwards. For compressed streams, register the pyramid with the
+     * decoder instead.
+     * @param newPyramid the pyramid, or null to detach it
+     */
+    public synchronized void setPyramid (CameraPyramid newPyramid) {
+        this.pyramid = newPyramid;
+    }
+
+    /**
+     * Get the image pyramid.
+     * @return the pyramid, or null if none is attached
+     * @see #setPyramid(CameraPyramid)
+     */
+    public CameraPyramid getPyramid () { return this.pyramid; }
+
+    /**
+     * Hand the frame just read to the decoder and the pyramid, if any.
+     */
+    private void publish () {
+        if (decoder == null && pyramid == null)
+            return;
+        PlayerCameraFrame f = (framePool != null) ? frame.retain () : wrap ();
+        if (pyramid != null)
+            pyramid.setFrame (f);
+        if (decoder != null)
+            decoder.submit (f);
+        else
+            f.release ();
+    }
+
+    /**
+     * Wrap the image of the current PlayerCameraData into a frame. In lazy
+     * mode this copies the image out of the payload, which the frame
+     * cannot hold on to: the consumer may release it to the buffer pool
+     * while the decoder or the pyramid still reads the frame.
+     */
+    private PlayerCameraFrame wrap () {
+        byte[] image = pcdata.getImage ();
+        PlayerCameraFrame f = new PlayerCameraFrame (image, image.length);
+        f.setWidth       (pcdata.getWidth ());
+        f.setHeight      (pcdata.getHeight ());
+        f.setBpp         (pcdata.getBpp ());
+        f.setFormat      (pcdata.getFormat ());
+        f.setFdiv        (pcdata.getFdiv ());
+        f.setCompression (pcdata.getCompression ());
+        f.setTimestamp   (this.timestamp);
+        return f;
+    }
+
+    /**
+     * Read a camera frame into a buffer taken from the frame pool, and make
+     * it the latest frame.
+     * @param header Player header
+     */
+    private void readCameraFrame (PlayerMsgHdr header) throws IOException {
+        if (frameHeader == null)
+            frameHeader = new byte[32];
+        // Read width, height, bpp, format, fdiv, compression, image_count
+        // and the XDR length of the image
+        is.readFully (frameHeader, 0, 32);
+
+        ByteBuffer bb = ByteBuffer.wrap (frameHeader);
+        int imageCount        = bb.getInt (24);
+        int imageCountFromXDR = bb.getInt (28);
+        if (imageCountFromXDR != imageCount)
+        {
+            throw new PlayerException
+                ("[Camera] : Error reading image bytestream, header reports a length of " +
+                 imageCount + " bytes, XDR reports a length of " + imageCountFromXDR + " bytes.");
+        }
+
+        int length = header.getSize () - 32;
+        PlayerCameraFrame f = framePool.acquire (length);
+        try {
+            ByteBuffer dst = f.getBuffer ();
+            if (dst.hasArray ())
+                is.readFully (dst.array (), dst.arrayOffset (), length);
+            else {
+                // Direct buffers are filled through a small heap buffer
+                if (frameChunk == null)
+                    frameChunk = new byte[8192];
+                dst.clear ();
+                for (int done = 0; done < length; ) {
+                    int n = Math.min (frameChunk.length, length - done);
+                    is.readFully (frameChunk, 0, n);
+                    dst.put (frameChunk, 0, n);
+                    done += n;
+                }
+                dst.clear ();
+            }
+        } catch (IOException e) {
+            f.release ();
+            throw e;
+        }
+        f.setWidth       (bb.getInt (0));
+        f.setHeight      (bb.getInt (4));
+        f.setBpp         (bb.getInt (8));
+        f.setFormat      (bb.getInt (12));
+        f.setFdiv        (bb.getInt (16));
+        f.setCompression (bb.getInt (20));
+        f.setImage_count (length);
+        f.setTimestamp   (header.getTimestamp ());
+
+        if (frame != null)
+            frame.release ();
+        frame = f;
+    }
+
+    /**
+     * Read a camera frame into a pooled buffer and only decode the scalar
+     * fields. The image is copied out by PlayerCameraData on demand.
+     * @param header Player header
+     * @return the lazily decoded camera data
+     */
+    private PlayerCameraData readCameraDataLazy (PlayerMsgHdr header) {
+        int size = header.getSize ();
+        XdrBufferPool pool = pc.getBufferPool ();
+        // Read the whole payload at once
+        byte[] buffer = readPayload (size);
+
+        ByteBuffer bb = ByteBuffer.wrap (buffer, 0, size);
+        PlayerCameraData pcd = new PlayerCameraData ();
+        pcd.setWidth       (bb.getInt (0));
+        pcd.setHeight      (bb.getInt (4));
+        pcd.setBpp         (bb.getInt (8));
+        pcd.setFormat      (bb.getInt (12));
+        pcd.setFdiv        (bb.getInt (16));
+        pcd.setCompression (bb.getInt (20));
+        int imageCount        = bb.getInt (24);
+        int imageCountFromXDR = bb.getInt (28);
+
+        if (imageCountFromXDR != imageCount)
+        {
+            pool.release (buffer);
+            throw new PlayerException
+                ("[Camera] : Error reading image bytestream, header reports a length of " +
+                 imageCount + " bytes, XDR reports a length of " + imageCountFromXDR + " bytes.");
+        }
+
+        pcd.setPayload (buffer, 32, size - 32, pool);
+        return pcd;
+    }
+
     /**
      * Read the camera data.
      * <br><br>
@@ -71,6 +307,20 @@ public class CameraInterface extends PlayerDevice {
                 case PLAYER_CAMERA_DATA_STATE: {
                     this.timestamp = header.getTimestamp();
 
+                    if (framePool != null) {
+                        readCameraFrame (header);
+                        readyPcdata = true;
+                        publish ();
+                        break;
+                    }
+
+                    if (lazyDecoding) {
+                        pcdata = readCameraDataLazy (header);
+                        readyPcdata = true;
+                        publish ();
+                        break;
+                    }
+
                     // Buffer for reading width, height, bpp, format, fdiv, compression, image_count
                     byte[] buffer = new byte[28];
                     // Read width, height, bpp, format, fdiv, compression, image_count
@@ -122,6 +372,8 @@ public class CameraInterface extends PlayerDevice {
                     pcdata.setImage (buffer);
 
                     readyPcdata = true;
+
+                    publish ();
                     break;
                 }
             }
@@ -166,6 +418,20 @@ public class CameraInterface extends PlayerDevice {
 
                     this.timestamp = header.getTimestamp();
 
+                    if (framePool != null) {
+                        readCameraFrame (header);
+                        readyPcdata = true;
+                        publish ();
+                        break;
+                    }
+
+                    if (lazyDecoding) {
+                        pcdata = readCameraDataLazy (header);
+                        readyPcdata = true;
+                        publish ();
+                        break;
+                    }
+
                     // Buffer for reading width, height, bpp, format, fdiv, compression, image_count
                     byte[] buffer = new byte[28];
                     // Read width, height, bpp, format, fdiv, compression, image_count
@@ -217,6 +483,8 @@ public class CameraInterface extends PlayerDevice {
                     pcdata.setImage (buffer);
 
                     readyPcdata = true;
+
+                    publish ();
                     break;
                 }
                 default:{
@@ -245,7 +513,7 @@ public class CameraInterface extends PlayerDevice {
     public PlayerCameraData getData () { return this.pcdata; }
 
     /**
-     * Check if data is available.
+     * Check if data (or a new frame, when frames are pooled) is available.
      * @return true if ready, false if not ready
      */
     public boolean isDataReady () {
@@ -0,0 +1,258 @@
+/*
+ *  Player Java Client 3 - CameraPyramid.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3;
+
+import java.nio.ByteBuffer;
+
+import javaclient3.structures.PlayerConstants;
+import javaclient3.structures.camera.PlayerCameraConverter;
+import javaclient3.structures.camera.PlayerCameraFrame;
+import javaclient3.structures.camera.PlayerCameraFramePool;
+
+/**
+ * Multi-resolution pyramid over the latest camera frame, shared by all
+ * consumers of a camera. Level 0 is the frame itself; every further level
+ * halves the width and height of the previous one by averaging blocks of
+ * 2x2 pixels.
+ * <br><br>
+ * Levels are built lazily: setting a new frame costs nothing, and a level
+ * is computed the first time a consumer requests it, then reused by every
+ * other consumer of the same frame. Level buffers come from a
+ * {@link PlayerCameraFramePool} and return to it once the frame is
+ * replaced and their consumers released them.
+ * <br><br>
+ * A pyramid is fed either by a camera, with
+ * {@link CameraInterface#setPyramid(CameraPyramid)}, or by a
+ * {@link CameraDecoder} it listens to. Only raw MONO8, MONO16, RGB565 and
+ * RGB888 images can be down-sampled.
+ * @author agent
+ */
+public class CameraPyramid implements CameraFrameListener, PlayerConstants {
+
+    // Pool level buffers are taken from
+    private final PlayerCameraFramePool pool;
+    // Levels of the current frame; null entries are not built yet
+    private final PlayerCameraFrame[]   levels;
+    // Heap copy of a direct source frame
+    private byte[] sourceCopy;
+
+    /**
+     * Create a pyramid of up to 4 levels (1/8 resolution).
+     */
+    public CameraPyramid () {
+        this (4);
+    }
+
+    /**
+     * Create a pyramid.
+     * @param maxLevel deepest level that can be requested
+     */
+    public CameraPyramid (int maxLevel) {
+        this (maxLevel, new PlayerCameraFramePool (false, 2 * maxLevel));
+    }
+
+    /**
+     * Create a pyramid taking its level buffers from a given pool.
+     * @param maxLevel deepest level that can be requested
+     * @param newPool the pool level buffers are taken from, which must
+     * allocate heap buffers
+     */
+    public CameraPyramid (int maxLevel, PlayerCameraFramePool newPool) {
+        if (newPool.isDirect ())
+            throw new IllegalArgumentException
+                ("Pyramid levels need a pool of heap buffers");
+        this.levels = new PlayerCameraFrame[maxLevel + 1];
+        this.pool   = newPool;
+    }
+
+    /**
+     * Replace the frame the pyramid is built on. The pyramid takes its own
+     * reference on the frame, and drops the levels of the previous one.
+     * @param frame the new frame
+     */
+    public synchronized void setFrame (PlayerCameraFrame frame) {
+        clear ();
+        levels[0] = frame.retain ();
+    }
+
+    /**
+     * Called by a decoder for every published frame.
+     * @param frame the decoded frame
+     */
+    public void frameReady (PlayerCameraFrame frame) {
+        setFrame (frame);
+    }
+
+    /**
+     * Get a level of the current frame, building it and the levels above
+     * it if needed. The caller gets its own reference on the level and
+     * must release it when done.
+     * @param level the level, 0 for the full resolution frame
+     * @return the level, or null if no frame was set yet
+     * @throws IllegalStateException if a level must be built from a
+     * compressed frame
+     * @throws IllegalArgumentException if a level must be built from a
+     * frame in a format the pyramid cannot average
+     */
+    public synchronized PlayerCameraFrame getLevel (int level) {
+        if (level < 0 || level >= levels.length)
+            throw new IllegalArgumentException
+                ("Level " + level + " out of range [0, " + levels.length + ")");
+        if (levels[0] == null)
+            return null;
+        for (int k = 1; k <= level; k++)
+            if (levels[k] == null)
+                levels[k] = downsample (levels[k - 1]);
+        return levels[level].retain ();
+    }
+
+    /**
+     * @return deepest level that can be requested
+     */
+    public int getMaxLevel () {
+        return levels.length - 1;
+    }
+
+    /**
+     * Drop the current frame and its levels.
+     */
+    public synchronized void clear () {
+        for (int k = 0; k < levels.length; k++) {
+            if (levels[k] != null) {
+                levels[k].release ();
+                levels[k] = null;
+            }
+        }
+    }
+
+    /**
+     * Build the next level of a frame.
+     */
+    private PlayerCameraFrame downsample (PlayerCameraFrame src) {
+        if (src.getCompression () != PLAYER_CAMERA_COMPRESS_RAW)
+            throw new IllegalStateException
+                ("Cannot down-sample a compressed image");
+        int sw = src.getWidth ();
+        int sh = src.getHeight ();
+        int dw = Math.max (sw >> 1, 1);
+        int dh = Math.max (sh >> 1, 1);
+        int format = src.getFormat ();
+        int bpp    = PlayerCameraConverter.getBytesPerPixel (format);
+
+        PlayerCameraFrame dst = pool.acquire (dw * dh * bpp);
+        ByteBuffer db = dst.getBuffer ();
+        halve (sourceArray (src), offset (src), sw, sh, format, bpp,
+                db.array (), db.arrayOffset (), dw, dh);
+        dst.setWidth       (dw);
+        dst.setHeight      (dh);
+        dst.setBpp         (src.getBpp ());
+        dst.setFormat      (format);
+        dst.setFdiv        (src.getFdiv ());
+        dst.setCompression (PLAYER_CAMERA_COMPRESS_RAW);
+        dst.setTimestamp   (src.getTimestamp ());
+        dst.setImage_count (dw * dh * bpp);
+        return dst;
+    }
+
+    /**
+     * Get an array holding the image of a frame, copying direct buffers.
+     */
+    private byte[] sourceArray (PlayerCameraFrame src) {
+        ByteBuffer sb = src.getBuffer ();
+        if (sb.hasArray ())
+            return sb.array ();
+        int n = src.getImage_count ();
+        if (sourceCopy == null || sourceCopy.length < n)
+            sourceCopy = new byte[n];
+        src.getImage (sourceCopy, 0);
+        return sourceCopy;
+    }
+
+    private static int offset (PlayerCameraFrame src) {
+        ByteBuffer sb = src.getBuffer ();
+        return sb.hasArray () ? sb.arrayOffset () : 0;
+    }
+
+    /**
+     * Average blocks of 2x2 pixels. Rows and columns left over by an odd
+     * size are dropped, except for images one pixel wide or high.
+     */
+    private static void halve (byte[] s, int so, int sw, int sh, int format,
+            int bpp, byte[] d, int dOff, int dw, int dh) {
+        int stride = sw * bpp;
+        int dx1    = (sw > 1) ? bpp : 0;
+        int dy1    = (sh > 1) ? stride : 0;
+        for (int y = 0; y < dh; y++) {
+            int r0 = so + 2 * y * stride;
+            int r1 = r0 + dy1;
+            int o  = dOff + y * dw * bpp;
+            switch (format) {
+                case PLAYER_CAMERA_FORMAT_MONO16:
+                    for (int x = 0; x < dw; x++, o += 2) {
+                        int a = r0 + 2 * x * 2;
+                        int b = r1 + 2 * x * 2;
+                        int v = (u16 (s, a) + u16 (s, a + dx1) +
+                                 u16 (s, b) + u16 (s, b + dx1) + 2) >> 2;
+                        d[o]     = (byte)(v >> 8);
+                        d[o + 1] = (byte)v;
+                    }
+                    break;
+                case PLAYER_CAMERA_FORMAT_RGB565:
+                    for (int x = 0; x < dw; x++, o += 2) {
+                        int a  = r0 + 2 * x * 2;
+                        int b  = r1 + 2 * x * 2;
+                        int p0 = u16 (s, a);
+                        int p1 = u16 (s, a + dx1);
+                        int p2 = u16 (s, b);
+                        int p3 = u16 (s, b + dx1);
+                        int r  = (((p0 >> 11) & 0x1F) + ((p1 >> 11) & 0x1F) +
+                                  ((p2 >> 11) & 0x1F) + ((p3 >> 11) & 0x1F) + 2) >> 2;
+                        int g  = (((p0 >> 5) & 0x3F) + ((p1 >> 5) & 0x3F) +
+                                  ((p2 >> 5) & 0x3F) + ((p3 >> 5) & 0x3F) + 2) >> 2;
+                        int bl = ((p0 & 0x1F) + (p1 & 0x1F) +
+                                  (p2 & 0x1F) + (p3 & 0x1F) + 2) >> 2;
+                        int v  = (r << 11) | (g << 5) | bl;
+                        d[o]     = (byte)(v >> 8);
+                        d[o + 1] = (byte)v;
+                    }
+                    break;
+                default:
+                    // MONO8 and RGB888, the only other formats with a
+                    // pixel size: average each byte channel
+                    for (int x = 0; x < dw; x++) {
+                        int a = r0 + 2 * x * bpp;
+                        int b = r1 + 2 * x * bpp;
+                        for (int c = 0; c < bpp; c++, o++)
+                            d[o] = (byte)(((s[a + c] & 0xFF) +
+                                           (s[a + dx1 + c] & 0xFF) +
+                                           (s[b + c] & 0xFF) +
+                                           (s[b + dx1 + c] & 0xFF) + 2) >> 2);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static int u16 (byte[] s, int i) {
+        return ((s[i] & 0xFF) << 8) | (s[i + 1] & 0xFF);
+    }
+}
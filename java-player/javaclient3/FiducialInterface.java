@@ -96,7 +96,7 @@ public class FiducialInterface extends PlayerDevice {
                     // 4*2 = 8 bytes - double field
                     // 6 fields in single PlayerPose3d object
                     // 2 PlayerPose3d objects
-                    buffer = new byte[PLAYER_FIDUCIAL_MAX_SAMPLES * (4+4*2*6*2)];
+                    buffer = pc.getBufferPool ().acquire (fiducialsCount * (4+4*2*6*2));
                     // Read fiducials
                     is.readFully (buffer, 0, fiducialsCount * (4+4*2*6*2));
                     xdr = new XdrBufferDecodingStream (buffer);
@@ -131,6 +131,7 @@ public class FiducialInterface extends PlayerDevice {
                     }
                     xdr.endDecoding   ();
                     xdr.close ();
+                    pc.getBufferPool ().release (buffer);
                     
                     pfdata = new PlayerFiducialData ();
                     
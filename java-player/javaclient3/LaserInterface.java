@@ -22,6 +22,7 @@
 package javaclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +35,7 @@ import javaclient3.structures.laser.PlayerLaserConfig;
 import javaclient3.structures.laser.PlayerLaserData;
 import javaclient3.structures.laser.PlayerLaserDataScanpose;
 import javaclient3.structures.laser.PlayerLaserGeom;
+import javaclient3.structures.laser.PlayerLaserTrigTable;
 import javaclient3.xdr.OncRpcException;
 import javaclient3.xdr.XdrBufferDecodingStream;
 import javaclient3.xdr.XdrBufferEncodingStream;
@@ -49,9 +51,9 @@ import javaclient3.xdr.XdrBufferEncodingStream;
  * before the actual range data. These fields tell the client the starting 
  * and ending angles of the scan, the angular resolution of the scan, and 
  * the number of range readings included. Scans proceed counterclockwise 
- * about the laser (0 degrees is forward). The laser can return a maximum of 
- * PLAYER_LASER_MAX_SAMPLES readings; this limits the valid combinations of 
- * scan width and angular resolution.
+ * about the laser (0 degrees is forward). Buffers are sized to the number 
+ * of readings advertised in each scan, so scans are not limited to 
+ * PLAYER_LASER_MAX_SAMPLES readings.
  * @author Radu Bogdan Rusu, Maxim Batalin
  * @version
  * <ul>
@@ -74,12 +76,200 @@ public class LaserInterface extends PlayerDevice {
     private PlayerLaserGeom         plgeom;
     private boolean                 readyPlgeom     = false;
     
+    // Keep the raw payload and decode the readings on first access
+    private boolean                 lazyDecoding    = false;
+    
+    // Reuse two alternating PlayerLaserData instances (recycling mode)
+    private boolean                 recycleData     = false;
+    private PlayerLaserData[]       recycled        = new PlayerLaserData[2];
+    private int                     recycledNext    = 0;
+    private float[][]               recycledX       = new float[2][];
+    private float[][]               recycledY       = new float[2][];
+    // Payload buffer reused across scans (recycling mode)
+    private byte[]                  scanBuffer;
+    private ByteBuffer              scanView;
+    // Trigonometric table of the last scan configuration
+    private PlayerLaserTrigTable    trigTable;
+    
     /**
      * Constructor for LaserInterface.
      * @param pc a reference to the PlayerClient object
      */
     public LaserInterface (PlayerClient pc) { super (pc); }
 
+    /**
+     * Enable or disable lazy decoding. In lazy mode each scan keeps its raw 
+     * payload in a buffer taken from the client's buffer pool, and the 
+     * ranges, intensities and cartesian points are only decoded when first 
+     * requested. Consumers should call {@link PlayerLaserData#release()} 
+     * when done with a scan so the buffer can be reused.
+     * @param lazy true to enable lazy decoding, false to decode eagerly
+     */
+    public synchronized void setLazyDecoding (boolean lazy) {
+        this.lazyDecoding = lazy;
+    }
+
+    /**
+     * Check if lazy decoding is enabled.
+     * @return true if scans are decoded lazily, false otherwise
+     * @see #setLazyDecoding(boolean)
+     */
+    public boolean isLazyDecoding () { return this.lazyDecoding; }
+
+    /**
+     * Enable or disable data recycling. In recycling mode the interface 
+     * decodes scans without allocating: it alternates between two 
+     * PlayerLaserData instances, reuses their arrays, and computes the 
+     * cartesian points into the parallel arrays returned by 
+     * {@link PlayerLaserData#getPointsX()} and 
+     * {@link PlayerLaserData#getPointsY()} using a cached table of beam 
+     * angles.
+     * <br><br>
+     * A scan returned by {@link #getData()} stays valid until the second 
+     * scan after it has been read. Arrays may be longer than the number of 
+     * readings; use getRanges_count () and getIntensity_count () to bound 
+     * them. Recycling takes precedence over lazy decoding.
+     * @param recycle true to enable recycling, false to allocate new data 
+     * for each scan
+     */
+    public synchronized void setRecycleData (boolean recycle) {
+        this.recycleData = recycle;
+        if (!recycle) {
+            recycled[0]  = null;
+            recycled[1]  = null;
+            recycledX[0] = null;
+            recycledX[1] = null;
+            recycledY[0] = null;
+            recycledY[1] = null;
+            pc.getBufferPool ().release (scanBuffer);
+            scanBuffer = null;
+            scanView   = null;
+        }
+    }
+
+    /**
+     * Check if data recycling is enabled.
+     * @return true if scans are decoded into recycled data, false otherwise
+     * @see #setRecycleData(boolean)
+     */
+    public boolean isRecycleData () { return this.recycleData; }
+
+    /**
+     * Read a laser scan into the next recycled PlayerLaserData instance.
+     * @param size size of the payload [bytes]
+     * @param pose if not null, filled with the pose following the scan 
+     * (PLAYER_LASER_DATA_SCANPOSE)
+     * @return the recycled laser data
+     */
+    private PlayerLaserData readLaserDataRecycled (int size, PlayerPose pose) 
+            throws IOException {
+        if (scanBuffer == null || scanBuffer.length < size) {
+            pc.getBufferPool ().release (scanBuffer);
+            scanBuffer = pc.getBufferPool ().acquire (size);
+            scanView   = ByteBuffer.wrap (scanBuffer);
+        }
+        // Read the whole payload at once
+        is.readFully (scanBuffer, 0, size);
+        
+        int slot = recycledNext;
+        recycledNext ^= 1;
+        PlayerLaserData pld = recycled[slot];
+        if (pld == null) {
+            pld = new PlayerLaserData ();
+            recycled[slot] = pld;
+        }
+        if (recycledX[slot] == null || recycledX[slot].length < size / 4) {
+            // The payload holds at least 4 bytes per beam
+            recycledX[slot] = new float[size / 4];
+            recycledY[slot] = new float[size / 4];
+        }
+        
+        ByteBuffer bb = scanView;
+        float minAngle     = bb.getFloat (0);
+        float resolution   = bb.getFloat (8);
+        int rangesCount    = bb.getInt (16);
+        int intensityCount = bb.getInt (24 + rangesCount * 4);
+        int idOffset = 32 + rangesCount * 4 + ((intensityCount + 3) & ~3);
+        
+        synchronized (pld) {
+            pld.setMin_angle       (minAngle);
+            pld.setMax_angle       (bb.getFloat (4));
+            pld.setResolution      (resolution);
+            pld.setMax_range       (bb.getFloat (12));
+            pld.setRanges_count    (rangesCount);
+            pld.setIntensity_count (intensityCount);
+            pld.setId              (bb.getInt (idOffset));
+            
+            float[] ranges = pld.getRanges ();
+            if (ranges == null || ranges.length < rangesCount)
+                ranges = new float[rangesCount];
+            for (int i = 0; i < rangesCount; i++)
+                ranges[i] = bb.getFloat (24 + i * 4);
+            pld.setRanges (ranges);
+            
+            byte[] intensity = pld.getIntensity ();
+            if (intensity == null || intensity.length < intensityCount)
+                intensity = new byte[intensityCount];
+            System.arraycopy (scanBuffer, 32 + rangesCount * 4, 
+                    intensity, 0, intensityCount);
+            pld.setIntensity (intensity);
+            
+            // Compute the cartesian coordinates X and Y
+            if (trigTable == null || 
+                    !trigTable.matches (minAngle, resolution, rangesCount))
+                trigTable = PlayerLaserTrigTable.get 
+                    (minAngle, resolution, rangesCount);
+            float[] x = recycledX[slot];
+            float[] y = recycledY[slot];
+            trigTable.project (ranges, rangesCount, x, y);
+            pld.setPointsXY (x, y);
+        }
+        
+        if (pose != null) {
+            pose.setPx (bb.getFloat (idOffset + 4));
+            pose.setPy (bb.getFloat (idOffset + 8));
+            pose.setPa (bb.getFloat (idOffset + 12));
+        }
+        return pld;
+    }
+
+    /**
+     * Read a laser scan into a pooled buffer and only decode the scalar 
+     * fields. The readings are decoded by PlayerLaserData on demand.
+     * @param size size of the payload [bytes]
+     * @param pose if not null, filled with the pose following the scan 
+     * (PLAYER_LASER_DATA_SCANPOSE)
+     * @return the lazily decoded laser data
+     */
+    private PlayerLaserData readLaserDataLazy (int size, PlayerPose pose) {
+        // Read the whole payload at once
+        byte[] buffer = readPayload (size);
+        
+        ByteBuffer bb = ByteBuffer.wrap (buffer, 0, size);
+        PlayerLaserData pld = new PlayerLaserData ();
+        pld.setMin_angle  (bb.getFloat (0));
+        pld.setMax_angle  (bb.getFloat (4));
+        pld.setResolution (bb.getFloat (8));
+        pld.setMax_range  (bb.getFloat (12));
+        int rangesCount    = bb.getInt (16);
+        // ranges (with their XDR array length) are followed by intensity_count
+        int intensityCount = bb.getInt (24 + rangesCount * 4);
+        // intensities are padded to a multiple of 4 bytes
+        int idOffset = 32 + rangesCount * 4 + ((intensityCount + 3) & ~3);
+        pld.setRanges_count    (rangesCount);
+        pld.setIntensity_count (intensityCount);
+        pld.setId              (bb.getInt (idOffset));
+        
+        if (pose != null) {
+            pose.setPx (bb.getFloat (idOffset + 4));
+            pose.setPy (bb.getFloat (idOffset + 8));
+            pose.setPa (bb.getFloat (idOffset + 12));
+        }
+        
+        pld.setPayload (buffer, pc.getBufferPool ());
+        return pld;
+    }
+
     private synchronized PlayerLaserData readLaserData () {
         PlayerLaserData pld = new PlayerLaserData ();
         try {
@@ -99,8 +289,8 @@ public class LaserInterface extends PlayerDevice {
             xdr.endDecoding   ();
             xdr.close ();
             
-            // Buffer for reading range values
-            buffer = new byte[PLAYER_LASER_MAX_SAMPLES * 4 + 4];
+            // Buffer for reading range values, sized to the actual count
+            buffer = pc.getBufferPool ().acquire (rangesCount * 4 + 4);
             // Read range values
             is.readFully (buffer, 0, rangesCount * 4 + 4);
             xdr = new XdrBufferDecodingStream (buffer);
@@ -108,6 +298,7 @@ public class LaserInterface extends PlayerDevice {
             pld.setRanges (xdr.xdrDecodeFloatVector ());
             xdr.endDecoding   ();
             xdr.close ();
+            pc.getBufferPool ().release (buffer);
             
             pld.setRanges_count (rangesCount);
             
@@ -124,11 +315,11 @@ public class LaserInterface extends PlayerDevice {
             xdr.close ();
             
             // Buffer for reading intensity values (non XDR)
-            buffer = new byte[PLAYER_LASER_MAX_SAMPLES];
+            byte[] intensity = new byte[intensityCount];
             // Read intensity values
-            is.readFully (buffer, 0, intensityCount);
+            is.readFully (intensity, 0, intensityCount);
             pld.setIntensity_count (intensityCount);
-            pld.setIntensity       (buffer);
+            pld.setIntensity       (intensity);
             
             // Take care of the residual zero bytes
             if ((intensityCount % 4) != 0)
@@ -146,17 +337,21 @@ public class LaserInterface extends PlayerDevice {
             xdr.close ();
             
             // Compute the cartesian coordinates X and Y
-            double currentAngle = pld.getMin_angle  ();
-            double resolution   = pld.getResolution ();
-            float  ranges[]     = pld.getRanges     ();
-            PlayerPoint2d[] points = new PlayerPoint2d[pld.getRanges_count ()];
+            int     count    = pld.getRanges_count ();
+            float   ranges[] = pld.getRanges     ();
+            if (trigTable == null || !trigTable.matches 
+                    (pld.getMin_angle (), pld.getResolution (), count))
+                trigTable = PlayerLaserTrigTable.get 
+                    (pld.getMin_angle (), pld.getResolution (), count);
+            float[] cos = trigTable.getCos ();
+            float[] sin = trigTable.getSin ();
+            PlayerPoint2d[] points = new PlayerPoint2d[count];
             // Iterate through the ranges array
-            for (int i = 0; i < pld.getRanges_count (); i++)
+            for (int i = 0; i < count; i++)
             {
                 PlayerPoint2d pp2d = new PlayerPoint2d ();
-                pp2d.setPx ((float)(ranges[i] * Math.cos (currentAngle)));
-                pp2d.setPy ((float)(ranges[i] * Math.sin (currentAngle)));
-                currentAngle += resolution;
+                pp2d.setPx (ranges[i] * cos[i]);
+                pp2d.setPy (ranges[i] * sin[i]);
                 
                 points[i] = pp2d;
             }
@@ -184,13 +379,30 @@ public class LaserInterface extends PlayerDevice {
                 case PLAYER_LASER_DATA_SCAN: {
                this.timestamp = header.getTimestamp();
                
-               pldata = readLaserData ();
+               if (recycleData)
+                   pldata = readLaserDataRecycled (header.getSize (), null);
+               else if (lazyDecoding)
+                   pldata = readLaserDataLazy (header.getSize (), null);
+               else
+                   pldata = readLaserData ();
                     readyPldata = true;
                     break;
                 }
                 case PLAYER_LASER_DATA_SCANPOSE: {
                this.timestamp = header.getTimestamp();
                
+                    if (recycleData || lazyDecoding) {
+                        PlayerPose pp = new PlayerPose ();
+                        pldatascan = new PlayerLaserDataScanpose ();
+                        if (recycleData)
+                            pldatascan.setScan (readLaserDataRecycled (header.getSize (), pp));
+                        else
+                            pldatascan.setScan (readLaserDataLazy (header.getSize (), pp));
+                        pldatascan.setPose (pp);
+                        readyPldatascan = true;
+                        break;
+                    }
+                    
                PlayerLaserData pld = readLaserData ();
                     PlayerPose pp = new PlayerPose ();
                     
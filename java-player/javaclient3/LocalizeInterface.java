@@ -22,6 +22,7 @@
 package javaclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,7 +32,6 @@ import javaclient3.structures.PlayerPose;
 import javaclient3.structures.localize.PlayerLocalizeData;
 import javaclient3.structures.localize.PlayerLocalizeGetParticles;
 import javaclient3.structures.localize.PlayerLocalizeHypoth;
-import javaclient3.structures.localize.PlayerLocalizeParticle;
 import javaclient3.structures.localize.PlayerLocalizeSetPose;
 import javaclient3.xdr.OncRpcException;
 import javaclient3.xdr.XdrBufferDecodingStream;
@@ -64,12 +64,67 @@ public class LocalizeInterface extends PlayerDevice {
     private PlayerLocalizeGetParticles plgp;
     private boolean                    readyPlgp = false;
 
+    // Keep the raw particles payload and decode the particles on first access
+    private boolean                    lazyDecoding = false;
+
+    // Decode the particles into arrays alternating between two slots, each
+    // holding x, y, a and alpha
+    private boolean                    recycleData  = false;
+    private double[][][]               recycled     = new double[2][4][];
+    private int                        recycledNext = 0;
+
     /**
      * Constructor for LocalizeInterface.
      * @param pc a reference to the PlayerClient object
      */
     public LocalizeInterface (PlayerClient pc) { super(pc); }
 
+    /**
+     * Enable or disable lazy decoding. In lazy mode the particles are kept in
+     * a raw payload buffer taken from the client's buffer pool, and can be
+     * read through a flyweight view without creating any objects. Consumers
+     * should call {@link PlayerLocalizeGetParticles#release()} when done with the data so
+     * the buffer can be reused.
+     * @param lazy true to enable lazy decoding, false to decode eagerly
+     */
+    public synchronized void setLazyDecoding (boolean lazy) {
+        this.lazyDecoding = lazy;
+    }
+
+    /**
+     * Check if lazy decoding is enabled.
+     * @return true if the particles are decoded lazily, false otherwise
+     * @see #setLazyDecoding(boolean)
+     */
+    public boolean isLazyDecoding () { return this.lazyDecoding; }
+
+    /**
+     * Enable or disable array recycling. By default every particle set is
+     * decoded into newly allocated arrays; in recycling mode the interface
+     * alternates between two sets of arrays, which are only reallocated
+     * when more particles arrive, so particles can be polled at a high
+     * rate without creating garbage.
+     * <br><br>
+     * The arrays of a particle set returned by {@link #getParticleData()}
+     * stay valid until the second set after it has been read. Lazy
+     * decoding takes precedence over recycling.
+     * @param recycle true to reuse the arrays, false to allocate new ones
+     * for each particle set
+     */
+    public synchronized void setRecycleData (boolean recycle) {
+        this.recycleData = recycle;
+        if (!recycle)
+            recycled = new double[2][4][];
+    }
+
+    /**
+     * Check if array recycling is enabled.
+     * @return true if particles are decoded into recycled arrays, false
+     * otherwise
+     * @see #setRecycleData(boolean)
+     */
+    public boolean isRecycleData () { return this.recycleData; }
+
     /**
      * Read an array of hypotheses.
      */
@@ -211,81 +266,56 @@ public class LocalizeInterface extends PlayerDevice {
      * @param header Player header
      */
     protected void handleResponse (PlayerMsgHdr header) {
-        try {
-            switch (header.getSubtype ()) {
-                case PLAYER_LOCALIZE_REQ_SET_POSE:{
-                    break;
-                }
-                case PLAYER_LOCALIZE_REQ_GET_PARTICLES:{
-                    // Buffer for reading mean, variance, particles_count
-                    byte[] buffer = new byte[24 + 8 + 4];
-
-                    // Read mean, variance, particles_count
-                    is.readFully (buffer, 0, 24 + 8 + 4);
-
-                    plgp = new PlayerLocalizeGetParticles ();
-                    PlayerPose mean = new PlayerPose ();
-
-                    // Begin decoding the XDR buffer
-                    XdrBufferDecodingStream xdr = new XdrBufferDecodingStream (buffer);
-                    xdr.beginDecoding ();
-
-                    mean.setPx (xdr.xdrDecodeDouble ());
-                    mean.setPy (xdr.xdrDecodeDouble ());
-                    mean.setPa (xdr.xdrDecodeDouble ());
-
-                    plgp.setMean (mean);
-                    plgp.setVariance (xdr.xdrDecodeDouble ());
-                    int particlesCount = xdr.xdrDecodeInt ();
-
-                    xdr.endDecoding   ();
-                    xdr.close ();
-
-                    // Buffer for reading particle values
-                    buffer = new byte[particlesCount * 32];
-
-                    // Read particle values
-                    is.readFully (buffer, 0, particlesCount * 32);
-                    xdr = new XdrBufferDecodingStream (buffer);
-                    xdr.beginDecoding ();
-                    PlayerLocalizeParticle[] plps = new PlayerLocalizeParticle[particlesCount];
-                    for (int i = 0; i < particlesCount; i++) {
-                        PlayerLocalizeParticle plp = new PlayerLocalizeParticle ();
-                        PlayerPose pp = new PlayerPose ();
-                        pp.setPx (xdr.xdrDecodeDouble ());
-                        pp.setPy (xdr.xdrDecodeDouble ());
-                        pp.setPa (xdr.xdrDecodeDouble ());
-
-                        plp.setPose  (pp);
-                        plp.setAlpha (xdr.xdrDecodeDouble ());
-
-                        plps[i] = plp;
-                    }
-                    xdr.endDecoding   ();
-                    xdr.close ();
-
-                    plgp.setParticles_count (particlesCount);
-                    plgp.setParticles       (plps);
-
+        switch (header.getSubtype ()) {
+            case PLAYER_LOCALIZE_REQ_SET_POSE:{
+                break;
+            }
+            case PLAYER_LOCALIZE_REQ_GET_PARTICLES:{
+                // Read mean, variance, particles_count and the particles at once
+                int size = header.getSize ();
+                byte[] payload = readPayload (size);
+                ByteBuffer bb = ByteBuffer.wrap (payload, 0, size);
+                int particlesCount = bb.getInt (32);
+
+                plgp = new PlayerLocalizeGetParticles ();
+                plgp.setMean (new PlayerPose (bb.getDouble (0),
+                        bb.getDouble (8), bb.getDouble (16)));
+                plgp.setVariance        (bb.getDouble (24));
+                plgp.setParticles_count (particlesCount);
+
+                if (lazyDecoding) {
+                    plgp.setPayload (payload, 24 + 8 + 4, pc.getBufferPool ());
                     readyPlgp = true;
                     break;
                 }
-                default:{
-                    if (isDebugging)
-                        logger.log (Level.FINEST, "[Localize][Debug] : " +
-                                "Unexpected response " + header.getSubtype () +
-                                " of size = " + header.getSize ());
-                    break;
+
+                // Decode the particles in bulk into a structure of arrays
+                double[][] arrays;
+                if (recycleData) {
+                    arrays = recycled[recycledNext];
+                    recycledNext ^= 1;
+                    if (arrays[0] == null || arrays[0].length < particlesCount)
+                        for (int i = 0; i < 4; i++)
+                            arrays[i] = new double[particlesCount];
+                } else {
+                    arrays = new double[4][particlesCount];
                 }
+                PlayerLocalizeGetParticles.decode (bb, 24 + 8 + 4,
+                        particlesCount, arrays[0], arrays[1], arrays[2],
+                        arrays[3]);
+                pc.getBufferPool ().release (payload);
+                plgp.setArrays (arrays[0], arrays[1], arrays[2], arrays[3]);
+
+                readyPlgp = true;
+                break;
+            }
+            default:{
+                if (isDebugging)
+                    logger.log (Level.FINEST, "[Localize][Debug] : " +
+                            "Unexpected response " + header.getSubtype () +
+                            " of size = " + header.getSize ());
+                break;
             }
-        } catch (IOException e) {
-            throw new PlayerException
-                ("[Localize] : Error reading payload: " +
-                        e.toString(), e);
-        } catch (OncRpcException e) {
-            throw new PlayerException
-                ("[Localize] : Error while XDR-decoding payload: " +
-                        e.toString(), e);
         }
     }
 
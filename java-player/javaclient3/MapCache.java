@@ -0,0 +1,438 @@
+/*
+ *  Player Java Client 3 - MapCache.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import javaclient3.structures.PlayerConstants;
+import javaclient3.structures.map.PlayerMapData;
+import javaclient3.structures.map.PlayerMapDataVector;
+import javaclient3.structures.map.PlayerMapGrid;
+import javaclient3.structures.map.PlayerMapInfo;
+
+/**
+ * On-disk cache of the maps served by a map device, so that a client
+ * started again on the same map does not have to download it.
+ * <br><br>
+ * Each map is stored in its own file, named after the map identity (size,
+ * scale and origin, as given by {@link PlayerMapInfo}). The file holds the
+ * occupancy grid and, optionally, the vector map, with a checksum of each.
+ * Loading a grid maps the file into memory: no cell is read or copied
+ * until it is accessed, so a map of any size loads in constant time.
+ * <br><br>
+ * A cached map is only used if its identity matches the map information
+ * sent by the server; a map whose layout changed therefore misses the
+ * cache. Player gives no digest of the map content, so changes of the
+ * cells alone are found by {@link #loadGrid(PlayerMapInfo, MapInterface)},
+ * which requests a few small tiles from the server and compares them with
+ * the cached cells, dropping the cached copy on any difference. This is a
+ * sample: a change confined to cells outside the probed tiles goes
+ * unnoticed. Probes are placed at random on every load, so repeated loads
+ * cover different parts of the map; {@link #setProbes(int, int)} trades
+ * startup time for coverage. The optional checksum verification only
+ * catches damaged files.
+ * <br><br>
+ * Typical use:
+ * <pre>
+ *   PlayerMapGrid grid = cache.loadGrid (info, map);
+ *   if (grid == null) {
+ *       grid = map.fetchFullMap (null);
+ *       // ... wait for map.isFullMapReady ()
+ *       cache.store (info, grid, null);
+ *   }
+ * </pre>
+ * @author agent
+ */
+public class MapCache {
+
+    // Logging support
+    private Logger logger = Logger.getLogger (MapCache.class.getName ());
+
+    // File signature ("JPMC") and format version. The header holds, at
+    // these offsets: signature (0), version (4), width (8), height (12),
+    // scale (16), origin x, y, a (24, 32, 40), checksums of the cells and
+    // segments (48, 56), number of segments or -1 (64), offset of the
+    // cells (68) and vector map bounds (72..84); segments follow it
+    private static final int MAGIC   = 0x4A504D43;
+    private static final int VERSION = 1;
+    // Size of the fixed part of the header
+    private static final int HEADER  = 88;
+
+    // Directory holding the cache files
+    private final File    directory;
+    // Check the checksums when loading
+    private boolean       verify = false;
+    // Number and edge [pixels] of the tiles probed to validate a cached
+    // grid, and time to wait for each of them [ms]
+    private int           probes       = 4;
+    private int           probeSize    = 32;
+    private long          probeTimeout = 2000;
+    // Places the probes
+    private final Random  random = new Random ();
+
+    /**
+     * Create a cache.
+     * @param newDirectory directory holding the cache files, created if
+     * needed
+     */
+    public MapCache (File newDirectory) {
+        this.directory = newDirectory;
+    }
+
+    /**
+     * Check the checksum of the cells and segments when loading a map.
+     * This reads the whole file, which defeats lazy mapping but catches
+     * damaged files. Off by default.
+     * @param newVerify true to verify the checksums
+     */
+    public synchronized void setVerifyContent (boolean newVerify) {
+        this.verify = newVerify;
+    }
+
+    /**
+     * Set the tiles requested from the server to validate a cached grid
+     * (see {@link #loadGrid(PlayerMapInfo, MapInterface)}). The first
+     * probe is centered on the map, the others are placed at random.
+     * @param count number of tiles, 0 to trust the cache
+     * @param size edge of the tiles [pixels]
+     */
+    public synchronized void setProbes (int count, int size) {
+        if (count < 0 || size <= 0 ||
+            (long)size * size > PlayerConstants.PLAYER_MAP_MAX_TILE_SIZE)
+            throw new IllegalArgumentException
+                ("Invalid probes: " + count + " of " + size);
+        this.probes    = count;
+        this.probeSize = size;
+    }
+
+    /**
+     * Set the time to wait for each probed tile. A probe the server does
+     * not answer in time is ignored.
+     * @param millis timeout [ms]
+     */
+    public synchronized void setProbeTimeout (long millis) {
+        this.probeTimeout = millis;
+    }
+
+    /**
+     * Get the file a map is cached in.
+     * @param info the map information
+     * @return the cache file
+     */
+    public File getFile (PlayerMapInfo info) {
+        long id = 17;
+        id = 31 * id + Float.floatToIntBits (info.getScale ());
+        id = 31 * id + Double.doubleToLongBits (info.getOrigin ().getPx ());
+        id = 31 * id + Double.doubleToLongBits (info.getOrigin ().getPy ());
+        id = 31 * id + Double.doubleToLongBits (info.getOrigin ().getPa ());
+        return new File (directory, "map-" + info.getWidth () + "x" +
+                info.getHeight () + "-" + Long.toHexString (id) + ".cache");
+    }
+
+    /**
+     * Load a cached occupancy grid. The returned grid is backed by the
+     * mapped file. Its cells are not checked against the server (see
+     * {@link #loadGrid(PlayerMapInfo, MapInterface)}).
+     * @param info the map information sent by the server
+     * @return the grid, or null if the map is not cached or the cached
+     * copy is invalid
+     */
+    public synchronized PlayerMapGrid loadGrid (PlayerMapInfo info) {
+        ByteBuffer file = map (info);
+        if (file == null)
+            return null;
+        int cellsOffset = file.getInt (68);
+        file.position (cellsOffset);
+        ByteBuffer cells = file.slice ();
+        cells.limit (info.getWidth () * info.getHeight ());
+        if (verify && checksum (cells.duplicate ()) != file.getLong (48)) {
+            logger.log (Level.WARNING, "[MapCache] : Corrupted grid in " +
+                    getFile (info));
+            return null;
+        }
+        return new PlayerMapGrid (info.getWidth (), info.getHeight (),
+                info.getScale (), info.getOrigin ().getPx (),
+                info.getOrigin ().getPy (), info.getOrigin ().getPa (), cells);
+    }
+
+    /**
+     * Load a cached occupancy grid, and check it against tiles requested
+     * from the server (see {@link #setProbes(int, int)}). A cached copy
+     * which differs from the server map is removed. The tiles are read with
+     * {@link MapInterface#readTile(PlayerMapData, long)}: this must not be
+     * called during a full map retrieval.
+     * @param info the map information sent by the server
+     * @param map the map interface serving the map
+     * @return the grid, or null if the map is not cached, the cached copy
+     * is invalid, or it differs from the server map
+     */
+    public synchronized PlayerMapGrid loadGrid (PlayerMapInfo info,
+            MapInterface map) {
+        PlayerMapGrid grid = loadGrid (info);
+        if (grid == null)
+            return null;
+        int w = Math.min (probeSize, grid.getWidth  ());
+        int h = Math.min (probeSize, grid.getHeight ());
+        for (int i = 0; i < probes; i++) {
+            PlayerMapData tile = new PlayerMapData ();
+            if (i == 0) {
+                tile.setCol ((grid.getWidth  () - w) / 2);
+                tile.setRow ((grid.getHeight () - h) / 2);
+            } else {
+                tile.setCol (random.nextInt (grid.getWidth  () - w + 1));
+                tile.setRow (random.nextInt (grid.getHeight () - h + 1));
+            }
+            tile.setWidth  (w);
+            tile.setHeight (h);
+            PlayerMapData reply = map.readTile (tile, probeTimeout);
+            if (reply == null) {
+                logger.log (Level.FINE, "[MapCache] : No reply to probe (" +
+                        tile.getCol () + ", " + tile.getRow () + ")");
+                continue;
+            }
+            if (!matches (grid, reply)) {
+                logger.log (Level.INFO, "[MapCache] : Map changed at (" +
+                        reply.getCol () + ", " + reply.getRow () +
+                        "), dropping " + getFile (info));
+                invalidate (info);
+                return null;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Load a cached vector map.
+     * @param info the map information sent by the server
+     * @return the vector map, or null if the map is not cached, was cached
+     * without a vector map, or the cached copy is invalid
+     */
+    public synchronized PlayerMapDataVector loadVector (PlayerMapInfo info) {
+        ByteBuffer file = map (info);
+        if (file == null)
+            return null;
+        int count = file.getInt (64);
+        if (count < 0)
+            return null;
+        if (HEADER + 16L * count > file.getInt (68)) {
+            invalid (getFile (info), "truncated segments");
+            return null;
+        }
+        ByteBuffer seg = file.duplicate ();
+        seg.position (HEADER);
+        seg.limit (HEADER + 16 * count);
+        if (verify && checksum (seg.duplicate ()) != file.getLong (56)) {
+            logger.log (Level.WARNING, "[MapCache] : Corrupted vector map " +
+                    "in " + getFile (info));
+            return null;
+        }
+        PlayerMapDataVector vector = new PlayerMapDataVector ();
+        vector.setMinx (file.getFloat (72));
+        vector.setMaxx (file.getFloat (76));
+        vector.setMiny (file.getFloat (80));
+        vector.setMaxy (file.getFloat (84));
+        float[] coords = new float[4 * count];
+        seg.asFloatBuffer ().get (coords);
+        vector.setSegments_count (count);
+        vector.setCoords         (coords);
+        return vector;
+    }
+
+    /**
+     * Map the file of a map and check its header.
+     * @return the whole file, or null if missing or invalid
+     */
+    private ByteBuffer map (PlayerMapInfo info) {
+        File f = getFile (info);
+        if (!f.isFile ())
+            return null;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile (f, "r");
+            FileChannel channel = raf.getChannel ();
+            long size = channel.size ();
+            if (size < HEADER)
+                return invalid (f, "truncated header");
+            // The mapping stays valid once the file is closed
+            MappedByteBuffer file = channel.map
+                (FileChannel.MapMode.READ_ONLY, 0, size);
+            if (file.getInt (0) != MAGIC || file.getInt (4) != VERSION)
+                return invalid (f, "unknown format");
+            if (file.getInt (8)  != info.getWidth ()  ||
+                file.getInt (12) != info.getHeight () ||
+                Float.floatToIntBits (file.getFloat (16)) !=
+                    Float.floatToIntBits (info.getScale ()) ||
+                !same (file.getDouble (24), info.getOrigin ().getPx ()) ||
+                !same (file.getDouble (32), info.getOrigin ().getPy ()) ||
+                !same (file.getDouble (40), info.getOrigin ().getPa ()))
+                return invalid (f, "different map");
+            int cellsOffset = file.getInt (68);
+            if (cellsOffset < HEADER)
+                return invalid (f, "invalid cells offset");
+            long cellsEnd = (long)cellsOffset +
+                (long)info.getWidth () * info.getHeight ();
+            if (cellsEnd > size)
+                return invalid (f, "truncated cells");
+            return file;
+        } catch (IOException e) {
+            logger.log (Level.WARNING, "[MapCache] : Error reading " + f +
+                    ": " + e.toString ());
+            return null;
+        } finally {
+            if (raf != null)
+                try { raf.close (); } catch (IOException e) { }
+        }
+    }
+
+    private static boolean same (double a, double b) {
+        return Double.doubleToLongBits (a) == Double.doubleToLongBits (b);
+    }
+
+    private ByteBuffer invalid (File f, String reason) {
+        logger.log (Level.WARNING, "[MapCache] : Ignoring " + f + ": " +
+                reason);
+        return null;
+    }
+
+    /**
+     * Store a map, replacing any cached copy. The file is written aside
+     * and then renamed, so that a crash never leaves a partial file.
+     * @param info the map information sent by the server
+     * @param grid the occupancy grid
+     * @param vector the vector map, may be null
+     */
+    public synchronized void store (PlayerMapInfo info, PlayerMapGrid grid,
+            PlayerMapDataVector vector) {
+        if (grid.getWidth () != info.getWidth () ||
+            grid.getHeight () != info.getHeight ())
+            throw new IllegalArgumentException
+                ("Grid does not match the map information");
+        int count = (vector == null) ? -1 : vector.getSegments_count ();
+        int cellsOffset = HEADER + 16 * Math.max (count, 0);
+
+        ByteBuffer header = ByteBuffer.allocate (cellsOffset);
+        header.putInt    (0,  MAGIC);
+        header.putInt    (4,  VERSION);
+        header.putInt    (8,  info.getWidth ());
+        header.putInt    (12, info.getHeight ());
+        header.putFloat  (16, info.getScale ());
+        header.putDouble (24, info.getOrigin ().getPx ());
+        header.putDouble (32, info.getOrigin ().getPy ());
+        header.putDouble (40, info.getOrigin ().getPa ());
+        if (vector != null) {
+            header.putFloat (72, vector.getMinx ());
+            header.putFloat (76, vector.getMaxx ());
+            header.putFloat (80, vector.getMiny ());
+            header.putFloat (84, vector.getMaxy ());
+            float[] coords = vector.getCoords ();
+            header.position (HEADER);
+            for (int i = 0; i < 4 * count; i++)
+                header.putFloat (coords[i]);
+            ByteBuffer seg = header.duplicate ();
+            seg.position (HEADER);
+            seg.limit (cellsOffset);
+            header.putLong (56, checksum (seg));
+        }
+        ByteBuffer cells = grid.getBuffer ();
+        header.putLong (48, checksum (cells.duplicate ()));
+        header.putInt  (64, count);
+        header.putInt  (68, cellsOffset);
+        header.clear ();
+
+        File f = getFile (info);
+        File tmp = new File (directory, f.getName () + ".tmp");
+        RandomAccessFile raf = null;
+        try {
+            directory.mkdirs ();
+            raf = new RandomAccessFile (tmp, "rw");
+            raf.setLength (0);
+            FileChannel channel = raf.getChannel ();
+            while (header.hasRemaining ())
+                channel.write (header);
+            while (cells.hasRemaining ())
+                channel.write (cells);
+            channel.force (false);
+            raf.close ();
+            raf = null;
+            Files.move (tmp.toPath (), f.toPath (),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete ();
+            throw new PlayerException
+                ("[MapCache] : Error writing " + f + ": " + e.toString (), e);
+        } finally {
+            if (raf != null)
+                try { raf.close (); } catch (IOException e) { }
+        }
+    }
+
+    /**
+     * Remove the cached copy of a map.
+     * @param info the map information
+     */
+    public synchronized void invalidate (PlayerMapInfo info) {
+        getFile (info).delete ();
+    }
+
+    /**
+     * Check a cached grid against a tile freshly received from the server,
+     * e.g. a small tile requested at startup, to find out if the cells of
+     * the map changed.
+     * @param grid the cached grid
+     * @param tile the tile, decoded into its own cells (see
+     * {@link PlayerMapData#getCells()})
+     * @return true if the tile is identical to the same region of the grid
+     */
+    public static boolean matches (PlayerMapGrid grid, PlayerMapData tile) {
+        byte[] cells = tile.getCells ();
+        int col = tile.getCol    ();
+        int row = tile.getRow    ();
+        int w   = tile.getWidth  ();
+        int h   = tile.getHeight ();
+        if (cells == null || cells.length < w * h ||
+            !grid.contains (col, row, w, h))
+            return false;
+        for (int r = 0; r < h; r++)
+            for (int c = 0; c < w; c++)
+                if (grid.getCell (col + c, row + r) != cells[r * w + c])
+                    return false;
+        return true;
+    }
+
+    private static long checksum (ByteBuffer data) {
+        CRC32 crc = new CRC32 ();
+        crc.update (data);
+        return crc.getValue ();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Player Java Client 3 - MapFetchListener.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3;
+
+import javaclient3.structures.map.PlayerMapGrid;
+
+/**
+ * Follows the progress of a full map retrieval started with
+ * {@link MapInterface#fetchFullMap(int, int, MapFetchListener)}.
+ * @author agent
+ */
+public interface MapFetchListener {
+
+    /**
+     * Called on a decoding thread every time a tile has been written into
+     * the grid. Several tiles may be reported at once from different
+     * threads.
+     * @param grid the grid being assembled
+     * @param col the tile origin [pixels]
+     * @param row the tile origin [pixels]
+     * @param width the size of the tile [pixels]
+     * @param height the size of the tile [pixels]
+     * @param done number of tiles decoded so far
+     * @param total number of tiles of the map
+     */
+    public void tileDecoded (PlayerMapGrid grid, int col, int row, int width,
+            int height, int done, int total);
+
+    /**
+     * Called once if the retrieval fails: a tile was refused by the server
+     * or could not be decoded, or the server stopped replying. No tile is
+     * reported afterwards.
+     * @param grid the grid being assembled, holding the tiles decoded so
+     * far
+     * @param reason description of the failure
+     */
+    public void fetchFailed (PlayerMapGrid grid, String reason);
+}
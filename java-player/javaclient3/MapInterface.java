@@ -22,21 +22,28 @@
 package javaclient3;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 
 import javaclient3.structures.PlayerMsgHdr;
 import javaclient3.structures.PlayerPose;
-import javaclient3.structures.PlayerSegment;
 import javaclient3.structures.map.PlayerMapData;
 import javaclient3.structures.map.PlayerMapDataVector;
+import javaclient3.structures.map.PlayerMapGrid;
 import javaclient3.structures.map.PlayerMapInfo;
 import javaclient3.xdr.OncRpcException;
 import javaclient3.xdr.XdrBufferDecodingStream;
 import javaclient3.xdr.XdrBufferEncodingStream;
 
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * The map interface provides acces to an occupancy grid map. This interface returns no data 
@@ -58,9 +65,49 @@ public class MapInterface extends PlayerDevice {
     private PlayerMapInfo       pminfo;
     private boolean             readyPminfo       = false;
     private PlayerMapData       pmdata;
-    private boolean             readyPmdata       = false;
+    // Polled by readTile from another thread when the client is threaded;
+    // the volatile write publishes pmdata along with it
+    private volatile boolean    readyPmdata       = false;
     private PlayerMapDataVector pmdatavector;
     private boolean             readyPmdatavector = false;
+
+    // Grid tiles are written into, if any
+    private PlayerMapGrid       grid;
+    // Decode tiles into their own cells even if a grid is set, and tell
+    // that a tile request was refused
+    private volatile boolean    tileOnly    = false;
+    private volatile boolean    tileRefused = false;
+    // Decompressor reused for all the tiles
+    private Inflater            inflater;
+    // Buffer for the residual zero bytes of a tile
+    private final byte[]        padding = new byte[4];
+
+    // Full map retrieval: grid being assembled (null when not running),
+    // tile edge, request window, tiles per row, number of tiles and next
+    // tile to request
+    private PlayerMapGrid       fetchGrid;
+    private int                 fetchTile;
+    private int                 fetchWindow;
+    private int                 fetchCols;
+    private int                 fetchTotal;
+    private int                 fetchNext;
+    // Outstanding tile requests, oldest first (the server replies in order)
+    private final ArrayDeque<TileRequest> fetchPending =
+        new ArrayDeque<TileRequest> ();
+    private MapFetchListener    fetchListener;
+    private final AtomicInteger fetchDone = new AtomicInteger ();
+    private volatile boolean    readyGrid = false;
+    private volatile boolean    failedGrid = false;
+    // Number of times a refused tile is requested again, time without a
+    // reply after which a retrieval is abandoned [ms] (0 to wait forever)
+    // and time of the last reply
+    private int                 fetchRetries = 2;
+    private long                fetchTimeout = 0;
+    private long                fetchLastReply;
+    private Executor            fetchExecutor = ForkJoinPool.commonPool ();
+    // Decompressors used by the decoding tasks
+    private final ConcurrentLinkedQueue<Inflater> inflaters =
+        new ConcurrentLinkedQueue<Inflater> ();
     
     /**
      * Constructor for MapInterface.
@@ -180,6 +227,50 @@ public class MapInterface extends PlayerDevice {
         }
     }
     
+    /**
+     * Request a grid map tile and wait for the reply. The tile is decoded
+     * into its own cells (see {@link PlayerMapData#getCells()}), even if a
+     * grid is set with {@link #setGrid(PlayerMapGrid)}.
+     * <br><br>
+     * If the client is not threaded, the replies are read by this method,
+     * which then blocks while the server sends nothing at all; otherwise
+     * the method waits for the client thread to read the reply.
+     * @param pmd a PlayerMapData structure filled with the tile origin and
+     * size
+     * @param timeout maximum time to wait for the reply [ms]
+     * @return the tile, or null if the server refused the request or did
+     * not reply in time
+     */
+    public PlayerMapData readTile (PlayerMapData pmd, long timeout) {
+        synchronized (this) {
+            if (fetchGrid != null || !fetchPending.isEmpty ())
+                throw new IllegalStateException
+                    ("A map retrieval is running");
+            readyPmdata = false;
+            tileRefused = false;
+            tileOnly    = true;
+        }
+        try {
+            requestMapData (pmd);
+            long deadline = System.currentTimeMillis () + timeout;
+            while (!readyPmdata && !tileRefused &&
+                   System.currentTimeMillis () < deadline) {
+                if (pc.isThreaded ())
+                    try { Thread.sleep (1); } catch (InterruptedException e) {
+                        Thread.currentThread ().interrupt ();
+                        return null;
+                    }
+                else
+                    pc.readAll ();
+            }
+            if (!isGridDataReady ())
+                return null;
+            return getGridData ();
+        } finally {
+            tileOnly = false;
+        }
+    }
+
     /**
      * Request/reply: Get vector map.
      * <br><br>
@@ -231,35 +322,40 @@ public class MapInterface extends PlayerDevice {
                     xdr.endDecoding   ();
                     xdr.close ();
                     
-                    // Buffer for reading data (non XDR)
-                    buffer = new byte[PLAYER_MAP_MAX_TILE_SIZE];
-                    // Read data
-                    is.readFully (buffer, 0, pmdata.getData_count ());
-
+                    // Buffer for reading the compressed data (non XDR),
+                    // sized to the compressed size
+                    int count = pmdata.getData_count ();
+                    buffer = readPayload (count);
+                    // Take care of the residual zero bytes
+                    if ((count % 4) != 0)
+                        is.readFully (padding, 0, 4 - (count % 4));
+                    TileRequest req = tileReceived ();
+                    if (req != null) {
+                        // Part of a full map retrieval: decode the tile in
+                        // the background, unless the retrieval was
+                        // cancelled
+                        if (req.grid == getFetchGrid ())
+                            fetchExecutor.execute (new DecodeTile
+                                (req.grid, pmdata.getCol (), pmdata.getRow (),
+                                 pmdata.getWidth (), pmdata.getHeight (),
+                                 buffer, count));
+                        else
+                            pc.getBufferPool ().release (buffer);
+                        break;
+                    }
                     try {
-                        byte[] outbuffer = new byte[PLAYER_MAP_MAX_TILE_SIZE];
-                        Inflater decomp = new Inflater ();
-                        decomp.reset ();
-                        // NOTE: need to offset input buffer by 4 bytes
-                        decomp.setInput (buffer, 0, pmdata.getData_count ());
-                        int len = decomp.inflate (outbuffer);
-                        pmdata.setData (new String (outbuffer).toCharArray ());
-
-                        // Take care of the residual zero bytes
-                        if ((pmdata.getData_count () % 4) != 0)
-                            is.readFully (buffer, 0, 4 - 
-                                    (pmdata.getData_count () % 4));
-
+                        int len = inflateTile (buffer, count);
                         // Reset data count
                         pmdata.setData_count (len);
-                        logger.log (Level.INFO, "Map decompress: "
-                                + pmdata.getData_count () + " bytes");
-                        
-                        readyPmdata = true;
-                    } catch (Exception ex) {
-                        ex.printStackTrace ();
+                    } finally {
+                        pc.getBufferPool ().release (buffer);
                     }
+                    if (isDebugging)
+                        logger.log (Level.FINEST, "[Map][Debug] : " +
+                                "Map decompress: " + pmdata.getData_count () +
+                                " bytes");
 
+                    readyPmdata = true;
                     break;
                 }
                 case PLAYER_MAP_REQ_GET_VECTOR: {
@@ -281,29 +377,21 @@ public class MapInterface extends PlayerDevice {
                     xdr.endDecoding   ();
                     xdr.close ();
                     
-                    // Buffer for reading data
-                    buffer = new byte[PLAYER_MAP_MAX_SEGMENTS * 16];
+                    // Buffer for reading data, sized to the actual count
+                    buffer = pc.getBufferPool ().acquire (segmentsCount * 16);
                     // Read data
                     is.readFully (buffer, 0, segmentsCount * 16);
                     
-                    // Begin decoding the XDR buffer
-                    xdr = new XdrBufferDecodingStream (buffer);
-                    xdr.beginDecoding ();
-                    PlayerSegment[] segments = new PlayerSegment[segmentsCount];
-                    for (int i = 0; i < segmentsCount; i++) {
-                        PlayerSegment seg = new PlayerSegment ();
-                        seg.setX0 (xdr.xdrDecodeFloat ());
-                        seg.setY0 (xdr.xdrDecodeFloat ());
-                        seg.setX1 (xdr.xdrDecodeFloat ());
-                        seg.setY1 (xdr.xdrDecodeFloat ());
-                        
-                        segments[i] = seg;
-                    }
-                    xdr.endDecoding   ();
-                    xdr.close ();
-                    
+                    // Decode the segments straight into coordinate arrays
+                    ByteBuffer bb = ByteBuffer.wrap (buffer);
+                    float[] coords = new float[4 * segmentsCount];
+                    for (int i = 0; i < coords.length; i++)
+                        coords[i] = bb.getFloat (4 * i);
+
+                    pc.getBufferPool ().release (buffer);
+
                     pmdatavector.setSegments_count (segmentsCount);
-                    pmdatavector.setSegments       (segments);
+                    pmdatavector.setCoords         (coords);
                     
                     readyPmdatavector = true;
                     break;
@@ -327,6 +415,455 @@ public class MapInterface extends PlayerDevice {
         }
     }
 
+    /**
+     * Handle negative acknowledgement response messages. A refused tile of
+     * a full map retrieval is requested again, up to the number of retries
+     * set with {@link #setFetchRetries(int)}, after which the retrieval
+     * fails.
+     * @param header Player header
+     */
+    protected void handleNARMessage (PlayerMsgHdr header) {
+        if (header.getSubtype () != PLAYER_MAP_REQ_GET_DATA) {
+            super.handleNARMessage (header);
+            return;
+        }
+        MapFetchListener listener;
+        PlayerMapGrid g;
+        TileRequest req;
+        synchronized (this) {
+            if (fetchPending.isEmpty ()) {
+                tileRefused = true;
+                return;
+            }
+            req = fetchPending.poll ();
+            fetchLastReply = System.currentTimeMillis ();
+            if (req.grid != fetchGrid)
+                return;
+            if (req.tries < fetchRetries) {
+                logger.log (Level.FINE, "[Map] : Tile " + req.index +
+                        " refused, requesting it again");
+                req.tries++;
+                sendTileRequest (req);
+                return;
+            }
+            listener = fetchListener;
+            g        = fetchGrid;
+            endFetch (false);
+        }
+        String reason = "Tile (" + tileCol (req) + ", " + tileRow (req) +
+            ") refused by the server";
+        logger.log (Level.WARNING, "[Map] : " + reason);
+        if (listener != null)
+            listener.fetchFailed (g, reason);
+    }
+
+    /**
+     * Inflate the compressed cells of the current tile, either into the
+     * grid at the tile offset or into the tile itself.
+     * @return number of cells inflated
+     */
+    private int inflateTile (byte[] buffer, int count) {
+        int col = pmdata.getCol    ();
+        int row = pmdata.getRow    ();
+        int w   = pmdata.getWidth  ();
+        int h   = pmdata.getHeight ();
+        PlayerMapGrid g = tileOnly ? null : getGrid ();
+        if (g != null && !g.contains (col, row, w, h)) {
+            logger.log (Level.WARNING, "[Map] : Tile (" + col + ", " + row +
+                    ") of " + w + "x" + h + " does not fit the grid");
+            g = null;
+        }
+        if (inflater == null)
+            inflater = new Inflater ();
+        try {
+            if (g == null) {
+                byte[] cells = new byte[w * h];
+                pmdata.setCells (cells);
+                return inflate (inflater, buffer, count, cells, 0, w, w, h);
+            }
+            pmdata.setCells (null);
+            return inflate (inflater, buffer, count, g.getCells (),
+                    row * g.getWidth () + col, g.getWidth (), w, h);
+        } catch (DataFormatException e) {
+            throw new PlayerException
+                ("[Map] : Error inflating map tile: " + e.toString(), e);
+        }
+    }
+
+    /**
+     * Inflate compressed cells row by row into a cell array.
+     * @param inf the decompressor, reset before use
+     * @param src the compressed cells
+     * @param count number of compressed bytes
+     * @param dst the cell array
+     * @param off index of the first cell of the tile in dst
+     * @param stride number of cells between two rows in dst
+     * @param w the size of the tile [pixels]
+     * @param h the size of the tile [pixels]
+     * @return number of cells inflated
+     * @throws DataFormatException if the compressed cells are corrupt
+     */
+    private static int inflate (Inflater inf, byte[] src, int count,
+            byte[] dst, int off, int stride, int w, int h)
+            throws DataFormatException {
+        inf.reset ();
+        // src holds the compressed bytes only: the XDR array length was
+        // read along with the tile header
+        inf.setInput (src, 0, count);
+        int len = 0;
+        for (int r = 0; r < h; r++) {
+            int o    = off + r * stride;
+            int done = 0;
+            while (done < w && !inf.finished () && !inf.needsInput ()) {
+                int left = inf.getRemaining ();
+                int n    = inf.inflate (dst, o + done, w - done);
+                // Player never uses a preset dictionary, and neither input
+                // nor output progressing means a corrupt stream
+                if (inf.needsDictionary () ||
+                    (n == 0 && inf.getRemaining () == left))
+                    throw new DataFormatException ("Corrupt tile data");
+                done += n;
+            }
+            len += done;
+            if (done < w)
+                break;
+        }
+        return len;
+    }
+
+    /**
+     * Retrieve the whole occupancy grid, using tiles of 1024x1024 cells
+     * and up to 4 outstanding requests.
+     * @param listener notified as tiles are decoded, may be null
+     * @return the grid being assembled
+     * @see #fetchFullMap(int, int, MapFetchListener)
+     */
+    public PlayerMapGrid fetchFullMap (MapFetchListener listener) {
+        return fetchFullMap (1024, 4, listener);
+    }
+
+    /**
+     * Retrieve the whole occupancy grid, whose layout is taken from the
+     * last map information received (see
+     * {@link #requestMapInformation()}).
+     * <br><br>
+     * The map is split into square tiles, and several tile requests are
+     * kept outstanding so that the server always has work queued: a new
+     * request is sent as each reply arrives. Replies are inflated in
+     * parallel, directly into the returned grid, which becomes the grid of
+     * this interface (see {@link #setGrid(PlayerMapGrid)}). The method does
+     * not wait: replies are handled as the client reads data, and
+     * {@link #isFullMapReady()} tells when all the tiles are in.
+     * <br><br>
+     * While tile requests are outstanding, all grid map tile replies are
+     * taken as part of the retrieval and are not reported by
+     * {@link #isGridDataReady()}.
+     * <br><br>
+     * A tile refused by the server is requested again (see
+     * {@link #setFetchRetries(int)}); the retrieval fails if it keeps being
+     * refused, if a tile cannot be decoded, or if no reply arrives within
+     * the timeout set with {@link #setFetchTimeout(long)}.
+     * {@link #isFullMapFailed()} and the listener report failures. A
+     * retrieval can also be stopped with {@link #cancelFetch()}.
+     * @param tileSize edge of the tiles [pixels]
+     * @param window maximum number of outstanding tile requests
+     * @param listener notified as tiles are decoded, may be null
+     * @return the grid being assembled
+     */
+    public synchronized PlayerMapGrid fetchFullMap (int tileSize, int window,
+            MapFetchListener listener) {
+        if (pminfo == null)
+            throw new IllegalStateException
+                ("No map information received yet");
+        return fetchFullMap (new PlayerMapGrid (pminfo), tileSize, window,
+                             listener);
+    }
+
+    /**
+     * Retrieve the full map into a grid supplied by the caller, e.g. one
+     * a {@link javaclient3.extra.MapPyramid} was built on, so that the
+     * listener can recognize the tiles of its own grid.
+     * @param grid the grid to fill, with the size of the map information
+     * @param tileSize edge of the tiles [pixels]
+     * @param window maximum number of outstanding tile requests
+     * @param listener notified as tiles are decoded, may be null
+     * @return grid
+     * @see #fetchFullMap(int, int, MapFetchListener)
+     */
+    public synchronized PlayerMapGrid fetchFullMap (PlayerMapGrid grid,
+            int tileSize, int window, MapFetchListener listener) {
+        if (pminfo == null)
+            throw new IllegalStateException
+                ("No map information received yet");
+        if (grid.getWidth () != pminfo.getWidth () ||
+            grid.getHeight () != pminfo.getHeight ())
+            throw new IllegalArgumentException
+                ("Grid size " + grid.getWidth () + "x" + grid.getHeight () +
+                 " does not match the map size " + pminfo.getWidth () +
+                 "x" + pminfo.getHeight ());
+        if (fetchGrid != null)
+            throw new IllegalStateException
+                ("A map retrieval is already running");
+        if (tileSize <= 0 || (long)tileSize * tileSize > PLAYER_MAP_MAX_TILE_SIZE)
+            throw new IllegalArgumentException
+                ("Invalid tile size: " + tileSize);
+        if (window <= 0)
+            throw new IllegalArgumentException ("Invalid window: " + window);
+
+        PlayerMapGrid g = grid;
+        setGrid (g);
+        fetchGrid      = g;
+        fetchTile      = tileSize;
+        fetchWindow    = window;
+        fetchListener  = listener;
+        fetchCols      = (g.getWidth () + tileSize - 1) / tileSize;
+        fetchNext      = 0;
+        fetchDone.set (0);
+        readyGrid      = false;
+        failedGrid     = false;
+        fetchLastReply = System.currentTimeMillis ();
+        fetchTotal     = fetchCols * ((g.getHeight () + tileSize - 1) / tileSize);
+        requestNextTiles ();
+        return g;
+    }
+
+    /**
+     * Stop the running full map retrieval, if any. No more tiles are
+     * requested, and the replies to the outstanding requests are dropped.
+     * The grid keeps the tiles decoded so far.
+     */
+    public synchronized void cancelFetch () {
+        if (fetchGrid == null)
+            return;
+        endFetch (false);
+        failedGrid = false;
+    }
+
+    /**
+     * End the running retrieval.
+     */
+    private synchronized void endFetch (boolean complete) {
+        fetchGrid     = null;
+        fetchTotal    = 0;
+        fetchListener = null;
+        readyGrid     = complete;
+        failedGrid    = !complete;
+    }
+
+    /**
+     * @return the grid of the running full map retrieval, or null
+     */
+    private synchronized PlayerMapGrid getFetchGrid () {
+        return this.fetchGrid;
+    }
+
+    /**
+     * Send tile requests until the window is full or all the tiles of the
+     * map were requested.
+     */
+    private synchronized void requestNextTiles () {
+        while (fetchGrid != null && fetchPending.size () < fetchWindow &&
+               fetchNext < fetchTotal) {
+            sendTileRequest (new TileRequest (fetchGrid, fetchNext));
+            fetchNext++;
+        }
+    }
+
+    /**
+     * Request a tile of the running retrieval.
+     */
+    private synchronized void sendTileRequest (TileRequest req) {
+        PlayerMapData tile = new PlayerMapData ();
+        tile.setCol    (tileCol (req));
+        tile.setRow    (tileRow (req));
+        tile.setWidth  (Math.min (fetchTile, req.grid.getWidth  () - tile.getCol ()));
+        tile.setHeight (Math.min (fetchTile, req.grid.getHeight () - tile.getRow ()));
+        requestMapData (tile);
+        fetchPending.add (req);
+    }
+
+    private int tileCol (TileRequest req) {
+        return (req.index % fetchCols) * fetchTile;
+    }
+
+    private int tileRow (TileRequest req) {
+        return (req.index / fetchCols) * fetchTile;
+    }
+
+    /**
+     * Account for a tile reply, and request the next tiles if it belongs
+     * to a full map retrieval.
+     * @return the request the reply answers, or null if it does not belong
+     * to a full map retrieval
+     */
+    private synchronized TileRequest tileReceived () {
+        TileRequest req = fetchPending.poll ();
+        if (req == null)
+            return null;
+        fetchLastReply = System.currentTimeMillis ();
+        requestNextTiles ();
+        return req;
+    }
+
+    /**
+     * Called by the decoding tasks once a tile is written into the grid.
+     */
+    private void tileDecoded (PlayerMapGrid g, int col, int row, int width,
+            int height) {
+        int done;
+        int total;
+        MapFetchListener listener;
+        synchronized (this) {
+            // Tiles of a cancelled or failed retrieval are not reported
+            if (g != fetchGrid)
+                return;
+            done     = fetchDone.incrementAndGet ();
+            total    = fetchTotal;
+            listener = fetchListener;
+            if (done == total)
+                endFetch (true);
+        }
+        if (listener != null)
+            listener.tileDecoded (g, col, row, width, height, done, total);
+    }
+
+    /**
+     * Called by the decoding tasks when a tile cannot be decoded.
+     */
+    private void tileCorrupted (PlayerMapGrid g, int col, int row,
+            String reason) {
+        MapFetchListener listener;
+        synchronized (this) {
+            if (g != fetchGrid)
+                return;
+            listener = fetchListener;
+            endFetch (false);
+        }
+        reason = "Error inflating map tile (" + col + ", " + row + "): " +
+            reason;
+        logger.log (Level.WARNING, "[Map] : " + reason);
+        if (listener != null)
+            listener.fetchFailed (g, reason);
+    }
+
+    /**
+     * Abandon the running retrieval if the server stopped replying.
+     */
+    private void checkFetchTimeout () {
+        MapFetchListener listener;
+        PlayerMapGrid g;
+        synchronized (this) {
+            if (fetchGrid == null || fetchPending.isEmpty () ||
+                fetchTimeout <= 0 ||
+                System.currentTimeMillis () - fetchLastReply < fetchTimeout)
+                return;
+            listener = fetchListener;
+            g        = fetchGrid;
+            // No reply is expected anymore: later tile replies are reported
+            // by isGridDataReady ()
+            fetchPending.clear ();
+            endFetch (false);
+        }
+        String reason = "No reply from the server for " + fetchTimeout +
+            " ms";
+        logger.log (Level.WARNING, "[Map] : " + reason);
+        if (listener != null)
+            listener.fetchFailed (g, reason);
+    }
+
+    /**
+     * Check if a retrieval started with
+     * {@link #fetchFullMap(int, int, MapFetchListener)} has completed.
+     * @return true if ready, false if not ready
+     */
+    public boolean isFullMapReady () {
+        checkFetchTimeout ();
+        if (readyGrid) {
+            readyGrid = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a retrieval started with
+     * {@link #fetchFullMap(int, int, MapFetchListener)} has failed. The
+     * grid keeps the tiles decoded so far.
+     * @return true if failed, false if not failed
+     */
+    public boolean isFullMapFailed () {
+        checkFetchTimeout ();
+        if (failedGrid) {
+            failedGrid = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Set the number of times a tile refused by the server during a full
+     * map retrieval is requested again before the retrieval fails. The
+     * default is 2.
+     * @param retries number of retries
+     */
+    public synchronized void setFetchRetries (int retries) {
+        if (retries < 0)
+            throw new IllegalArgumentException ("Invalid retries: " + retries);
+        this.fetchRetries = retries;
+    }
+
+    /**
+     * Set the time without any tile reply after which a full map
+     * retrieval fails. The timeout is checked by
+     * {@link #isFullMapReady()} and {@link #isFullMapFailed()}. The
+     * default is 0, waiting forever.
+     * @param millis timeout [ms], 0 to wait forever
+     */
+    public synchronized void setFetchTimeout (long millis) {
+        if (millis < 0)
+            throw new IllegalArgumentException ("Invalid timeout: " + millis);
+        this.fetchTimeout = millis;
+    }
+
+    /**
+     * Set the executor map tiles are decoded on during a full map
+     * retrieval. The default is the common fork/join pool.
+     * @param executor the executor
+     */
+    public void setFetchExecutor (Executor executor) {
+        this.fetchExecutor = executor;
+    }
+
+    /**
+     * Write the grid map tiles received from now on into a grid, at their
+     * (col, row) offset, instead of into each tile. Tiles which do not fit
+     * the grid are still decoded into the tile.
+     * @param newGrid the grid, or null to decode into the tiles
+     */
+    public synchronized void setGrid (PlayerMapGrid newGrid) {
+        this.grid = newGrid;
+    }
+
+    /**
+     * @return the grid tiles are written into, or null
+     */
+    public synchronized PlayerMapGrid getGrid () {
+        return this.grid;
+    }
+
+    /**
+     * Free the decompressors.
+     */
+    protected synchronized void dispose () {
+        if (inflater != null) {
+            inflater.end ();
+            inflater = null;
+        }
+        Inflater inf;
+        while ((inf = inflaters.poll ()) != null)
+            inf.end ();
+    }
+
     /**
      * Get the map info data.
      * @return an object of type PlayerMapInfo containing the map info data 
@@ -380,4 +917,69 @@ public class MapInterface extends PlayerDevice {
         }
         return false;
     }
+
+    /**
+     * Inflate a tile of a full map retrieval into the grid.
+     */
+    private class DecodeTile implements Runnable {
+
+        private final PlayerMapGrid grid;
+        private final int           col;
+        private final int           row;
+        private final int           width;
+        private final int           height;
+        private final byte[]        buffer;
+        private final int           count;
+
+        DecodeTile (PlayerMapGrid newGrid, int newCol, int newRow, int newWidth, int newHeight,
+                byte[] newBuffer, int newCount) {
+            this.grid   = newGrid;
+            this.col    = newCol;
+            this.row    = newRow;
+            this.width  = newWidth;
+            this.height = newHeight;
+            this.buffer = newBuffer;
+            this.count  = newCount;
+        }
+
+        public void run () {
+            PlayerMapGrid g = grid;
+            Inflater inf = inflaters.poll ();
+            if (inf == null)
+                inf = new Inflater ();
+            try {
+                if (g.contains (col, row, width, height))
+                    inflate (inf, buffer, count, g.getCells (),
+                            row * g.getWidth () + col, g.getWidth (),
+                            width, height);
+                else
+                    logger.log (Level.WARNING, "[Map] : Tile (" + col + ", " +
+                            row + ") of " + width + "x" + height +
+                            " does not fit the grid");
+            } catch (DataFormatException e) {
+                tileCorrupted (g, col, row, e.toString ());
+                return;
+            } finally {
+                pc.getBufferPool ().release (buffer);
+                inflaters.offer (inf);
+            }
+            tileDecoded (g, col, row, width, height);
+        }
+    }
+
+    /**
+     * An outstanding tile request of a full map retrieval.
+     */
+    private static class TileRequest {
+
+        // Grid of the retrieval, index of the tile and number of retries
+        private final PlayerMapGrid grid;
+        private final int           index;
+        private int                 tries;
+
+        TileRequest (PlayerMapGrid newGrid, int newIndex) {
+            this.grid  = newGrid;
+            this.index = newIndex;
+        }
+    }
 }
@@ -0,0 +1,317 @@
+/*
+ *  Player Java Client 3 - OdometryHistory.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3;
+
+/**
+ * A fixed-capacity history of timestamped robot poses and velocities,
+ * stored in primitive ring buffers. Once full, the oldest sample is
+ * overwritten. The state at any time covered by the history is obtained by
+ * linear interpolation between the two closest samples, found by binary
+ * search; samples within a time interval can be copied out in bulk.
+ * <br><br>
+ * Position devices keep a history of their odometry when enabled with
+ * {@link AbstractPositionDevice#setHistorySize(int)}.
+ * @author agent
+ */
+public class OdometryHistory {
+
+    // Sample timestamps [s], in increasing order from start
+    private double[] t;
+    // Sample poses [m, m, rad]
+    private double[] x;
+    private double[] y;
+    private double[] a;
+    // Sample velocities [m/s, m/s, rad/s]
+    private double[] vx;
+    private double[] vy;
+    private double[] va;
+
+    // Index of the oldest sample
+    private int start;
+    // Number of samples in the history
+    private int size;
+
+    /**
+     * Create an empty history.
+     * @param capacity maximum number of samples kept
+     */
+    public OdometryHistory (int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException
+                ("Capacity must be at least 2: " + capacity);
+        t = new double[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        a = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        va = new double[capacity];
+    }
+
+    /**
+     * Append a pose with zero velocity.
+     * @param timestamp time of the pose [s]
+     * @param px X [m]
+     * @param py Y [m]
+     * @param pa yaw [rad]
+     * @see #add(double, double, double, double, double, double, double)
+     */
+    public void add (double timestamp, double px, double py, double pa) {
+        add (timestamp, px, py, pa, 0, 0, 0);
+    }
+
+    /**
+     * Append a sample. Samples must be added in increasing time order;
+     * samples not newer than the latest one are ignored.
+     * @param timestamp time of the sample [s]
+     * @param px X [m]
+     * @param py Y [m]
+     * @param pa yaw [rad]
+     * @param vpx X velocity [m/s]
+     * @param vpy Y velocity [m/s]
+     * @param vpa yaw rate [rad/s]
+     */
+    public synchronized void add (double timestamp, double px, double py,
+            double pa, double vpx, double vpy, double vpa) {
+        if (size > 0 && timestamp <= t[index (size - 1)])
+            return;
+        int i;
+        if (size < t.length) {
+            i = index (size);
+            size++;
+        } else {
+            i = start;
+            start = (start + 1) % t.length;
+        }
+        t[i] = timestamp;
+        x[i] = px;
+        y[i] = py;
+        a[i] = pa;
+        vx[i] = vpx;
+        vy[i] = vpy;
+        va[i] = vpa;
+    }
+
+    /**
+     * Get the pose at a given time, interpolating between the two closest
+     * samples. Times outside the history are clamped to the oldest or the
+     * newest sample.
+     * @param timestamp time of the requested pose [s]
+     * @param pose receives x [m], y [m] and yaw [rad]
+     * @return false if the history is empty, true otherwise
+     */
+    public synchronized boolean getPoseAt (double timestamp, double[] pose) {
+        if (size == 0)
+            return false;
+        int hi = search (timestamp);
+        if (hi == 0 || hi == size) {
+            int i = index (hi == 0 ? 0 : size - 1);
+            pose[0] = x[i];
+            pose[1] = y[i];
+            pose[2] = a[i];
+            return true;
+        }
+        int i0 = index (hi - 1);
+        int i1 = index (hi);
+        double f = (timestamp - t[i0]) / (t[i1] - t[i0]);
+        pose[0] = x[i0] + f * (x[i1] - x[i0]);
+        pose[1] = y[i0] + f * (y[i1] - y[i0]);
+        pose[2] = normalize (a[i0] + f * normalize (a[i1] - a[i0]));
+        return true;
+    }
+
+    /**
+     * Get the pose and velocity at a given time, interpolating between the
+     * two closest samples. Times outside the history are clamped to the
+     * oldest or the newest sample.
+     * @param timestamp time of the requested state [s]
+     * @param state receives x [m], y [m], yaw [rad], x and y velocities
+     * [m/s] and yaw rate [rad/s]
+     * @return false if the history is empty, true otherwise
+     */
+    public synchronized boolean getStateAt (double timestamp, double[] state) {
+        if (!getPoseAt (timestamp, state))
+            return false;
+        int hi = search (timestamp);
+        if (hi == 0 || hi == size) {
+            int i = index (hi == 0 ? 0 : size - 1);
+            state[3] = vx[i];
+            state[4] = vy[i];
+            state[5] = va[i];
+            return true;
+        }
+        int i0 = index (hi - 1);
+        int i1 = index (hi);
+        double f = (timestamp - t[i0]) / (t[i1] - t[i0]);
+        state[3] = vx[i0] + f * (vx[i1] - vx[i0]);
+        state[4] = vy[i0] + f * (vy[i1] - vy[i0]);
+        state[5] = va[i0] + f * (va[i1] - va[i0]);
+        return true;
+    }
+
+    /**
+     * Count the samples taken within a time interval.
+     * @param from start of the interval, inclusive [s]
+     * @param to end of the interval, inclusive [s]
+     * @return number of samples in the interval
+     */
+    public synchronized int count (double from, double to) {
+        if (to < from)
+            return 0;
+        return search (to) - searchBefore (from);
+    }
+
+    /**
+     * Copy the samples taken within a time interval, oldest first. Each
+     * sample is written as 7 consecutive values: timestamp [s], x [m],
+     * y [m], yaw [rad], x and y velocities [m/s] and yaw rate [rad/s].
+     * @param from start of the interval, inclusive [s]
+     * @param to end of the interval, inclusive [s]
+     * @param samples receives the samples
+     * @return number of samples copied, limited by the size of the array
+     */
+    public synchronized int getRange (double from, double to,
+            double[] samples) {
+        if (to < from)
+            return 0;
+        int first = searchBefore (from);
+        int n = Math.min (search (to) - first, samples.length / 7);
+        for (int k = 0, j = 0; k < n; k++) {
+            int i = index (first + k);
+            samples[j++] = t[i];
+            samples[j++] = x[i];
+            samples[j++] = y[i];
+            samples[j++] = a[i];
+            samples[j++] = vx[i];
+            samples[j++] = vy[i];
+            samples[j++] = va[i];
+        }
+        return n;
+    }
+
+    /**
+     * Copy one sample, using the layout of
+     * {@link #getRange(double, double, double[])}.
+     * @param k position of the sample in the history (0 = oldest)
+     * @param sample receives the sample
+     */
+    public synchronized void getSample (int k, double[] sample) {
+        if (k < 0 || k >= size)
+            throw new IndexOutOfBoundsException
+                ("Sample " + k + " out of range [0, " + size + ")");
+        int i = index (k);
+        sample[0] = t[i];
+        sample[1] = x[i];
+        sample[2] = y[i];
+        sample[3] = a[i];
+        sample[4] = vx[i];
+        sample[5] = vy[i];
+        sample[6] = va[i];
+    }
+
+    /**
+     * @return number of samples in the history
+     */
+    public synchronized int size () {
+        return this.size;
+    }
+
+    /**
+     * @return maximum number of samples kept
+     */
+    public int getCapacity () {
+        return t.length;
+    }
+
+    /**
+     * @return time of the oldest sample [s], or NaN if the history is empty
+     */
+    public synchronized double getOldestTimestamp () {
+        return (size == 0) ? Double.NaN : t[start];
+    }
+
+    /**
+     * @return time of the newest sample [s], or NaN if the history is empty
+     */
+    public synchronized double getNewestTimestamp () {
+        return (size == 0) ? Double.NaN : t[index (size - 1)];
+    }
+
+    /**
+     * Remove all samples.
+     */
+    public synchronized void clear () {
+        start = 0;
+        size  = 0;
+    }
+
+    /**
+     * Map a position in the history (0 = oldest) to an array index.
+     */
+    private int index (int k) {
+        int i = start + k;
+        return (i >= t.length) ? i - t.length : i;
+    }
+
+    /**
+     * Binary search for the first sample newer than a given time.
+     * @return position (0 = oldest) of the first sample with a timestamp
+     * greater than the given time, or size if there is none
+     */
+    private int search (double timestamp) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (t[index (mid)] <= timestamp)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Binary search for the first sample not older than a given time.
+     * @return position (0 = oldest) of the first sample with a timestamp
+     * greater than or equal to the given time, or size if there is none
+     */
+    private int searchBefore (double timestamp) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (t[index (mid)] < timestamp)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Normalize an angle to [-PI, PI).
+     */
+    static double normalize (double angle) {
+        return angle - 2 * Math.PI * Math.floor ((angle + Math.PI) / (2 * Math.PI));
+    }
+}
@@ -76,6 +76,9 @@ public class PlayerClient extends Thread implements PlayerConstants {
     // Used for lookupName () and lookupCode ()
     private PlayerClientUtils      pcu = new PlayerClientUtils ();
 
+    // Buffers for raw payloads, shared by all devices of this client
+    private XdrBufferPool          bufferPool = new XdrBufferPool ();
+
     protected Socket socket;
     protected BufferedOutputStream buffer;
 
@@ -214,6 +217,8 @@ public class PlayerClient extends Thread implements PlayerConstants {
   */
             // close all sockets
             this.setNotThreaded ();
+            for (int i = 0; i < deviceList.size (); i++)
+                deviceList.get (i).dispose ();
             os.close     ();
             buffer.close ();
             is.close     ();
@@ -237,6 +242,15 @@ public class PlayerClient extends Thread implements PlayerConstants {
             try { Thread.sleep (10); } catch (Exception e) { }
     }
 
+    /**
+     * Check if Javaclient runs threaded, i.e. if replies are read by its
+     * own thread.
+     * @return true if threaded, false if not threaded
+     */
+    public boolean isThreaded () {
+        return isThreaded;
+    }
+
     /**
      * Start a threaded copy of Javaclient.
      * @param millis number of miliseconds to sleep between calls
@@ -1072,7 +1086,8 @@ public class PlayerClient extends Thread implements PlayerConstants {
                     if (isDebugging)
                         logger.log (Level.FINEST, "[PlayerClient][Debug]: " +
                                 "Negative acknowledgement received");
-//                    deviceList[(int)device][(int)index].handleNARMessage ();
+                    if (header.getAddr().getInterf() != PLAYER_PLAYER_CODE)
+                        handleNackDevice (header);
                     break;
                 }
 
@@ -1202,6 +1217,26 @@ public class PlayerClient extends Thread implements PlayerConstants {
         }
     }
 
+    /**
+     * Calls the device's handleNARMessage () method in case of a REQ/NACK.
+     * @param header Player header
+     */
+    private void handleNackDevice (PlayerMsgHdr header) {
+        PlayerDevAddr devAddr = header.getAddr ();
+
+        for (int i = 0; i < deviceList.size (); i++) {
+            PlayerDevAddr currAddr = deviceList.get (i).getDeviceAddress ();
+            if ( currAddr.getHost   () == devAddr.getHost   () &&
+                 currAddr.getIndex  () == devAddr.getIndex  () &&
+                 currAddr.getInterf () == devAddr.getInterf () &&
+                 currAddr.getRobot  () == devAddr.getRobot  ()
+               ) {
+                deviceList.get (i).handleNARMessage (header);
+                break;
+            }
+        }
+    }
+
     /**
      * Handle several Player replies. If PLAYER_MSGTYPE_RESP_ACK after a requestDeviceAccess (),
      * creates a newpd object of a PlayerDevice type.
@@ -1483,6 +1518,12 @@ public class PlayerClient extends Thread implements PlayerConstants {
      */
     public int getPortNumber () { return portNumber; }
 
+    /**
+     * Get the pool holding the raw payload buffers of this client's devices.
+     * @return the buffer pool shared by all devices of this client
+     */
+    public XdrBufferPool getBufferPool () { return bufferPool; }
+
 
     /**
      * Check to see if the client has authenticated successfully.
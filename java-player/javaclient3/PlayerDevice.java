@@ -34,6 +34,7 @@ import javaclient3.structures.PlayerDevAddr;
 import javaclient3.structures.PlayerMsgHdr;
 import javaclient3.xdr.OncRpcException;
 import javaclient3.xdr.XdrBufferEncodingStream;
+import javaclient3.xdr.XdrBufferPool;
 
 /**
  * Abstract class for all Player interfaces.
@@ -115,6 +116,27 @@ public abstract class PlayerDevice implements PlayerConstants {
         }
     }
 
+    /**
+     * Read a whole message payload at once into a buffer taken from the 
+     * client's buffer pool. The caller owns the returned buffer and should 
+     * give it back to the pool when done with it.
+     * @param size size of the payload [bytes]
+     * @return a pooled buffer holding the payload at offset 0
+     */
+    protected byte[] readPayload (int size) {
+        XdrBufferPool pool = pc.getBufferPool ();
+        byte[] buffer = pool.acquire (size);
+        try {
+            is.readFully (buffer, 0, size);
+        } catch (IOException e) {
+            pool.release (buffer);
+            throw new PlayerException 
+                ("[PlayerDevice] : Error reading payload: " + 
+                        e.toString(), e);
+        }
+        return buffer;
+    }
+
     /**
      * Read the data.
      */
@@ -126,6 +148,15 @@ public abstract class PlayerDevice implements PlayerConstants {
     public void handleNARMessage () {
         logger.log (Level.FINEST, "[PlayerDevice] : Need to handle a NAR message.");
     }
+
+    /**
+     * Handle a negative acknowledgement of a request. Calls
+     * handleNARMessage () unless overridden.
+     * @param header a PlayerMsgHdr structure containing the Player header
+     */
+    protected void handleNARMessage (PlayerMsgHdr header) {
+        handleNARMessage ();
+    }
         
     /**
      * Abstract handleResponse method.
@@ -135,6 +166,12 @@ public abstract class PlayerDevice implements PlayerConstants {
         logger.log (Level.FINEST, "[PlayerDevice] : General handle response was triggered.");
     }
 
+    /**
+     * Free the resources held by the device, such as native buffers. Called
+     * for every device when the client is closed.
+     */
+    protected void dispose () { }
+
     /**
      * Set a new device address
      * @param newDevAddr new device address (player_devaddr)
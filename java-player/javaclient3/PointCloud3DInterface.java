@@ -21,17 +21,12 @@
  */
 package javaclient3;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 
-import javaclient3.structures.PlayerColor;
 import javaclient3.structures.PlayerMsgHdr;
-import javaclient3.structures.PlayerPoint3d;
 import javaclient3.structures.pointcloud3d.PlayerPointCloud3DData;
-import javaclient3.structures.pointcloud3d.PlayerPointCloud3DElement;
-import javaclient3.xdr.OncRpcException;
-import javaclient3.xdr.XdrBufferDecodingStream;
 
 /**
  * The pointcloud3d interface is used to transmit 3-D point cloud data (e.g.,
@@ -56,6 +51,15 @@ public class PointCloud3DInterface extends PlayerDevice {
 
     private boolean                    readyPpc3data    = false;
 
+    // Keep the raw payload and decode the points on first access
+    private boolean                    lazyDecoding     = false;
+
+    // Decode the points into arrays alternating between two slots
+    private boolean                    recycleData      = false;
+    private float[][]                  recycledXyz      = new float[2][];
+    private int[][]                    recycledRgba     = new int[2][];
+    private int                        recycledNext     = 0;
+
     /**
      * Constructor for PointCloud3DInterface.
      * 
@@ -67,75 +71,100 @@ public class PointCloud3DInterface extends PlayerDevice {
     }
 
     /**
-     * Read the bumper values.
+     * Enable or disable lazy decoding. In lazy mode the points are kept in
+     * a raw payload buffer taken from the client's buffer pool, and can be
+     * read through a flyweight view without creating any objects. Consumers
+     * should call {@link PlayerPointCloud3DData#release()} when done with the data so
+     * the buffer can be reused.
+     * @param lazy true to enable lazy decoding, false to decode eagerly
+     */
+    public synchronized void setLazyDecoding (boolean lazy) {
+        this.lazyDecoding = lazy;
+    }
+
+    /**
+     * Check if lazy decoding is enabled.
+     * @return true if the points are decoded lazily, false otherwise
+     * @see #setLazyDecoding(boolean)
+     */
+    public boolean isLazyDecoding () { return this.lazyDecoding; }
+
+    /**
+     * Enable or disable array recycling. By default every cloud is decoded
+     * into newly allocated coordinate and color arrays; in recycling mode
+     * the interface alternates between two pairs of arrays, which are only
+     * reallocated when a larger cloud arrives.
+     * <br><br>
+     * The arrays of a cloud returned by {@link #getData()} stay valid until
+     * the second cloud after it has been read. Lazy decoding takes
+     * precedence over recycling.
+     * @param recycle true to reuse the arrays, false to allocate new ones
+     * for each cloud
+     */
+    public synchronized void setRecycleData (boolean recycle) {
+        this.recycleData = recycle;
+        if (!recycle) {
+            recycledXyz[0]  = null;
+            recycledXyz[1]  = null;
+            recycledRgba[0] = null;
+            recycledRgba[1] = null;
+        }
+    }
+
+    /**
+     * Check if array recycling is enabled.
+     * @return true if clouds are decoded into recycled arrays, false otherwise
+     * @see #setRecycleData(boolean)
+     */
+    public boolean isRecycleData () { return this.recycleData; }
+
+    /**
+     * Read the point cloud data.
      */
     public synchronized void readData (PlayerMsgHdr header) {
-        try {
-            switch (header.getSubtype ()) {
-                case PLAYER_POINTCLOUD3D_DATA_STATE: {
-                    this.timestamp = header.getTimestamp();
-
-                    ppc3data = new PlayerPointCloud3DData ();
-
-                    // Buffer for points_count, array_count
-                    byte[] buffer = new byte[8];
-                    // Read points_count, array_count
-                    is.readFully (buffer, 0, 8);
-
-                    // Begin decoding the XDR buffer
-                    XdrBufferDecodingStream xdr = new XdrBufferDecodingStream (
-                            buffer);
-                    xdr.beginDecoding ();
-                    int pointsCount = xdr.xdrDecodeInt (); // points_count
-                    xdr.endDecoding ();
-                    xdr.close ();
-
-                    PlayerPointCloud3DElement[] points = new PlayerPointCloud3DElement[pointsCount];
-                    for (int i = 0; i < pointsCount; i++) {
-                        PlayerPointCloud3DElement pt = new PlayerPointCloud3DElement ();
-
-                        PlayerPoint3d point = new PlayerPoint3d ();
-                        PlayerColor color = new PlayerColor ();
-
-                        // Buffer for reading point, color
-                        buffer = new byte[12 + 16];
-                        // Read point, color
-                        is.readFully (buffer, 0, 12 + 16);
-
-                        xdr = new XdrBufferDecodingStream (buffer);
-                        xdr.beginDecoding ();
-                        point.setPx (xdr.xdrDecodeFloat ());
-                        point.setPy (xdr.xdrDecodeFloat ());
-                        point.setPz (xdr.xdrDecodeFloat ());
-                        color.setAlpha (xdr.xdrDecodeByte ());
-                        color.setRed (xdr.xdrDecodeByte ());
-                        color.setGreen (xdr.xdrDecodeByte ());
-                        color.setBlue (xdr.xdrDecodeByte ());
-                        xdr.endDecoding ();
-                        xdr.close ();
-
-                        pt.setPoint (point);
-                        pt.setColor (color);
-
-                        points[i] = pt;
+        switch (header.getSubtype ()) {
+            case PLAYER_POINTCLOUD3D_DATA_STATE: {
+                this.timestamp = header.getTimestamp();
 
-                    }
+                // Read points_count, array_count and the points at once
+                int size = header.getSize ();
+                byte[] payload = readPayload (size);
+                ByteBuffer bb = ByteBuffer.wrap (payload, 0, size);
+                int pointsCount = bb.getInt (0);
 
-                    ppc3data.setPoints_count (pointsCount);
-                    ppc3data.setPoints (points);
+                ppc3data = new PlayerPointCloud3DData ();
+                ppc3data.setPoints_count (pointsCount);
 
+                if (lazyDecoding) {
+                    ppc3data.setPayload (payload, 8, pc.getBufferPool ());
                     readyPpc3data = true;
                     break;
                 }
+
+                // Decode the points in bulk into a structure of arrays
+                float[] xyz;
+                int[]   rgba;
+                if (recycleData) {
+                    int slot = recycledNext;
+                    recycledNext ^= 1;
+                    if (recycledXyz[slot] == null ||
+                            recycledRgba[slot].length < pointsCount) {
+                        recycledXyz[slot]  = new float[3 * pointsCount];
+                        recycledRgba[slot] = new int[pointsCount];
+                    }
+                    xyz  = recycledXyz[slot];
+                    rgba = recycledRgba[slot];
+                } else {
+                    xyz  = new float[3 * pointsCount];
+                    rgba = new int[pointsCount];
+                }
+                PlayerPointCloud3DData.decode (bb, 8, pointsCount, xyz, rgba);
+                pc.getBufferPool ().release (payload);
+                ppc3data.setArrays (xyz, rgba);
+
+                readyPpc3data = true;
+                break;
             }
-        } catch (IOException e) {
-            throw new PlayerException (
-                    "[PointCloud3D] : Error reading payload: " + e.toString (),
-                    e);
-        } catch (OncRpcException e) {
-            throw new PlayerException (
-                    "[PointCloud3D] : Error while XDR-decoding payload: "
-                            + e.toString (), e);
         }
     }
 
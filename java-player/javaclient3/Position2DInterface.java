@@ -103,6 +103,11 @@ public class Position2DInterface extends AbstractPositionDevice {
                 xdr.close();
 
                 readyPp2ddata = true;
+
+                if (history != null)
+                    history.add (timestamp,
+                            pos.getPx (), pos.getPy (), pos.getPa (),
+                            vel.getPx (), vel.getPy (), vel.getPa ());
                 break;
             case PLAYER_POSITION2D_DATA_GEOM:
                 this.timestamp = header.getTimestamp();
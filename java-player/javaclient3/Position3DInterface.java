@@ -109,6 +109,11 @@ public class Position3DInterface extends AbstractPositionDevice {
                     xdr.close ();
 
                     readyPp3ddata = true;
+
+                    if (history != null)
+                        history.add (timestamp,
+                                pos.getPx (), pos.getPy (), pos.getPyaw (),
+                                vel.getPx (), vel.getPy (), vel.getPyaw ());
                     break;
                 }
                 case PLAYER_POSITION3D_DATA_GEOMETRY: {
@@ -76,10 +76,10 @@ public class WaveformInterface extends PlayerDevice {
                     xdr.close ();
                     
                     // Buffer for reading raw data (non XDR)
-                    buffer = new byte[PLAYER_WAVEFORM_DATA_MAX];
+                    byte[] data = new byte[pwdata.getData_count ()];
                     // Read raw data
-                    is.readFully (buffer, 0, pwdata.getData_count ());
-                    pwdata.setData (buffer);        // raw data
+                    is.readFully (data, 0, pwdata.getData_count ());
+                    pwdata.setData (data);        // raw data
                     
                     // Take care of the residual zero bytes
                     if ((pwdata.getData_count () % 4) != 0)
@@ -0,0 +1,260 @@
+/*
+ *  Player Java Client 3 - DistanceMap.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javaclient3.structures.map.PlayerMapGrid;
+
+/**
+ * Euclidean distance transform of an occupancy grid: the distance from
+ * every cell to the nearest obstacle, looked up in constant time. This is
+ * the likelihood field used to score laser readings against a map, and
+ * the base of costmap inflation.
+ * <br><br>
+ * The exact transform of Felzenszwalb and Huttenlocher is used, which
+ * runs in time linear in the number of cells: a one dimensional transform
+ * of every column, followed by one of every row. Columns, then rows, are
+ * split among fork/join tasks. Computing the transform again for a grid of
+ * the same size reuses the arrays.
+ * @author agent
+ * @see PlayerMapGrid
+ */
+public class DistanceMap {
+
+    // Number of lines below which a slice is not split further
+    private static final int   THRESHOLD = 64;
+    // Squared distance standing for "no obstacle"
+    private static final float INF       = 1e20f;
+
+    private final ForkJoinPool pool;
+
+    // Lowest cell value taken as an obstacle
+    private byte    obstacle = 1;
+
+    // Layout of the last grid
+    private int     width;
+    private int     height;
+    private float   scale;
+    private double  originX;
+    private double  originY;
+    // Squared distances after the column pass [cells^2]
+    private float[] columns = new float[0];
+    // Distances to the nearest obstacle [m]
+    private float[] distances = new float[0];
+
+    /**
+     * Create a distance map running on the common fork/join pool.
+     */
+    public DistanceMap () {
+        this (ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * Create a distance map.
+     * @param newPool the pool the transform runs on
+     */
+    public DistanceMap (ForkJoinPool newPool) {
+        this.pool = newPool;
+    }
+
+    /**
+     * Set which cells are obstacles. By default, only occupied cells
+     * (+1) are; use 0 to take unknown cells as obstacles as well.
+     * @param threshold lowest cell value taken as an obstacle
+     */
+    public void setObstacleThreshold (byte threshold) {
+        this.obstacle = threshold;
+    }
+
+    /**
+     * Compute the distance transform of a grid.
+     * @param grid the occupancy grid
+     */
+    public void compute (PlayerMapGrid grid) {
+        width   = grid.getWidth  ();
+        height  = grid.getHeight ();
+        scale   = grid.getScale  ();
+        originX = grid.getOriginX ();
+        originY = grid.getOriginY ();
+        int n = width * height;
+        if (distances.length != n) {
+            columns   = new float[n];
+            distances = new float[n];
+        }
+        pool.invoke (new Transform (grid.getCells (), true, 0, width));
+        pool.invoke (new Transform (null, false, 0, height));
+    }
+
+    /**
+     * Get the distance from a cell to the nearest obstacle.
+     * @param col the column of the cell
+     * @param row the row of the cell
+     * @return the distance [m], 0 outside the map
+     */
+    public float getDistance (int col, int row) {
+        if (col < 0 || row < 0 || col >= width || row >= height)
+            return 0;
+        return distances[row * width + col];
+    }
+
+    /**
+     * Get the distance from a point to the nearest obstacle, at the
+     * resolution of the map.
+     * @param x X of the point [m]
+     * @param y Y of the point [m]
+     * @return the distance [m], 0 outside the map
+     */
+    public float getDistance (double x, double y) {
+        return getDistance ((int)Math.floor ((x - originX) / scale),
+                            (int)Math.floor ((y - originY) / scale));
+    }
+
+    /**
+     * Get the distances of all the cells, row by row. A map without any
+     * obstacle has infinite distances.
+     * @return the distances [m], shared with the distance map
+     */
+    public float[] getDistances () {
+        return this.distances;
+    }
+
+    /**
+     * @return the size of the map [pixels]
+     */
+    public int getWidth () {
+        return this.width;
+    }
+
+    /**
+     * @return the size of the map [pixels]
+     */
+    public int getHeight () {
+        return this.height;
+    }
+
+    /**
+     * @return the scale of the map [m/pixel]
+     */
+    public float getScale () {
+        return this.scale;
+    }
+
+    /**
+     * One dimensional squared distance transform of a sampled function,
+     * i.e. the lower envelope of the parabolas rooted at each sample.
+     * Samples at INF do not contribute to the envelope.
+     * @param f the function, n samples
+     * @param d receives the transform
+     * @param v scratch array for the parabola roots, n long
+     * @param z scratch array for the envelope boundaries, n + 1 long
+     */
+    private static void transform (float[] f, float[] d, int[] v,
+            double[] z, int n) {
+        int k = -1;
+        for (int q = 0; q < n; q++) {
+            if (f[q] >= INF)
+                continue;
+            double s = 0;
+            while (k >= 0) {
+                int p = v[k];
+                s = ((f[q] + (double)q * q) - (f[p] + (double)p * p)) /
+                    (2.0 * (q - p));
+                if (s > z[k])
+                    break;
+                k--;
+            }
+            k++;
+            v[k]     = q;
+            z[k]     = (k == 0) ? Double.NEGATIVE_INFINITY : s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        if (k < 0) {
+            for (int q = 0; q < n; q++)
+                d[q] = INF;
+            return;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q)
+                k++;
+            int p = v[k];
+            d[q] = (float)((double)(q - p) * (q - p) + f[p]);
+        }
+    }
+
+    /**
+     * Transform a slice of the columns (first pass) or rows (second pass).
+     */
+    private class Transform extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[]  cells;
+        private final boolean byColumn;
+        private final int     from;
+        private final int     to;
+
+        Transform (byte[] newCells, boolean newByColumn, int newFrom,
+                int newTo) {
+            this.cells    = newCells;
+            this.byColumn = newByColumn;
+            this.from     = newFrom;
+            this.to       = newTo;
+        }
+
+        protected void compute () {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll (new Transform (cells, byColumn, from, mid),
+                           new Transform (cells, byColumn, mid, to));
+                return;
+            }
+            int n = byColumn ? height : width;
+            float[]  f = new float[n];
+            float[]  d = new float[n];
+            int[]    v = new int[n];
+            double[] z = new double[n + 1];
+            if (byColumn) {
+                byte o = obstacle;
+                for (int x = from; x < to; x++) {
+                    for (int y = 0, i = x; y < n; y++, i += width)
+                        f[y] = (cells[i] >= o) ? 0 : INF;
+                    transform (f, d, v, z, n);
+                    for (int y = 0, i = x; y < n; y++, i += width)
+                        columns[i] = d[y];
+                }
+            } else {
+                for (int y = from; y < to; y++) {
+                    int row = y * width;
+                    System.arraycopy (columns, row, f, 0, n);
+                    transform (f, d, v, z, n);
+                    for (int x = 0; x < n; x++)
+                        distances[row + x] = (d[x] >= INF) ?
+                            Float.POSITIVE_INFINITY :
+                            (float)Math.sqrt (d[x]) * scale;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ *  Player Java Client 3 - GridPlanner.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import javaclient3.structures.map.PlayerMapGrid;
+
+/**
+ * Path planner over an occupancy grid, running in the client instead of
+ * going through {@link javaclient3.PlannerInterface}.
+ * <br><br>
+ * Obstacles of the map are inflated by the radius of the robot, using a
+ * {@link DistanceMap}, so that the robot can be planned for as a point.
+ * Paths go through the centres of the free cells, moving to any of the 8
+ * neighbours of a cell. Planning uses D* Lite (Koenig and Likhachev),
+ * which searches from the goal towards the robot: when the robot moves
+ * or obstacles appear, e.g. scans projected with a {@link ScanProjector},
+ * only the part of the search they affect is redone. With a fixed start
+ * and no changes, the first search is a plain A*.
+ * <br><br>
+ * All the search state lives in primitive arrays indexed by cell, and the
+ * open list is an indexed binary heap of cell indices, so planning and
+ * replanning do not allocate. The planner is not thread safe.
+ * @author agent
+ */
+public class GridPlanner {
+
+    // Costs are integers, exact to compare: a straight step costs 10, a
+    // diagonal one 14
+    private static final int   STRAIGHT = 10;
+    private static final int   DIAGONAL = 14;
+    // Cost of unreachable cells, low enough to add keys to without
+    // overflowing
+    private static final int   INF      = Integer.MAX_VALUE / 4;
+
+    // Neighbour offsets in columns and rows, and the step costs
+    private static final int[] DC   = { 1, 1, 0, -1, -1, -1,  0,  1 };
+    private static final int[] DR   = { 0, 1, 1,  1,  0, -1, -1, -1 };
+    private static final int[] STEP = { STRAIGHT, DIAGONAL, STRAIGHT,
+        DIAGONAL, STRAIGHT, DIAGONAL, STRAIGHT, DIAGONAL };
+
+    private final int    width;
+    private final int    height;
+    private final float  scale;
+    private final double originX;
+    private final double originY;
+
+    // Inflation radius [cells], offsets of the cells within it
+    private final int    radius;
+    private final int[]  disk;
+    // Blocked cells: obstacles of the map and added ones, inflated
+    private final boolean[] blocked;
+
+    // Search state: cost to the goal and one step lookahead
+    private final int[]   g;
+    private final int[]   rhs;
+    // Open list: heap of cells, position of each cell in the heap (-1 if
+    // out), and the keys of the heap entries
+    private final int[]   heap;
+    private final int[]   heapPos;
+    private final int[]   key1;
+    private final int[]   key2;
+    private int           heapSize;
+
+    private int   goal  = -1;
+    private int   start = -1;
+    // Start of the last search (-1 before the first one), and the sum of
+    // the heuristic between the successive starts
+    private int   last;
+    private int   km;
+
+    // Cells which got blocked since the last search
+    private int[] changed = new int[64];
+    private int   changedCount;
+
+    // Last path, as cell indices
+    private int[] path = new int[64];
+    private int   pathLength;
+    private int   expanded;
+
+    /**
+     * Create a planner, inflating the map on the common fork/join pool.
+     * @param map the map
+     * @param robotRadius radius of the robot [m]
+     */
+    public GridPlanner (PlayerMapGrid map, double robotRadius) {
+        this (map, robotRadius, ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * Create a planner. Occupied cells of the map (+1) are obstacles;
+     * unknown cells are free.
+     * @param map the map
+     * @param robotRadius radius of the robot [m]
+     * @param pool the pool the map is inflated on
+     */
+    public GridPlanner (PlayerMapGrid map, double robotRadius,
+            ForkJoinPool pool) {
+        this.width   = map.getWidth   ();
+        this.height  = map.getHeight  ();
+        this.scale   = map.getScale   ();
+        this.originX = map.getOriginX ();
+        this.originY = map.getOriginY ();
+        int n = width * height;
+
+        this.radius = (int)Math.ceil (robotRadius / scale);
+        int[] offsets = new int[(2 * radius + 1) * (2 * radius + 1) * 2];
+        int k = 0;
+        for (int dr = -radius; dr <= radius; dr++)
+            for (int dc = -radius; dc <= radius; dc++)
+                if (dc * dc + dr * dr <= radius * radius) {
+                    offsets[k++] = dc;
+                    offsets[k++] = dr;
+                }
+        this.disk = Arrays.copyOf (offsets, k);
+
+        DistanceMap field = new DistanceMap (pool);
+        field.compute (map);
+        float[] d = field.getDistances ();
+        float limit = (float)robotRadius;
+        this.blocked = new boolean[n];
+        for (int i = 0; i < n; i++)
+            blocked[i] = d[i] <= limit;
+
+        this.g       = new int[n];
+        this.rhs     = new int[n];
+        this.heap    = new int[n];
+        this.heapPos = new int[n];
+        this.key1    = new int[n];
+        this.key2    = new int[n];
+    }
+
+    /**
+     * Set the goal, dropping the previous search.
+     * @param x X of the goal [m]
+     * @param y Y of the goal [m]
+     */
+    public void setGoal (double x, double y) {
+        int c = cellOf (x, y);
+        Arrays.fill (g,   INF);
+        Arrays.fill (rhs, INF);
+        Arrays.fill (heapPos, -1);
+        heapSize     = 0;
+        km           = 0;
+        changedCount = 0;
+        pathLength   = 0;
+        goal = c;
+        last = -1;
+        rhs[goal] = 0;
+        push (goal);
+    }
+
+    /**
+     * Set the position of the robot.
+     * @param x X of the robot [m]
+     * @param y Y of the robot [m]
+     */
+    public void setStart (double x, double y) {
+        start = cellOf (x, y);
+    }
+
+    /**
+     * Add an obstacle, blocking the cells within the robot radius around
+     * it. Points outside the map are ignored.
+     * @param x X of the obstacle [m]
+     * @param y Y of the obstacle [m]
+     */
+    public void addObstacle (double x, double y) {
+        int col = (int)Math.floor ((x - originX) / scale);
+        int row = (int)Math.floor ((y - originY) / scale);
+        if (col < -radius || row < -radius ||
+                col >= width + radius || row >= height + radius)
+            return;
+        for (int k = 0; k < disk.length; k += 2) {
+            int c = col + disk[k];
+            int r = row + disk[k + 1];
+            if (c < 0 || r < 0 || c >= width || r >= height)
+                continue;
+            int i = r * width + c;
+            if (blocked[i])
+                continue;
+            blocked[i] = true;
+            if (changedCount == changed.length)
+                changed = Arrays.copyOf (changed, 2 * changedCount);
+            changed[changedCount++] = i;
+        }
+    }
+
+    /**
+     * Add obstacles, e.g. the points of a scan projected into the map
+     * frame. Readings out of range should be left out beforehand.
+     * @param x X of the obstacles [m]
+     * @param y Y of the obstacles [m]
+     * @param count number of obstacles
+     * @see ScanProjector
+     */
+    public void addObstacles (float[] x, float[] y, int count) {
+        for (int i = 0; i < count; i++)
+            addObstacle (x[i], y[i]);
+    }
+
+    /**
+     * Plan, or replan after the robot moved or obstacles were added.
+     * @return true if a path was found, false if the goal cannot be
+     * reached, or the start or goal are blocked
+     */
+    public boolean plan () {
+        if (goal < 0 || start < 0)
+            throw new IllegalStateException ("No start or goal set");
+        pathLength = 0;
+        expanded   = 0;
+        if (last < 0) {
+            last = start;
+        } else if (start != last) {
+            km  += heuristic (last, start);
+            last = start;
+        }
+        for (int k = 0; k < changedCount; k++) {
+            updateVertex (changed[k]);
+            updateNeighbours (changed[k]);
+        }
+        changedCount = 0;
+        if (blocked[start] || blocked[goal])
+            return false;
+        computeShortestPath ();
+        if (g[start] >= INF)
+            return false;
+        extractPath ();
+        return true;
+    }
+
+    private void computeShortestPath () {
+        while (heapSize > 0) {
+            int u  = heap[0];
+            int k1 = key1[0];
+            int k2 = key2[0];
+            int s1 = Math.min (g[start], rhs[start]);
+            int sk = s1 + km;
+            if (!(less (k1, k2, sk, s1) || rhs[start] != g[start]))
+                break;
+            int nk2 = Math.min (g[u], rhs[u]);
+            int nk1 = nk2 + heuristic (start, u) + km;
+            if (less (k1, k2, nk1, nk2)) {
+                // Key got stale after the robot moved
+                setKey (0, nk1, nk2);
+                down (0);
+                continue;
+            }
+            expanded++;
+            remove (u);
+            if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                updateNeighbours (u);
+            } else {
+                g[u] = INF;
+                updateVertex (u);
+                updateNeighbours (u);
+            }
+        }
+    }
+
+    private void updateNeighbours (int u) {
+        int c = u % width;
+        int r = u / width;
+        for (int j = 0; j < 8; j++) {
+            int nc = c + DC[j];
+            int nr = r + DR[j];
+            if (nc >= 0 && nr >= 0 && nc < width && nr < height)
+                updateVertex (nr * width + nc);
+        }
+    }
+
+    private void updateVertex (int u) {
+        if (u != goal) {
+            int best = INF;
+            if (!blocked[u]) {
+                int c = u % width;
+                int r = u / width;
+                for (int j = 0; j < 8; j++) {
+                    int nc = c + DC[j];
+                    int nr = r + DR[j];
+                    if (nc < 0 || nr < 0 || nc >= width || nr >= height)
+                        continue;
+                    int v = nr * width + nc;
+                    if (!blocked[v] && g[v] < INF && g[v] + STEP[j] < best)
+                        best = g[v] + STEP[j];
+                }
+            }
+            rhs[u] = best;
+        }
+        if (heapPos[u] >= 0)
+            remove (u);
+        if (g[u] != rhs[u])
+            push (u);
+    }
+
+    /**
+     * Follow the cheapest neighbours from the start to the goal.
+     */
+    private void extractPath () {
+        int u = start;
+        pathLength = 0;
+        addToPath (u);
+        while (u != goal && pathLength <= width * height) {
+            int c = u % width;
+            int r = u / width;
+            int next = -1;
+            int best = INF;
+            for (int j = 0; j < 8; j++) {
+                int nc = c + DC[j];
+                int nr = r + DR[j];
+                if (nc < 0 || nr < 0 || nc >= width || nr >= height)
+                    continue;
+                int v = nr * width + nc;
+                if (!blocked[v] && g[v] + STEP[j] < best) {
+                    best = g[v] + STEP[j];
+                    next = v;
+                }
+            }
+            if (next < 0)
+                break;
+            u = next;
+            addToPath (u);
+        }
+    }
+
+    private void addToPath (int u) {
+        if (pathLength == path.length)
+            path = Arrays.copyOf (path, 2 * pathLength);
+        path[pathLength++] = u;
+    }
+
+    /**
+     * Octile distance between two cells, in step costs.
+     */
+    private int heuristic (int a, int b) {
+        int dc = Math.abs (a % width - b % width);
+        int dr = Math.abs (a / width - b / width);
+        return STRAIGHT * Math.max (dc, dr) +
+            (DIAGONAL - STRAIGHT) * Math.min (dc, dr);
+    }
+
+    private static boolean less (int a1, int a2, int b1, int b2) {
+        return a1 < b1 || (a1 == b1 && a2 < b2);
+    }
+
+    private void push (int u) {
+        int k2 = Math.min (g[u], rhs[u]);
+        int i = heapSize++;
+        heap[i]    = u;
+        heapPos[u] = i;
+        setKey (i, k2 + heuristic (start >= 0 ? start : u, u) + km, k2);
+        up (i);
+    }
+
+    private void remove (int u) {
+        int i = heapPos[u];
+        heapPos[u] = -1;
+        int lastIndex = --heapSize;
+        if (i == lastIndex)
+            return;
+        int moved = heap[lastIndex];
+        move (lastIndex, i);
+        up (i);
+        down (heapPos[moved]);
+    }
+
+    private void setKey (int i, int k1, int k2) {
+        key1[i] = k1;
+        key2[i] = k2;
+    }
+
+    private void move (int from, int to) {
+        heap[to]  = heap[from];
+        key1[to]  = key1[from];
+        key2[to]  = key2[from];
+        heapPos[heap[to]] = to;
+    }
+
+    private void up (int i) {
+        int u  = heap[i];
+        int k1 = key1[i];
+        int k2 = key2[i];
+        while (i > 0) {
+            int p = (i - 1) >> 1;
+            if (!less (k1, k2, key1[p], key2[p]))
+                break;
+            move (p, i);
+            i = p;
+        }
+        heap[i] = u;
+        setKey (i, k1, k2);
+        heapPos[u] = i;
+    }
+
+    private void down (int i) {
+        int u  = heap[i];
+        int k1 = key1[i];
+        int k2 = key2[i];
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= heapSize)
+                break;
+            if (c + 1 < heapSize && less (key1[c + 1], key2[c + 1], key1[c], key2[c]))
+                c++;
+            if (!less (key1[c], key2[c], k1, k2))
+                break;
+            move (c, i);
+            i = c;
+        }
+        heap[i] = u;
+        setKey (i, k1, k2);
+        heapPos[u] = i;
+    }
+
+    private int cellOf (double x, double y) {
+        int col = (int)Math.floor ((x - originX) / scale);
+        int row = (int)Math.floor ((y - originY) / scale);
+        if (col < 0 || row < 0 || col >= width || row >= height)
+            throw new IllegalArgumentException
+                ("Position outside the map: " + x + ", " + y);
+        return row * width + col;
+    }
+
+    /**
+     * Get the last path found, from the start to the goal.
+     * @param xy receives the centres of the cells of the path (x0, y0,
+     * x1, ...) [m], at least 2 * getPathLength () long
+     * @return number of cells of the path, 0 if no path was found
+     */
+    public int getPath (double[] xy) {
+        for (int k = 0; k < pathLength; k++) {
+            int u = path[k];
+            xy[2 * k]     = originX + (u % width + 0.5) * scale;
+            xy[2 * k + 1] = originY + (u / width + 0.5) * scale;
+        }
+        return pathLength;
+    }
+
+    /**
+     * @return number of cells of the last path found
+     */
+    public int getPathLength () {
+        return this.pathLength;
+    }
+
+    /**
+     * @return length of the path from the start to the goal [m], with
+     * diagonal steps counted as 1.4 cells, infinite if there is none
+     */
+    public double getCost () {
+        if (start < 0 || g[start] >= INF)
+            return Double.POSITIVE_INFINITY;
+        return (double)g[start] * scale / STRAIGHT;
+    }
+
+    /**
+     * @return number of cells expanded by the last search
+     */
+    public int getExpanded () {
+        return this.expanded;
+    }
+
+    /**
+     * Check if a position is blocked by an inflated obstacle.
+     * @param x X of the position [m]
+     * @param y Y of the position [m]
+     * @return true if blocked or outside the map
+     */
+    public boolean isBlocked (double x, double y) {
+        int col = (int)Math.floor ((x - originX) / scale);
+        int row = (int)Math.floor ((y - originY) / scale);
+        if (col < 0 || row < 0 || col >= width || row >= height)
+            return true;
+        return blocked[row * width + col];
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ *  Player Java Client 3 - KdTree.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * KD-tree over 2D or 3D points, for nearest neighbour and radius queries.
+ * <br><br>
+ * The tree is implicit: the points are reordered so that the median of
+ * every range [lo, hi) sits in its middle, splitting along X, Y (and Z)
+ * in turn, and no node objects are created. Building is done in parallel
+ * by fork/join tasks and reuses the arrays of the previous build, so a
+ * tree can be rebuilt for every frame. Points are given as coordinate
+ * arrays, e.g. the projected points of a laser scan or
+ * {@link javaclient3.structures.pointcloud3d.PlayerPointCloud3DData#getXyz()}.
+ * <br><br>
+ * Queries write their results into caller-supplied arrays and do not
+ * allocate. They only read the tree, so several threads may query it at
+ * once, but not while it is being rebuilt.
+ * @author agent
+ */
+public class KdTree {
+
+    // Number of points below which a range is built sequentially
+    private static final int THRESHOLD = 4096;
+
+    private final int          dim;
+    private final ForkJoinPool pool;
+
+    // Coordinates of the points, in tree order, dim values per point
+    private float[] coords = new float[0];
+    // Index of each point in the input arrays, in tree order
+    private int[]   index  = new int[0];
+    private int     size;
+
+    /**
+     * Create an empty tree running on the common fork/join pool.
+     * @param dimension 2 or 3
+     */
+    public KdTree (int dimension) {
+        this (dimension, ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * Create an empty tree.
+     * @param dimension 2 or 3
+     * @param newPool the pool the tree is built on
+     */
+    public KdTree (int dimension, ForkJoinPool newPool) {
+        if (dimension != 2 && dimension != 3)
+            throw new IllegalArgumentException
+                ("Invalid dimension: " + dimension);
+        this.dim  = dimension;
+        this.pool = newPool;
+    }
+
+    /**
+     * Build a 2D tree from separate coordinate arrays, such as those
+     * returned by {@link ScanProjector} or
+     * {@link javaclient3.structures.laser.PlayerLaserData#getPointsX()}.
+     * @param x X coordinates
+     * @param y Y coordinates
+     * @param count number of points
+     */
+    public void build (float[] x, float[] y, int count) {
+        if (dim != 2)
+            throw new IllegalStateException ("Not a 2D tree");
+        ensureCapacity (count);
+        for (int i = 0; i < count; i++) {
+            coords[2 * i]     = x[i];
+            coords[2 * i + 1] = y[i];
+            index[i] = i;
+        }
+        build (count);
+    }
+
+    /**
+     * Build a tree from interleaved coordinates (x0, y0[, z0], x1, ...).
+     * @param xyz the coordinates, dimension values per point
+     * @param count number of points
+     */
+    public void build (float[] xyz, int count) {
+        ensureCapacity (count);
+        System.arraycopy (xyz, 0, coords, 0, count * dim);
+        for (int i = 0; i < count; i++)
+            index[i] = i;
+        build (count);
+    }
+
+    private void ensureCapacity (int count) {
+        if (index.length < count) {
+            coords = new float[count * dim];
+            index  = new int[count];
+        }
+    }
+
+    private void build (int count) {
+        this.size = count;
+        pool.invoke (new Build (0, count, 0));
+    }
+
+    /**
+     * @return number of points in the tree
+     */
+    public int size () {
+        return this.size;
+    }
+
+    /**
+     * @return 2 or 3
+     */
+    public int getDimension () {
+        return this.dim;
+    }
+
+    /**
+     * Find the nearest point.
+     * @param x X of the query point
+     * @param y Y of the query point
+     * @param z Z of the query point, ignored by 2D trees
+     * @return index of the nearest point in the input arrays, or -1 if the
+     * tree is empty
+     */
+    public int nearest (float x, float y, float z) {
+        int best = nearest (0, size, 0, x, y, z, -1);
+        return (best < 0) ? -1 : index[best];
+    }
+
+    /**
+     * Find the k nearest points, closest first.
+     * @param x X of the query point
+     * @param y Y of the query point
+     * @param z Z of the query point, ignored by 2D trees
+     * @param k number of neighbours
+     * @param outIndex receives the indices of the neighbours in the input
+     * arrays, at least k long
+     * @param outDist2 receives their squared distances, at least k long
+     * @return number of neighbours found, at most k
+     */
+    public int knn (float x, float y, float z, int k, int[] outIndex,
+            float[] outDist2) {
+        if (k <= 0)
+            return 0;
+        int n = knn (0, size, 0, x, y, z, k, outIndex, outDist2, 0);
+        // The results form a max-heap: sort them in place, closest first
+        for (int end = n - 1; end > 0; end--) {
+            swap (outIndex, outDist2, 0, end);
+            siftDown (outIndex, outDist2, 0, end);
+        }
+        return n;
+    }
+
+    /**
+     * Find the points within a given distance.
+     * @param x X of the query point
+     * @param y Y of the query point
+     * @param z Z of the query point, ignored by 2D trees
+     * @param radius the distance
+     * @param outIndex receives the indices of the points in the input
+     * arrays, in no particular order
+     * @return number of points found; only the first outIndex.length are
+     * written
+     */
+    public int radius (float x, float y, float z, float radius,
+            int[] outIndex) {
+        return radius (0, size, 0, x, y, z, radius * radius, outIndex, 0);
+    }
+
+    private float dist2 (int i, float x, float y, float z) {
+        float dx = coords[i * dim] - x;
+        float dy = coords[i * dim + 1] - y;
+        float d  = dx * dx + dy * dy;
+        if (dim == 3) {
+            float dz = coords[i * dim + 2] - z;
+            d += dz * dz;
+        }
+        return d;
+    }
+
+    private static float axisValue (int axis, float x, float y, float z) {
+        return (axis == 0) ? x : (axis == 1) ? y : z;
+    }
+
+    private int nearest (int lo, int hi, int depth, float x, float y,
+            float z, int best) {
+        if (lo >= hi)
+            return best;
+        int mid = (lo + hi) >>> 1;
+        if (best < 0 || dist2 (mid, x, y, z) < dist2 (best, x, y, z))
+            best = mid;
+        int axis = depth % dim;
+        float diff = axisValue (axis, x, y, z) - coords[mid * dim + axis];
+        if (diff < 0) {
+            best = nearest (lo, mid, depth + 1, x, y, z, best);
+            if (diff * diff < dist2 (best, x, y, z))
+                best = nearest (mid + 1, hi, depth + 1, x, y, z, best);
+        } else {
+            best = nearest (mid + 1, hi, depth + 1, x, y, z, best);
+            if (diff * diff < dist2 (best, x, y, z))
+                best = nearest (lo, mid, depth + 1, x, y, z, best);
+        }
+        return best;
+    }
+
+    private int knn (int lo, int hi, int depth, float x, float y, float z,
+            int k, int[] idx, float[] dist, int n) {
+        if (lo >= hi)
+            return n;
+        int mid  = (lo + hi) >>> 1;
+        int axis = depth % dim;
+        float d  = dist2 (mid, x, y, z);
+        if (n < k) {
+            // Heap not full: append and sift up
+            int c = n++;
+            idx[c]  = index[mid];
+            dist[c] = d;
+            while (c > 0) {
+                int p = (c - 1) >> 1;
+                if (dist[p] >= dist[c])
+                    break;
+                swap (idx, dist, p, c);
+                c = p;
+            }
+        } else if (d < dist[0]) {
+            idx[0]  = index[mid];
+            dist[0] = d;
+            siftDown (idx, dist, 0, n);
+        }
+        float diff = axisValue (axis, x, y, z) - coords[mid * dim + axis];
+        if (diff < 0) {
+            n = knn (lo, mid, depth + 1, x, y, z, k, idx, dist, n);
+            if (n < k || diff * diff < dist[0])
+                n = knn (mid + 1, hi, depth + 1, x, y, z, k, idx, dist, n);
+        } else {
+            n = knn (mid + 1, hi, depth + 1, x, y, z, k, idx, dist, n);
+            if (n < k || diff * diff < dist[0])
+                n = knn (lo, mid, depth + 1, x, y, z, k, idx, dist, n);
+        }
+        return n;
+    }
+
+    private int radius (int lo, int hi, int depth, float x, float y,
+            float z, float r2, int[] out, int n) {
+        if (lo >= hi)
+            return n;
+        int mid  = (lo + hi) >>> 1;
+        int axis = depth % dim;
+        if (dist2 (mid, x, y, z) <= r2) {
+            if (n < out.length)
+                out[n] = index[mid];
+            n++;
+        }
+        float diff = axisValue (axis, x, y, z) - coords[mid * dim + axis];
+        if (diff <= 0 || diff * diff <= r2)
+            n = radius (lo, mid, depth + 1, x, y, z, r2, out, n);
+        if (diff >= 0 || diff * diff <= r2)
+            n = radius (mid + 1, hi, depth + 1, x, y, z, r2, out, n);
+        return n;
+    }
+
+    private static void siftDown (int[] idx, float[] dist, int c, int n) {
+        while (true) {
+            int l = 2 * c + 1;
+            if (l >= n)
+                return;
+            int m = (l + 1 < n && dist[l + 1] > dist[l]) ? l + 1 : l;
+            if (dist[c] >= dist[m])
+                return;
+            swap (idx, dist, c, m);
+            c = m;
+        }
+    }
+
+    private static void swap (int[] idx, float[] dist, int a, int b) {
+        int   ti = idx[a];  idx[a]  = idx[b];  idx[b]  = ti;
+        float td = dist[a]; dist[a] = dist[b]; dist[b] = td;
+    }
+
+    /**
+     * Move the median of a range along an axis to its middle, with
+     * smaller values before it and larger values after it.
+     */
+    private void select (int lo, int hi, int axis) {
+        int k = (lo + hi) >>> 1;
+        hi--;
+        while (hi > lo) {
+            // Median of three pivot
+            int m = (lo + hi) >>> 1;
+            if (key (m, axis) < key (lo, axis)) swapPoints (m, lo);
+            if (key (hi, axis) < key (lo, axis)) swapPoints (hi, lo);
+            if (key (hi, axis) < key (m, axis)) swapPoints (hi, m);
+            float pivot = key (m, axis);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key (i, axis) < pivot) i++;
+                while (key (j, axis) > pivot) j--;
+                if (i <= j) {
+                    swapPoints (i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private float key (int i, int axis) {
+        return coords[i * dim + axis];
+    }
+
+    private void swapPoints (int a, int b) {
+        int ti = index[a];
+        index[a] = index[b];
+        index[b] = ti;
+        for (int d = 0; d < dim; d++) {
+            float t = coords[a * dim + d];
+            coords[a * dim + d] = coords[b * dim + d];
+            coords[b * dim + d] = t;
+        }
+    }
+
+    /**
+     * Build the subtree over a range of points.
+     */
+    private class Build extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final int depth;
+
+        Build (int newLo, int newHi, int newDepth) {
+            this.lo    = newLo;
+            this.hi    = newHi;
+            this.depth = newDepth;
+        }
+
+        protected void compute () {
+            build (lo, hi, depth);
+        }
+
+        private void build (int from, int to, int level) {
+            while (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                select (from, to, level % dim);
+                if (to - from > THRESHOLD) {
+                    invokeAll (new Build (from, mid, level + 1),
+                               new Build (mid + 1, to, level + 1));
+                    return;
+                }
+                build (from, mid, level + 1);
+                from = mid + 1;
+                level++;
+            }
+        }
+    }
+}
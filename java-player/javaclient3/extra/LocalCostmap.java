@@ -0,0 +1,681 @@
+/*
+ *  Player Java Client 3 - LocalCostmap.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.Arrays;
+
+import javaclient3.LaserInterface;
+import javaclient3.OdometryHistory;
+import javaclient3.RangerInterface;
+import javaclient3.SonarInterface;
+import javaclient3.structures.PlayerPose;
+import javaclient3.structures.PlayerPose3d;
+import javaclient3.structures.laser.PlayerLaserData;
+import javaclient3.structures.laser.PlayerLaserGeom;
+import javaclient3.structures.ranger.PlayerRangerConf;
+import javaclient3.structures.ranger.PlayerRangerData;
+import javaclient3.structures.ranger.PlayerRangerGeom;
+import javaclient3.structures.sonar.PlayerSonarData;
+import javaclient3.structures.sonar.PlayerSonarGeom;
+
+/**
+ * Rolling window costmap around the robot, built from laser, ranger and
+ * sonar readings, for local planning and obstacle avoidance.
+ * <br><br>
+ * Readings are placed using the sensor geometry and the robot pose at the
+ * time they were taken, interpolated from an {@link OdometryHistory}. Each
+ * reading clears the cells between the sensor and its end point, and marks
+ * the end point as an obstacle when it is within range. Sonars are
+ * treated as a single ray along their axis.
+ * <br><br>
+ * Obstacles are inflated into costs: {@link #LETHAL} on the obstacle,
+ * {@link #INSCRIBED} within the inscribed radius of the robot, then
+ * decaying exponentially up to the inflation radius. Only the cells which
+ * changed are processed: new obstacles stamp their inflation, and cleared
+ * obstacles only get the cells around them recomputed. The window
+ * follows the robot as a ring buffer, so moving only clears and
+ * recomputes the cells scrolling in and along the trailing edge.
+ * <br><br>
+ * A costmap is not thread safe.
+ * @author agent
+ */
+public class LocalCostmap {
+
+    /** Cost of an obstacle cell */
+    public static final int LETHAL    = 254;
+    /** Cost of a cell within the inscribed radius of an obstacle */
+    public static final int INSCRIBED = 253;
+
+    private final OdometryHistory history;
+    private final int             width;
+    private final int             height;
+    private final double          resolution;
+
+    // Global cell coordinates of the lower left cell of the window
+    private int       windowX;
+    private int       windowY;
+    private boolean   placed;
+
+    // Cells, stored at (global coordinates modulo the window size)
+    private final boolean[] obstacle;
+    private final byte[]    cost;
+    // Generation marks of the inflation updates
+    private final int[]     resetMark;
+    private final int[]     visitMark;
+    private int             generation;
+
+    // Inflation kernel: cell offsets (dx, dy) and their costs, and the
+    // offsets within twice the inflation radius
+    private int[]   kernel = new int[] { 0, 0 };
+    private byte[]  kernelCost = new byte[] { (byte)LETHAL };
+    private int[]   reach = new int[] { 0, 0 };
+    private int     radius;
+    private double  inscribedRadius;
+    private double  inflationRadius;
+    private double  decay;
+
+    // Readings further than this do not mark obstacles [m]
+    private double  obstacleRange = 2.5;
+    // Readings clear cells up to this range [m]
+    private double  raytraceRange = 3.0;
+
+    // Cells which changed during the current update, as storage indices
+    private int[]   cleared = new int[64];
+    private int     clearedCount;
+    private int[]   marked  = new int[64];
+    private int     markedCount;
+
+    // Interpolated robot pose [m, m, rad]
+    private final double[] pose = new double[3];
+
+    /**
+     * Create a costmap without inflation.
+     * @param newHistory the history used to look up the robot pose
+     * @param newWidth size of the window [cells]
+     * @param newHeight size of the window [cells]
+     * @param newResolution size of a cell [m]
+     */
+    public LocalCostmap (OdometryHistory newHistory, int newWidth,
+            int newHeight, double newResolution) {
+        if (newWidth <= 0 || newHeight <= 0 || !(newResolution > 0))
+            throw new IllegalArgumentException
+                ("Invalid window: " + newWidth + "x" + newHeight + ", " +
+                 newResolution);
+        this.history    = newHistory;
+        this.width      = newWidth;
+        this.height     = newHeight;
+        this.resolution = newResolution;
+        int n = newWidth * newHeight;
+        this.obstacle   = new boolean[n];
+        this.cost       = new byte[n];
+        this.resetMark  = new int[n];
+        this.visitMark  = new int[n];
+    }
+
+    /**
+     * Set the inflation of the obstacles, and recompute the whole window.
+     * @param inscribed inscribed radius of the robot [m]
+     * @param inflation radius up to which obstacles raise the costs [m]
+     * @param newDecay rate at which the costs decay beyond the inscribed
+     * radius [1/m]
+     */
+    public void setInflation (double inscribed, double inflation,
+            double newDecay) {
+        this.inscribedRadius = inscribed;
+        this.inflationRadius = Math.max (inscribed, inflation);
+        this.decay           = newDecay;
+        this.radius = (int)Math.ceil (inflationRadius / resolution);
+
+        int side = 2 * radius + 1;
+        int[]  offsets = new int[2 * side * side];
+        byte[] costs   = new byte[side * side];
+        int k = 0;
+        for (int dy = -radius; dy <= radius; dy++)
+            for (int dx = -radius; dx <= radius; dx++) {
+                double d = Math.sqrt (dx * dx + dy * dy) * resolution;
+                if (d > inflationRadius)
+                    continue;
+                int c = costAt (d);
+                if (c == 0)
+                    continue;
+                offsets[2 * k]     = dx;
+                offsets[2 * k + 1] = dy;
+                costs[k]           = (byte)c;
+                k++;
+            }
+        this.kernel     = Arrays.copyOf (offsets, 2 * k);
+        this.kernelCost = Arrays.copyOf (costs, k);
+
+        int r2 = 2 * radius;
+        offsets = new int[2 * (2 * r2 + 1) * (2 * r2 + 1)];
+        k = 0;
+        for (int dy = -r2; dy <= r2; dy++)
+            for (int dx = -r2; dx <= r2; dx++)
+                if (dx * dx + dy * dy <= r2 * r2) {
+                    offsets[k++] = dx;
+                    offsets[k++] = dy;
+                }
+        this.reach = Arrays.copyOf (offsets, k);
+
+        recompute (windowX, windowY, windowX + width, windowY + height);
+    }
+
+    private int costAt (double d) {
+        if (d == 0)
+            return LETHAL;
+        if (d <= inscribedRadius)
+            return INSCRIBED;
+        return (int)Math.round ((INSCRIBED - 1) *
+                Math.exp (-decay * (d - inscribedRadius)));
+    }
+
+    /**
+     * Set the ranges of the readings used.
+     * @param obstacle readings up to this range mark obstacles [m]
+     * @param raytrace readings clear the cells up to this range [m]
+     */
+    public void setRanges (double obstacle, double raytrace) {
+        this.obstacleRange = obstacle;
+        this.raytraceRange = raytrace;
+    }
+
+    /**
+     * Insert the current scan of a laser device, using the timestamp of its
+     * latest data and its geometry.
+     * @param li the laser device
+     * @return true if the scan was inserted, false if no robot pose is
+     * known at the time of the scan
+     * @see LaserInterface#queryGeometry()
+     */
+    public boolean update (LaserInterface li) {
+        return update (li.getData (), li.getPlayerLaserGeom (),
+                li.getTimestamp ());
+    }
+
+    /**
+     * Insert a laser scan.
+     * @param data the scan
+     * @param geom the geometry of the laser
+     * @param timestamp time the scan was taken [s]
+     * @return true if the scan was inserted, false if no robot pose is
+     * known at that time
+     */
+    public boolean update (PlayerLaserData data, PlayerLaserGeom geom,
+            double timestamp) {
+        if (!history.getPoseAt (timestamp, pose))
+            return false;
+        moveTo (pose[0], pose[1]);
+        PlayerPose m = geom.getPose ();
+        int     n      = data.getRanges_count ();
+        float[] ranges = data.getRanges ();
+        double  min    = data.getMin_angle ();
+        double  res    = data.getResolution ();
+        double  max    = data.getMax_range ();
+        for (int i = 0; i < n; i++)
+            insert (m.getPx (), m.getPy (), m.getPa () + min + i * res,
+                    ranges[i], max);
+        apply ();
+        return true;
+    }
+
+    /**
+     * Insert the current readings of a ranger device, using the timestamp
+     * of its latest data, its configuration and its geometry.
+     * @param ri the ranger device
+     * @return true if the readings were inserted, false if no robot pose is
+     * known at the time they were taken
+     */
+    public boolean update (RangerInterface ri) {
+        return update (ri.getData (), ri.getConf (), ri.getGeom (),
+                ri.getTimestamp ());
+    }
+
+    /**
+     * Insert ranger readings. If the geometry holds one pose per element
+     * (e.g. a sonar ring), each reading is cast from the pose of its
+     * element, relative to the device pose; otherwise the device is a
+     * scanning sensor.
+     * @param data the readings
+     * @param conf the ranger configuration
+     * @param geom the geometry of the ranger
+     * @param timestamp time the readings were taken [s]
+     * @return true if the readings were inserted, false if no robot pose is
+     * known at that time
+     */
+    public boolean update (PlayerRangerData data, PlayerRangerConf conf,
+            PlayerRangerGeom geom, double timestamp) {
+        if (!history.getPoseAt (timestamp, pose))
+            return false;
+        moveTo (pose[0], pose[1]);
+        int      n      = data.getRanges_count ();
+        double[] ranges = data.getRanges ();
+        double   max    = conf.getMax_range ();
+        PlayerPose3d[] poses = geom.getPoses ();
+        PlayerPose3d   m     = geom.getPose ();
+        if (poses != null && geom.getPoses_count () > 1) {
+            // Element poses are given in the frame of the device
+            double c = Math.cos (m.getPyaw ());
+            double s = Math.sin (m.getPyaw ());
+            for (int i = 0; i < n && i < poses.length; i++) {
+                double ex = poses[i].getPx ();
+                double ey = poses[i].getPy ();
+                insert (m.getPx () + c * ex - s * ey,
+                        m.getPy () + s * ex + c * ey,
+                        m.getPyaw () + poses[i].getPyaw (), ranges[i], max);
+            }
+        } else {
+            double min = conf.getMin_angle ();
+            double res = conf.getResolution ();
+            for (int i = 0; i < n; i++)
+                insert (m.getPx (), m.getPy (), m.getPyaw () + min + i * res,
+                        ranges[i], max);
+        }
+        apply ();
+        return true;
+    }
+
+    /**
+     * Insert the current readings of a sonar device, using the timestamp of
+     * its latest data and its geometry.
+     * @param si the sonar device
+     * @return true if the readings were inserted, false if no robot pose is
+     * known at the time they were taken
+     */
+    public boolean update (SonarInterface si) {
+        return update (si.getData (), si.getGeom (), si.getTimestamp ());
+    }
+
+    /**
+     * Insert sonar readings. Readings at or beyond the raytrace range are
+     * taken as echoes lost and only clear.
+     * @param data the readings
+     * @param geom the geometry of the sonar array
+     * @param timestamp time the readings were taken [s]
+     * @return true if the readings were inserted, false if no robot pose is
+     * known at that time
+     */
+    public boolean update (PlayerSonarData data, PlayerSonarGeom geom,
+            double timestamp) {
+        if (!history.getPoseAt (timestamp, pose))
+            return false;
+        moveTo (pose[0], pose[1]);
+        PlayerPose3d[] poses = geom.getPoses ();
+        int     n      = Math.min (data.getRanges_count (), geom.getPoses_count ());
+        float[] ranges = data.getRanges ();
+        for (int i = 0; i < n; i++)
+            insert (poses[i].getPx (), poses[i].getPy (), poses[i].getPyaw (),
+                    ranges[i], raytraceRange);
+        apply ();
+        return true;
+    }
+
+    /**
+     * Center the window on a position, clearing the cells scrolling in.
+     * Called by the updates with the robot position.
+     * @param x X of the position [m]
+     * @param y Y of the position [m]
+     */
+    public void moveTo (double x, double y) {
+        int nx = (int)Math.floor (x / resolution) - width  / 2;
+        int ny = (int)Math.floor (y / resolution) - height / 2;
+        if (placed && nx == windowX && ny == windowY)
+            return;
+        if (!placed || Math.abs (nx - windowX) >= width ||
+                Math.abs (ny - windowY) >= height) {
+            Arrays.fill (obstacle, false);
+            Arrays.fill (cost, (byte)0);
+            windowX = nx;
+            windowY = ny;
+            placed  = true;
+            return;
+        }
+        int ox = windowX;
+        int oy = windowY;
+        // Clear the columns, then the rows, leaving the window: their
+        // storage is reused for the ones coming in
+        if (nx > ox)
+            clearColumns (ox, nx);
+        else if (nx < ox)
+            clearColumns (nx + width, ox + width);
+        if (ny > oy)
+            clearRows (oy, ny);
+        else if (ny < oy)
+            clearRows (ny + height, oy + height);
+        windowX = nx;
+        windowY = ny;
+        // Recompute the strips coming in, which obstacles next to them
+        // inflate, and along the trailing edges, which lost the inflation
+        // of the obstacles that left
+        int r = radius;
+        if (nx > ox) {
+            recompute (ox + width - r, ny, nx + width, ny + height);
+            recompute (nx, ny, nx + r, ny + height);
+        } else if (nx < ox) {
+            recompute (nx, ny, ox + r, ny + height);
+            recompute (nx + width - r, ny, nx + width, ny + height);
+        }
+        if (ny > oy) {
+            recompute (nx, oy + height - r, nx + width, ny + height);
+            recompute (nx, ny, nx + width, ny + r);
+        } else if (ny < oy) {
+            recompute (nx, ny, nx + width, oy + r);
+            recompute (nx, ny + height - r, nx + width, ny + height);
+        }
+    }
+
+    private void clearColumns (int from, int to) {
+        for (int gx = from; gx < to; gx++) {
+            int c = Math.floorMod (gx, width);
+            for (int i = c; i < obstacle.length; i += width) {
+                obstacle[i] = false;
+                cost[i]     = 0;
+            }
+        }
+    }
+
+    private void clearRows (int from, int to) {
+        for (int gy = from; gy < to; gy++) {
+            int row = Math.floorMod (gy, height) * width;
+            Arrays.fill (obstacle, row, row + width, false);
+            Arrays.fill (cost, row, row + width, (byte)0);
+        }
+    }
+
+    /**
+     * Trace a reading: clear the cells from the sensor to the end point,
+     * up to the raytrace range, and mark the end point if within the
+     * obstacle range.
+     */
+    private void insert (double mx, double my, double angle, double range,
+            double maxRange) {
+        if (!(range > 0))
+            return;
+        double c  = Math.cos (pose[2]);
+        double s  = Math.sin (pose[2]);
+        double sx = pose[0] + c * mx - s * my;
+        double sy = pose[1] + s * mx + c * my;
+        double a  = pose[2] + angle;
+        boolean hit = range < maxRange && range <= obstacleRange;
+        double  r   = Math.min (range, raytraceRange);
+        int x0 = (int)Math.floor (sx / resolution);
+        int y0 = (int)Math.floor (sy / resolution);
+        int x1 = (int)Math.floor ((sx + r * Math.cos (a)) / resolution);
+        int y1 = (int)Math.floor ((sy + r * Math.sin (a)) / resolution);
+        // The obstacle may lie beyond the raytrace range
+        int hx = (int)Math.floor ((sx + range * Math.cos (a)) / resolution);
+        int hy = (int)Math.floor ((sy + range * Math.sin (a)) / resolution);
+
+        // Bresenham from the sensor to the end point, stopping at the edge
+        // of the window
+        int dx = Math.abs (x1 - x0);
+        int dy = Math.abs (y1 - y0);
+        int stepX = (x1 > x0) ? 1 : -1;
+        int stepY = (y1 > y0) ? 1 : -1;
+        int err = dx - dy;
+        int x = x0;
+        int y = y0;
+        while (x != x1 || y != y1) {
+            if (!inWindow (x, y))
+                return;
+            int i = index (x, y);
+            if (obstacle[i]) {
+                obstacle[i] = false;
+                cleared = add (cleared, clearedCount++, i);
+            }
+            int e2 = 2 * err;
+            if (e2 > -dy) {
+                err -= dy;
+                x   += stepX;
+            }
+            if (e2 < dx) {
+                err += dx;
+                y   += stepY;
+            }
+        }
+        if (!inWindow (x, y))
+            return;
+        int i = index (x, y);
+        if (hit && x == hx && y == hy) {
+            mark (i);
+            return;
+        }
+        // The end point of a shortened or missed reading is free
+        if (obstacle[i]) {
+            obstacle[i] = false;
+            cleared = add (cleared, clearedCount++, i);
+        }
+        if (hit && inWindow (hx, hy))
+            mark (index (hx, hy));
+    }
+
+    private void mark (int i) {
+        if (!obstacle[i]) {
+            obstacle[i] = true;
+            marked = add (marked, markedCount++, i);
+        }
+    }
+
+    private static int[] add (int[] list, int n, int i) {
+        if (n == list.length)
+            list = Arrays.copyOf (list, 2 * n);
+        list[n] = i;
+        return list;
+    }
+
+    /**
+     * Update the inflation around the cells changed by the last readings.
+     */
+    private void apply () {
+        if (clearedCount > 0) {
+            // Reset the cells the cleared obstacles inflated, then inflate
+            // them again from the obstacles still within reach
+            int gen = ++generation;
+            for (int k = 0; k < clearedCount; k++) {
+                int i = cleared[k];
+                int x = globalX (i);
+                int y = globalY (i);
+                for (int j = 0; j < kernel.length; j += 2) {
+                    int gx = x + kernel[j];
+                    int gy = y + kernel[j + 1];
+                    if (!inWindow (gx, gy))
+                        continue;
+                    int t = index (gx, gy);
+                    resetMark[t] = gen;
+                    cost[t]      = 0;
+                }
+            }
+            for (int k = 0; k < clearedCount; k++) {
+                int i = cleared[k];
+                int x = globalX (i);
+                int y = globalY (i);
+                for (int j = 0; j < reach.length; j += 2) {
+                    int gx = x + reach[j];
+                    int gy = y + reach[j + 1];
+                    if (!inWindow (gx, gy))
+                        continue;
+                    int t = index (gx, gy);
+                    if (!obstacle[t] || visitMark[t] == gen)
+                        continue;
+                    visitMark[t] = gen;
+                    stamp (gx, gy, gen);
+                }
+            }
+            clearedCount = 0;
+        }
+        for (int k = 0; k < markedCount; k++) {
+            int i = marked[k];
+            if (obstacle[i])
+                stamp (globalX (i), globalY (i), -1);
+        }
+        markedCount = 0;
+    }
+
+    /**
+     * Raise the costs around an obstacle. With gen >= 0, only the cells
+     * reset in that generation are raised.
+     */
+    private void stamp (int x, int y, int gen) {
+        for (int j = 0, k = 0; j < kernel.length; j += 2, k++) {
+            int gx = x + kernel[j];
+            int gy = y + kernel[j + 1];
+            if (!inWindow (gx, gy))
+                continue;
+            int t = index (gx, gy);
+            if (gen >= 0 && resetMark[t] != gen)
+                continue;
+            if ((kernelCost[k] & 0xFF) > (cost[t] & 0xFF))
+                cost[t] = kernelCost[k];
+        }
+    }
+
+    /**
+     * Recompute the costs of a block of cells, in global cell coordinates,
+     * from the obstacles within reach.
+     */
+    private void recompute (int x0, int y0, int x1, int y1) {
+        x0 = Math.max (x0, windowX);
+        y0 = Math.max (y0, windowY);
+        x1 = Math.min (x1, windowX + width);
+        y1 = Math.min (y1, windowY + height);
+        if (x0 >= x1 || y0 >= y1)
+            return;
+        int gen = ++generation;
+        for (int y = y0; y < y1; y++)
+            for (int x = x0; x < x1; x++) {
+                int t = index (x, y);
+                resetMark[t] = gen;
+                cost[t]      = 0;
+            }
+        int ax = Math.max (x0 - radius, windowX);
+        int ay = Math.max (y0 - radius, windowY);
+        int bx = Math.min (x1 + radius, windowX + width);
+        int by = Math.min (y1 + radius, windowY + height);
+        for (int y = ay; y < by; y++)
+            for (int x = ax; x < bx; x++)
+                if (obstacle[index (x, y)])
+                    stamp (x, y, gen);
+    }
+
+    private boolean inWindow (int gx, int gy) {
+        return gx >= windowX && gy >= windowY &&
+               gx < windowX + width && gy < windowY + height;
+    }
+
+    private int index (int gx, int gy) {
+        return Math.floorMod (gy, height) * width + Math.floorMod (gx, width);
+    }
+
+    /**
+     * Global column of a stored cell.
+     */
+    private int globalX (int i) {
+        return windowX + Math.floorMod (i % width - windowX, width);
+    }
+
+    /**
+     * Global row of a stored cell.
+     */
+    private int globalY (int i) {
+        return windowY + Math.floorMod (i / width - windowY, height);
+    }
+
+    /**
+     * Get the cost at a position.
+     * @param x X of the position [m]
+     * @param y Y of the position [m]
+     * @return the cost, from 0 (free) to {@link #LETHAL}, 0 outside the
+     * window
+     */
+    public int getCost (double x, double y) {
+        int gx = (int)Math.floor (x / resolution);
+        int gy = (int)Math.floor (y / resolution);
+        if (!inWindow (gx, gy))
+            return 0;
+        return cost[index (gx, gy)] & 0xFF;
+    }
+
+    /**
+     * Check if a position holds an obstacle.
+     * @param x X of the position [m]
+     * @param y Y of the position [m]
+     * @return true if an obstacle was seen there, false otherwise or
+     * outside the window
+     */
+    public boolean isObstacle (double x, double y) {
+        int gx = (int)Math.floor (x / resolution);
+        int gy = (int)Math.floor (y / resolution);
+        return inWindow (gx, gy) && obstacle[index (gx, gy)];
+    }
+
+    /**
+     * Copy the costs of the window, row by row from the lower left cell at
+     * ({@link #getOriginX()}, {@link #getOriginY()}).
+     * @param costs receives the costs as unsigned bytes, at least
+     * getWidth () * getHeight () long
+     */
+    public void getCosts (byte[] costs) {
+        int c0 = Math.floorMod (windowX, width);
+        int r0 = Math.floorMod (windowY, height);
+        for (int y = 0; y < height; y++) {
+            int src = ((r0 + y) % height) * width;
+            int dst = y * width;
+            int n   = width - c0;
+            System.arraycopy (cost, src + c0, costs, dst, n);
+            System.arraycopy (cost, src, costs, dst + n, c0);
+        }
+    }
+
+    /**
+     * @return X of the lower left corner of the window [m]
+     */
+    public double getOriginX () {
+        return windowX * resolution;
+    }
+
+    /**
+     * @return Y of the lower left corner of the window [m]
+     */
+    public double getOriginY () {
+        return windowY * resolution;
+    }
+
+    /**
+     * @return size of the window [cells]
+     */
+    public int getWidth () {
+        return this.width;
+    }
+
+    /**
+     * @return size of the window [cells]
+     */
+    public int getHeight () {
+        return this.height;
+    }
+
+    /**
+     * @return size of a cell [m]
+     */
+    public double getResolution () {
+        return this.resolution;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *  Player Java Client 3 - MapPyramid.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javaclient3.MapFetchListener;
+import javaclient3.structures.map.PlayerMapGrid;
+
+/**
+ * Pyramid of progressively coarser occupancy grids, for coarse-to-fine
+ * searches. Level 0 is the map itself; every further level halves the
+ * width and height of the previous one, each cell taking the maximum of
+ * the 2x2 cells below it. Since occupied (+1) beats unknown (0), which
+ * beats empty (-1), a coarse cell is only free if all the map cells it
+ * covers are, so paths and poses found free at a coarse level stay free
+ * at the finer ones.
+ * <br><br>
+ * Levels are computed in parallel by fork/join tasks. After a region of
+ * the map changed, {@link #update(int, int, int, int)} recomputes only
+ * the cells above it; as a {@link MapFetchListener}, the pyramid follows
+ * the tiles of a map being retrieved into its own level 0:
+ * <pre>
+ *   PlayerMapGrid grid = new PlayerMapGrid (map.getData ());
+ *   MapPyramid pyramid = new MapPyramid (grid);
+ *   map.fetchFullMap (grid, 1024, 4, pyramid);
+ * </pre>
+ * Tiles of any other grid are ignored.
+ * @author agent
+ */
+public class MapPyramid implements MapFetchListener {
+
+    // Number of cells below which a slice is not split further
+    private static final int THRESHOLD = 1 << 16;
+
+    private final ForkJoinPool    pool;
+    private final PlayerMapGrid[] levels;
+
+    /**
+     * Create the pyramid of a map, with levels down to a single cell or
+     * 8 levels below the map, whichever comes first.
+     * @param grid the map
+     */
+    public MapPyramid (PlayerMapGrid grid) {
+        this (grid, 8, ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * Create the pyramid of a map.
+     * @param grid the map
+     * @param maxLevel deepest level, limited to where a single cell is
+     * left
+     * @param newPool the pool the levels are computed on
+     */
+    public MapPyramid (PlayerMapGrid grid, int maxLevel,
+            ForkJoinPool newPool) {
+        this.pool = newPool;
+        int n = 0;
+        for (int w = grid.getWidth (), h = grid.getHeight ();
+                n < maxLevel && (w > 1 || h > 1);
+                w = (w + 1) >> 1, h = (h + 1) >> 1)
+            n++;
+        this.levels = new PlayerMapGrid[n + 1];
+        levels[0] = grid;
+        for (int k = 1; k <= n; k++) {
+            PlayerMapGrid up = levels[k - 1];
+            levels[k] = new PlayerMapGrid ((up.getWidth () + 1) >> 1,
+                    (up.getHeight () + 1) >> 1, 2 * up.getScale (),
+                    up.getOriginX (), up.getOriginY (), up.getOriginA ());
+        }
+        update (0, 0, grid.getWidth (), grid.getHeight ());
+    }
+
+    /**
+     * @return deepest level
+     */
+    public int getMaxLevel () {
+        return levels.length - 1;
+    }
+
+    /**
+     * Get a level of the pyramid.
+     * @param level the level, 0 for the map itself
+     * @return the grid of the level, with a scale of 2^level times that
+     * of the map
+     */
+    public PlayerMapGrid getLevel (int level) {
+        return levels[level];
+    }
+
+    /**
+     * Get a cell of a level.
+     * @param level the level
+     * @param col the column of the cell
+     * @param row the row of the cell
+     * @return the maximum occupancy value of the map cells it covers, or 0
+     * (unknown) outside the map
+     */
+    public byte getCell (int level, int col, int row) {
+        return levels[level].getCell (col, row);
+    }
+
+    /**
+     * Recompute the cells of all the levels above a changed region of the
+     * map.
+     * @param col first column of the region
+     * @param row first row of the region
+     * @param width size of the region [pixels]
+     * @param height size of the region [pixels]
+     */
+    public synchronized void update (int col, int row, int width,
+            int height) {
+        int c0 = Math.max (col, 0);
+        int r0 = Math.max (row, 0);
+        int c1 = col + width;
+        int r1 = row + height;
+        for (int k = 1; k < levels.length; k++) {
+            // Region of level k covering the changed cells of level k - 1
+            c0 = c0 >> 1;
+            r0 = r0 >> 1;
+            c1 = (c1 + 1) >> 1;
+            r1 = (r1 + 1) >> 1;
+            PlayerMapGrid dst = levels[k];
+            int cEnd = Math.min (c1, dst.getWidth  ());
+            int rEnd = Math.min (r1, dst.getHeight ());
+            if (c0 >= cEnd || r0 >= rEnd)
+                return;
+            pool.invoke (new Reduce (levels[k - 1], dst, c0, cEnd, r0, rEnd));
+        }
+    }
+
+    /**
+     * Called by a map interface when a tile of a retrieved map is in.
+     */
+    public void tileDecoded (PlayerMapGrid grid, int col, int row, int width,
+            int height, int done, int total) {
+        if (grid == levels[0])
+            update (col, row, width, height);
+    }
+
+    /**
+     * Nothing to do: the levels keep the tiles reduced so far.
+     */
+    public void fetchFailed (PlayerMapGrid grid, String reason) { }
+
+    /**
+     * Compute a block of cells of a level from the level below.
+     */
+    private static class Reduce extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PlayerMapGrid src;
+        private final PlayerMapGrid dst;
+        private final int           c0;
+        private final int           c1;
+        private final int           r0;
+        private final int           r1;
+
+        Reduce (PlayerMapGrid newSrc, PlayerMapGrid newDst, int newC0,
+                int newC1, int newR0, int newR1) {
+            this.src = newSrc;
+            this.dst = newDst;
+            this.c0  = newC0;
+            this.c1  = newC1;
+            this.r0  = newR0;
+            this.r1  = newR1;
+        }
+
+        protected void compute () {
+            if ((long)(c1 - c0) * (r1 - r0) > THRESHOLD && r1 - r0 > 1) {
+                int mid = (r0 + r1) >>> 1;
+                invokeAll (new Reduce (src, dst, c0, c1, r0, mid),
+                           new Reduce (src, dst, c0, c1, mid, r1));
+                return;
+            }
+            byte[] s  = src.getCells ();
+            byte[] d  = dst.getCells ();
+            int    sw = src.getWidth  ();
+            int    sh = src.getHeight ();
+            int    dw = dst.getWidth  ();
+            for (int r = r0; r < r1; r++) {
+                int a = 2 * r * sw;
+                // Last row of an odd height has no second source row
+                int b = (2 * r + 1 < sh) ? a + sw : a;
+                for (int c = c0; c < c1; c++) {
+                    int x0 = 2 * c;
+                    int x1 = (x0 + 1 < sw) ? x0 + 1 : x0;
+                    byte m = s[a + x0];
+                    if (s[a + x1] > m) m = s[a + x1];
+                    if (s[b + x0] > m) m = s[b + x0];
+                    if (s[b + x1] > m) m = s[b + x1];
+                    d[r * dw + c] = m;
+                }
+            }
+        }
+    }
+}
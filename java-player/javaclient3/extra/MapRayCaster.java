@@ -0,0 +1,362 @@
+/*
+ *  Player Java Client 3 - MapRayCaster.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javaclient3.structures.map.PlayerMapGrid;
+
+/**
+ * Ray casting over an occupancy grid, giving the ranges a laser or ranger
+ * would measure from hypothesised poses, e.g. the particles of a particle
+ * filter.
+ * <br><br>
+ * Rays are traced cell by cell with the DDA algorithm of Amanatides and
+ * Woo, stopping at the first obstacle or at the maximum range. Casting
+ * does not allocate, and batches of rays (many beams from many poses) are
+ * split among fork/join tasks.
+ * <br><br>
+ * For the highest query rates, {@link #precompute(int, float)} builds a
+ * table of the range from every cell in a number of directions, after
+ * which each ray is a single lookup, at the cost of memory (two bytes per
+ * cell and direction) and of resolution.
+ * @author agent
+ */
+public class MapRayCaster {
+
+    // Number of rays below which a batch is not split further
+    private static final int THRESHOLD = 1024;
+
+    private final PlayerMapGrid grid;
+    private final ForkJoinPool  pool;
+    private final byte[]        cells;
+    private final int           width;
+    private final int           height;
+    private final float         scale;
+    private final double        originX;
+    private final double        originY;
+
+    // Lowest cell value taken as an obstacle
+    private byte   obstacle = 1;
+
+    // Range table: ranges in 1/8 cells, per cell and direction, and
+    // range of the table [m]
+    private char[] table;
+    private int    bins;
+    private float  tableRange;
+
+    /**
+     * Create a ray caster running on the common fork/join pool.
+     * @param newGrid the occupancy grid
+     */
+    public MapRayCaster (PlayerMapGrid newGrid) {
+        this (newGrid, ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * Create a ray caster.
+     * @param newGrid the occupancy grid
+     * @param newPool the pool batches run on
+     */
+    public MapRayCaster (PlayerMapGrid newGrid, ForkJoinPool newPool) {
+        this.grid    = newGrid;
+        this.pool    = newPool;
+        this.cells   = newGrid.getCells   ();
+        this.width   = newGrid.getWidth   ();
+        this.height  = newGrid.getHeight  ();
+        this.scale   = newGrid.getScale   ();
+        this.originX = newGrid.getOriginX ();
+        this.originY = newGrid.getOriginY ();
+    }
+
+    /**
+     * Set which cells stop rays. By default, only occupied cells (+1) do;
+     * use 0 to stop rays at unknown cells as well. Changing the threshold
+     * drops the range table.
+     * @param threshold lowest cell value taken as an obstacle
+     */
+    public void setObstacleThreshold (byte threshold) {
+        this.obstacle = threshold;
+        this.table    = null;
+    }
+
+    /**
+     * @return the occupancy grid
+     */
+    public PlayerMapGrid getGrid () {
+        return this.grid;
+    }
+
+    /**
+     * Cast a ray.
+     * @param x X of the origin [m]
+     * @param y Y of the origin [m]
+     * @param angle direction of the ray [rad]
+     * @param maxRange maximum range [m]
+     * @return distance to the first obstacle [m], maxRange if none was
+     * hit within range or the ray left the map
+     */
+    public float cast (double x, double y, double angle, float maxRange) {
+        return trace ((x - originX) / scale, (y - originY) / scale,
+                Math.cos (angle), Math.sin (angle), maxRange / scale) * scale;
+    }
+
+    /**
+     * Trace a ray in cell units.
+     * @return distance to the first obstacle, or maxT
+     */
+    private float trace (double gx, double gy, double dx, double dy,
+            float maxT) {
+        int ix = (int)Math.floor (gx);
+        int iy = (int)Math.floor (gy);
+        if (ix < 0 || iy < 0 || ix >= width || iy >= height)
+            return maxT;
+        byte o = obstacle;
+        if (cells[iy * width + ix] >= o)
+            return 0;
+        int stepX = (dx > 0) ? 1 : -1;
+        int stepY = (dy > 0) ? 1 : -1;
+        // Ray length to the next vertical and horizontal cell boundaries,
+        // and between two of them
+        double tMaxX = (dx != 0) ?
+            ((ix + ((dx > 0) ? 1 : 0)) - gx) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = (dy != 0) ?
+            ((iy + ((dy > 0) ? 1 : 0)) - gy) / dy : Double.POSITIVE_INFINITY;
+        double tDeltaX = (dx != 0) ? Math.abs (1 / dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = (dy != 0) ? Math.abs (1 / dy) : Double.POSITIVE_INFINITY;
+        while (true) {
+            double t;
+            if (tMaxX < tMaxY) {
+                t = tMaxX;
+                tMaxX += tDeltaX;
+                ix += stepX;
+                if (ix < 0 || ix >= width)
+                    return maxT;
+            } else {
+                t = tMaxY;
+                tMaxY += tDeltaY;
+                iy += stepY;
+                if (iy < 0 || iy >= height)
+                    return maxT;
+            }
+            if (t >= maxT)
+                return maxT;
+            if (cells[iy * width + ix] >= o)
+                return (float)t;
+        }
+    }
+
+    /**
+     * Cast the beams of a scan from several poses. Beam k of pose p is
+     * cast along p.yaw + minAngle + k * resolution.
+     * <br><br>
+     * When a range table was built, beams are looked up in the table
+     * instead, and limited to its range.
+     * @param poses the poses (x0, y0, yaw0, x1, ...) [m, m, rad]
+     * @param poseCount number of poses
+     * @param minAngle angle of the first beam relative to the pose [rad]
+     * @param resolution angle between two beams [rad]
+     * @param beamCount number of beams per pose
+     * @param maxRange maximum range [m]
+     * @param ranges receives the ranges, beamCount per pose, at least
+     * poseCount * beamCount long
+     */
+    public void castScans (double[] poses, int poseCount, float minAngle,
+            float resolution, int beamCount, float maxRange, float[] ranges) {
+        pool.invoke (new CastBatch (poses, minAngle, resolution, beamCount,
+                maxRange, ranges, 0, poseCount * beamCount));
+    }
+
+    /**
+     * Cast the beams of a scan from one pose.
+     * @param x X of the pose [m]
+     * @param y Y of the pose [m]
+     * @param yaw orientation of the pose [rad]
+     * @param minAngle angle of the first beam relative to the pose [rad]
+     * @param resolution angle between two beams [rad]
+     * @param beamCount number of beams
+     * @param maxRange maximum range [m]
+     * @param ranges receives the ranges
+     * @see #castScans(double[], int, float, float, int, float, float[])
+     */
+    public void castScan (double x, double y, double yaw, float minAngle,
+            float resolution, int beamCount, float maxRange, float[] ranges) {
+        for (int k = 0; k < beamCount; k++)
+            ranges[k] = castOne (x, y, yaw + minAngle + k * resolution,
+                    maxRange);
+    }
+
+    private float castOne (double x, double y, double angle,
+            float maxRange) {
+        if (table != null)
+            return Math.min (lookup (x, y, angle), maxRange);
+        return cast (x, y, angle, maxRange);
+    }
+
+    /**
+     * Build the range table. Every cell gets the range of the rays cast
+     * from its centre in angleBins evenly spaced directions, which takes
+     * 2 * width * height * angleBins bytes.
+     * @param angleBins number of directions
+     * @param maxRange maximum range of the table [m]
+     */
+    public void precompute (int angleBins, float maxRange) {
+        if (angleBins <= 0)
+            throw new IllegalArgumentException
+                ("Invalid number of directions: " + angleBins);
+        if (maxRange / scale * 8 > Character.MAX_VALUE)
+            throw new IllegalArgumentException
+                ("Range too long for the table: " + maxRange);
+        long size = (long)width * height * angleBins;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException
+                ("Range table too large: " + size + " entries");
+        char[] t = new char[(int)size];
+        this.table = null;
+        pool.invoke (new BuildTable (t, angleBins, maxRange / scale, 0,
+                width * height));
+        this.bins       = angleBins;
+        this.tableRange = maxRange;
+        this.table      = t;
+    }
+
+    /**
+     * Drop the range table.
+     */
+    public void clearTable () {
+        this.table = null;
+    }
+
+    /**
+     * Look a ray up in the range table, at the resolution of the map and
+     * of the table directions.
+     * @param x X of the origin [m]
+     * @param y Y of the origin [m]
+     * @param angle direction of the ray [rad]
+     * @return distance to the first obstacle [m], or the table range if
+     * none was hit or the origin is outside the map, as with
+     * {@link #cast(double, double, double, float)}
+     */
+    public float lookup (double x, double y, double angle) {
+        char[] t = this.table;
+        if (t == null)
+            throw new IllegalStateException ("No range table");
+        int col = (int)Math.floor ((x - originX) / scale);
+        int row = (int)Math.floor ((y - originY) / scale);
+        if (col < 0 || row < 0 || col >= width || row >= height)
+            return tableRange;
+        int bin = (int)Math.round (angle * bins / (2 * Math.PI)) % bins;
+        if (bin < 0)
+            bin += bins;
+        return t[(row * width + col) * bins + bin] * (scale / 8);
+    }
+
+    /**
+     * Cast a slice of a batch of rays.
+     */
+    private class CastBatch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double[] poses;
+        private final float    minAngle;
+        private final float    resolution;
+        private final int      beams;
+        private final float    maxRange;
+        private final float[]  ranges;
+        private final int      from;
+        private final int      to;
+
+        CastBatch (double[] newPoses, float newMinAngle,
+                float newResolution, int newBeams, float newMaxRange,
+                float[] newRanges, int newFrom, int newTo) {
+            this.poses      = newPoses;
+            this.minAngle   = newMinAngle;
+            this.resolution = newResolution;
+            this.beams      = newBeams;
+            this.maxRange   = newMaxRange;
+            this.ranges     = newRanges;
+            this.from       = newFrom;
+            this.to         = newTo;
+        }
+
+        protected void compute () {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll (new CastBatch (poses, minAngle, resolution, beams,
+                                maxRange, ranges, from, mid),
+                           new CastBatch (poses, minAngle, resolution, beams,
+                                maxRange, ranges, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int p = i / beams;
+                int k = i - p * beams;
+                ranges[i] = castOne (poses[3 * p], poses[3 * p + 1],
+                        poses[3 * p + 2] + minAngle + k * resolution,
+                        maxRange);
+            }
+        }
+    }
+
+    /**
+     * Fill the range table for a slice of the cells.
+     */
+    private class BuildTable extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final char[] t;
+        private final int    n;
+        private final float  maxT;
+        private final int    from;
+        private final int    to;
+
+        BuildTable (char[] newTable, int newBins, float newMaxT, int newFrom,
+                int newTo) {
+            this.t    = newTable;
+            this.n    = newBins;
+            this.maxT = newMaxT;
+            this.from = newFrom;
+            this.to   = newTo;
+        }
+
+        protected void compute () {
+            if ((long)(to - from) * n > THRESHOLD * 16 && to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll (new BuildTable (t, n, maxT, from, mid),
+                           new BuildTable (t, n, maxT, mid, to));
+                return;
+            }
+            for (int c = from; c < to; c++) {
+                double gx = c % width + 0.5;
+                double gy = c / width + 0.5;
+                for (int b = 0; b < n; b++) {
+                    double a = 2 * Math.PI * b / n;
+                    float r = trace (gx, gy, Math.cos (a), Math.sin (a), maxT);
+                    t[c * n + b] = (char)Math.round (r * 8);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,669 @@
+/*
+ *  Player Java Client 3 - MonteCarloLocalizer.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javaclient3.OdometryHistory;
+import javaclient3.structures.laser.PlayerLaserData;
+import javaclient3.structures.map.PlayerMapGrid;
+import javaclient3.structures.ranger.PlayerRangerConf;
+import javaclient3.structures.ranger.PlayerRangerData;
+
+/**
+ * Monte Carlo localization of a robot in an occupancy grid, running in the
+ * client: a particle filter fed with odometry (e.g. from
+ * {@link javaclient3.Position2DInterface}) and range scans (from
+ * {@link javaclient3.LaserInterface} or
+ * {@link javaclient3.RangerInterface}).
+ * <br><br>
+ * Particles are kept in primitive arrays (x, y, yaw and weight). Odometry
+ * moves them with the usual rotation-translation-rotation noise model.
+ * Scans weight them with the likelihood field model: the end point of
+ * every beam is scored by its distance to the nearest obstacle, looked up
+ * in a {@link DistanceMap}; particles are weighted in parallel by
+ * fork/join tasks. Resampling is low-variance (systematic), done when the
+ * effective number of particles falls below a threshold, and the number
+ * of particles adapts to the spread of the belief following the KLD
+ * sampling bound.
+ * <br><br>
+ * The localizer is not thread safe.
+ * @author agent
+ */
+public class MonteCarloLocalizer {
+
+    // Number of particles below which weighting is not split further
+    private static final int THRESHOLD = 256;
+
+    private final ForkJoinPool  pool;
+    private final PlayerMapGrid map;
+    private final DistanceMap   field;
+    private final Random        random = new Random ();
+
+    // Particles
+    private double[] px;
+    private double[] py;
+    private double[] pa;
+    private double[] pw;
+    private int      count;
+    // Particles being resampled
+    private double[] nx;
+    private double[] ny;
+    private double[] na;
+
+    // Particle count limits and KLD parameters
+    private int    minParticles = 100;
+    private int    maxParticles = 5000;
+    private double kldError     = 0.01;
+    private double kldZ         = 2.33;
+    private double binXY        = 0.5;
+    private double binA         = Math.toRadians (10);
+    // Resample when the effective number of particles falls below this
+    // fraction of the particles
+    private double resampleThreshold = 0.5;
+
+    // Odometry noise: rotation from rotation, rotation from translation,
+    // translation from translation, translation from rotation
+    private double alpha1 = 0.2;
+    private double alpha2 = 0.2;
+    private double alpha3 = 0.2;
+    private double alpha4 = 0.2;
+
+    // Likelihood field model
+    private double sigmaHit = 0.2;
+    private double zHit     = 0.95;
+    private double zRand    = 0.05;
+    private int    maxBeams = 60;
+
+    // Pose of the range sensor on the robot
+    private double sensorX;
+    private double sensorY;
+    private double sensorA;
+
+    // Last odometry pose, if any
+    private boolean  hasOdometry;
+    private double   odomX;
+    private double   odomY;
+    private double   odomA;
+    private final double[] odomPose = new double[3];
+
+    // Beams used by the current update: range and bearing
+    private float[]  beamRange = new float[0];
+    private float[]  beamCos   = new float[0];
+    private float[]  beamSin   = new float[0];
+    private int      beamCount;
+    private double   beamMaxRange;
+
+    // KLD bins: open addressing set of bin keys with their weights
+    private long[]    binKeys   = new long[0];
+    private double[]  binWeight = new double[0];
+    private boolean[] binUsed   = new boolean[0];
+
+    /**
+     * Create a localizer running on the common fork/join pool.
+     * @param newMap the map
+     */
+    public MonteCarloLocalizer (PlayerMapGrid newMap) {
+        this (newMap, ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * Create a localizer. The distance transform of the map is computed
+     * here.
+     * @param newMap the map
+     * @param newPool the pool particles are weighted on
+     */
+    public MonteCarloLocalizer (PlayerMapGrid newMap, ForkJoinPool newPool) {
+        this.map   = newMap;
+        this.pool  = newPool;
+        this.field = new DistanceMap (newPool);
+        field.compute (newMap);
+        allocate (maxParticles);
+    }
+
+    private void allocate (int capacity) {
+        px = new double[capacity];
+        py = new double[capacity];
+        pa = new double[capacity];
+        pw = new double[capacity];
+        nx = new double[capacity];
+        ny = new double[capacity];
+        na = new double[capacity];
+        int bins = Integer.highestOneBit (Math.max (capacity, 16)) * 4;
+        binKeys   = new long[bins];
+        binWeight = new double[bins];
+        binUsed   = new boolean[bins];
+    }
+
+    /**
+     * Set the particle count limits. Drops the current particles if the
+     * maximum changes.
+     * @param min minimum number of particles
+     * @param max maximum number of particles
+     */
+    public void setParticleLimits (int min, int max) {
+        if (min <= 0 || max < min)
+            throw new IllegalArgumentException
+                ("Invalid particle limits: " + min + ", " + max);
+        this.minParticles = min;
+        if (max != maxParticles) {
+            this.maxParticles = max;
+            allocate (max);
+            count = 0;
+        }
+    }
+
+    /**
+     * Set the KLD sampling parameters.
+     * @param error maximum error between the true and the sampled belief
+     * @param z upper standard normal quantile of the confidence, e.g. 2.33
+     * for 99%
+     * @param binSize size of the histogram bins in X and Y [m]
+     * @param binAngle size of the histogram bins in yaw [rad]
+     */
+    public void setKld (double error, double z, double binSize,
+            double binAngle) {
+        this.kldError = error;
+        this.kldZ     = z;
+        this.binXY    = binSize;
+        this.binA     = binAngle;
+    }
+
+    /**
+     * Set the odometry noise model.
+     * @param a1 rotation noise from rotation
+     * @param a2 rotation noise from translation
+     * @param a3 translation noise from translation
+     * @param a4 translation noise from rotation
+     */
+    public void setOdometryNoise (double a1, double a2, double a3,
+            double a4) {
+        this.alpha1 = a1;
+        this.alpha2 = a2;
+        this.alpha3 = a3;
+        this.alpha4 = a4;
+    }
+
+    /**
+     * Set the likelihood field model.
+     * @param newSigmaHit standard deviation of the measurement noise [m]
+     * @param newZHit weight of the hit component
+     * @param newZRand weight of the random component
+     * @param newMaxBeams number of beams of a scan used to weight the
+     * particles, evenly spread over the scan
+     */
+    public void setSensorModel (double newSigmaHit, double newZHit,
+            double newZRand, int newMaxBeams) {
+        this.sigmaHit = newSigmaHit;
+        this.zHit     = newZHit;
+        this.zRand    = newZRand;
+        this.maxBeams = newMaxBeams;
+    }
+
+    /**
+     * Set the pose of the range sensor on the robot.
+     * @param x X [m]
+     * @param y Y [m]
+     * @param yaw orientation [rad]
+     */
+    public void setSensorPose (double x, double y, double yaw) {
+        this.sensorX = x;
+        this.sensorY = y;
+        this.sensorA = yaw;
+    }
+
+    /**
+     * Set the fraction of the particles the effective number of particles
+     * must fall below for resampling to take place.
+     * @param threshold the fraction, 1 to resample after every scan
+     */
+    public void setResampleThreshold (double threshold) {
+        this.resampleThreshold = threshold;
+    }
+
+    /**
+     * Seed the random number generator, for repeatable runs.
+     * @param seed the seed
+     */
+    public void setSeed (long seed) {
+        random.setSeed (seed);
+    }
+
+    /**
+     * Spread the particles around a pose.
+     * @param x X [m]
+     * @param y Y [m]
+     * @param yaw orientation [rad]
+     * @param sx standard deviation in X [m]
+     * @param sy standard deviation in Y [m]
+     * @param sa standard deviation in yaw [rad]
+     */
+    public void initialize (double x, double y, double yaw, double sx,
+            double sy, double sa) {
+        count = maxParticles;
+        for (int i = 0; i < count; i++) {
+            px[i] = x + sx * random.nextGaussian ();
+            py[i] = y + sy * random.nextGaussian ();
+            pa[i] = normalize (yaw + sa * random.nextGaussian ());
+            pw[i] = 1.0 / count;
+        }
+    }
+
+    /**
+     * Spread the particles uniformly over the free cells of the map.
+     */
+    public void initializeGlobal () {
+        byte[] cells = map.getCells ();
+        int w = map.getWidth ();
+        int h = map.getHeight ();
+        count = maxParticles;
+        for (int i = 0; i < count; i++) {
+            int c;
+            int tries = 0;
+            do {
+                c = random.nextInt (w * h);
+            } while (cells[c] >= 0 && ++tries < 1000);
+            px[i] = map.getX (c % w) + (random.nextDouble () - 0.5) * map.getScale ();
+            py[i] = map.getY (c / w) + (random.nextDouble () - 0.5) * map.getScale ();
+            pa[i] = (random.nextDouble () * 2 - 1) * Math.PI;
+            pw[i] = 1.0 / count;
+        }
+    }
+
+    /**
+     * Move the particles by the motion measured by odometry since the last
+     * call. The first call only records the odometry pose.
+     * @param x odometry X [m]
+     * @param y odometry Y [m]
+     * @param yaw odometry orientation [rad]
+     */
+    public void updateOdometry (double x, double y, double yaw) {
+        if (!hasOdometry) {
+            hasOdometry = true;
+            odomX = x;
+            odomY = y;
+            odomA = yaw;
+            return;
+        }
+        double dx = x - odomX;
+        double dy = y - odomY;
+        double trans = Math.sqrt (dx * dx + dy * dy);
+        // Below a few millimetres the direction of motion is meaningless
+        double rot1  = (trans < 0.005) ? 0 :
+            normalize (Math.atan2 (dy, dx) - odomA);
+        double rot2  = normalize (yaw - odomA - rot1);
+        odomX = x;
+        odomY = y;
+        odomA = yaw;
+        if (trans == 0 && rot2 == 0)
+            return;
+        // Rotations close to +/- pi are as noisy as small backward ones
+        double r1 = Math.min (Math.abs (rot1), Math.abs (normalize (rot1 - Math.PI)));
+        double r2 = Math.min (Math.abs (rot2), Math.abs (normalize (rot2 - Math.PI)));
+        double sRot1  = Math.sqrt (alpha1 * r1 * r1 + alpha2 * trans * trans);
+        double sTrans = Math.sqrt (alpha3 * trans * trans +
+                                   alpha4 * (r1 * r1 + r2 * r2));
+        double sRot2  = Math.sqrt (alpha1 * r2 * r2 + alpha2 * trans * trans);
+        for (int i = 0; i < count; i++) {
+            double h1 = rot1  - sRot1  * random.nextGaussian ();
+            double t  = trans - sTrans * random.nextGaussian ();
+            double h2 = rot2  - sRot2  * random.nextGaussian ();
+            px[i] += t * Math.cos (pa[i] + h1);
+            py[i] += t * Math.sin (pa[i] + h1);
+            pa[i]  = normalize (pa[i] + h1 + h2);
+        }
+    }
+
+    /**
+     * Move the particles with odometry and weight them with a laser scan,
+     * using the odometry pose at the time of the scan.
+     * @param scan the scan
+     * @param timestamp time of the scan [s]
+     * @param odometry odometry history of the robot
+     * @return true if the scan was used, false if no odometry pose is
+     * known at that time
+     * @see javaclient3.AbstractPositionDevice#setHistorySize(int)
+     */
+    public boolean update (PlayerLaserData scan, double timestamp,
+            OdometryHistory odometry) {
+        if (!odometry.getPoseAt (timestamp, odomPose))
+            return false;
+        updateOdometry (odomPose[0], odomPose[1], odomPose[2]);
+        updateLaser (scan);
+        return true;
+    }
+
+    /**
+     * Weight the particles with a laser scan, and resample them if needed.
+     * @param scan the scan
+     */
+    public void updateLaser (PlayerLaserData scan) {
+        updateRanges (scan.getRanges (), scan.getRanges_count (),
+                scan.getMin_angle (), scan.getResolution (),
+                scan.getMax_range ());
+    }
+
+    /**
+     * Weight the particles with a scan, and resample them if needed.
+     * @param ranges the ranges [m]
+     * @param n number of ranges
+     * @param minAngle angle of the first beam relative to the sensor [rad]
+     * @param resolution angle between two beams [rad]
+     * @param maxRange maximum range of the sensor [m]; readings at this
+     * range are ignored
+     */
+    public void updateRanges (float[] ranges, int n, float minAngle,
+            float resolution, float maxRange) {
+        prepareBeams (n);
+        int step = Math.max (1, (n + maxBeams - 1) / Math.max (maxBeams, 1));
+        for (int i = 0; i < n; i += step)
+            addBeam (ranges[i], minAngle + i * resolution, maxRange);
+        weight (maxRange);
+    }
+
+    /**
+     * Weight the particles with a ranger scan, and resample them if needed.
+     * @param data the ranges
+     * @param conf the ranger configuration (angles and maximum range)
+     */
+    public void updateRanger (PlayerRangerData data, PlayerRangerConf conf) {
+        int n = data.getRanges_count ();
+        double[] ranges = data.getRanges ();
+        double min = conf.getMin_angle ();
+        double res = (n > 1) ?
+            (conf.getMax_angle () - min) / (n - 1) : conf.getResolution ();
+        prepareBeams (n);
+        int step = Math.max (1, (n + maxBeams - 1) / Math.max (maxBeams, 1));
+        float maxRange = (float)conf.getMax_range ();
+        for (int i = 0; i < n; i += step)
+            addBeam ((float)ranges[i], min + i * res, maxRange);
+        weight (maxRange);
+    }
+
+    private void prepareBeams (int n) {
+        if (beamRange.length < n) {
+            beamRange = new float[n];
+            beamCos   = new float[n];
+            beamSin   = new float[n];
+        }
+        beamCount = 0;
+    }
+
+    private void addBeam (float range, double angle, float maxRange) {
+        // Readings at or beyond the maximum range carry no obstacle
+        if (!(range > 0) || (maxRange > 0 && range >= maxRange))
+            return;
+        beamRange[beamCount] = range;
+        beamCos[beamCount]   = (float)Math.cos (sensorA + angle);
+        beamSin[beamCount]   = (float)Math.sin (sensorA + angle);
+        beamCount++;
+    }
+
+    /**
+     * Weight the particles with the prepared beams, then resample.
+     */
+    private void weight (float maxRange) {
+        if (count == 0 || beamCount == 0)
+            return;
+        beamMaxRange = (maxRange > 0) ? maxRange : 30;
+        pool.invoke (new Weigh (0, count));
+
+        // Weights hold log-posteriors: normalize them
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++)
+            max = Math.max (max, pw[i]);
+        if (max == Double.NEGATIVE_INFINITY) {
+            // No particle left with any weight: start over uniformly
+            Arrays.fill (pw, 0, count, 1.0 / count);
+            return;
+        }
+        double sum = 0;
+        for (int i = 0; i < count; i++)
+            sum += (pw[i] = Math.exp (pw[i] - max));
+        double sum2 = 0;
+        for (int i = 0; i < count; i++) {
+            pw[i] /= sum;
+            sum2  += pw[i] * pw[i];
+        }
+        if (1 / sum2 < resampleThreshold * count)
+            resample ();
+    }
+
+    /**
+     * Resample the particles with the low-variance sampler. The number of
+     * particles is chosen beforehand from the number of histogram bins
+     * holding enough weight to be drawn at the maximum particle count.
+     */
+    private void resample () {
+        int k = countBins ();
+        int n = Math.max (minParticles, Math.min (maxParticles, kldBound (k)));
+        double step = 1.0 / n;
+        double u = random.nextDouble () * step;
+        double c = pw[0];
+        int i = 0;
+        for (int m = 0; m < n; m++) {
+            while (u > c && i < count - 1)
+                c += pw[++i];
+            nx[m] = px[i];
+            ny[m] = py[i];
+            na[m] = pa[i];
+            u += step;
+        }
+        double[] t;
+        t = px; px = nx; nx = t;
+        t = py; py = ny; ny = t;
+        t = pa; pa = na; na = t;
+        count = n;
+        for (int m = 0; m < n; m++)
+            pw[m] = step;
+    }
+
+    /**
+     * Count the histogram bins holding at least the weight of one particle
+     * at the maximum count.
+     */
+    private int countBins () {
+        Arrays.fill (binUsed, false);
+        int mask = binKeys.length - 1;
+        int k = 0;
+        double least = 1.0 / maxParticles;
+        for (int i = 0; i < count; i++) {
+            long bx = (long)Math.floor (px[i] / binXY) & 0x1FFFFF;
+            long by = (long)Math.floor (py[i] / binXY) & 0x1FFFFF;
+            long ba = (long)Math.floor (pa[i] / binA)  & 0x1FFFFF;
+            long key = (bx << 42) | (by << 21) | ba;
+            int s = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (binUsed[s] && binKeys[s] != key)
+                s = (s + 1) & mask;
+            if (!binUsed[s]) {
+                binUsed[s]   = true;
+                binKeys[s]   = key;
+                binWeight[s] = 0;
+            }
+            double before = binWeight[s];
+            binWeight[s] += pw[i];
+            if (before < least && binWeight[s] >= least)
+                k++;
+        }
+        return k;
+    }
+
+    /**
+     * Number of particles needed for the KLD bound with k occupied bins.
+     */
+    private int kldBound (int k) {
+        if (k <= 1)
+            return minParticles;
+        double a = 2.0 / (9.0 * (k - 1));
+        double b = 1 - a + Math.sqrt (a) * kldZ;
+        double n = (k - 1) / (2 * kldError) * b * b * b;
+        return (int)Math.min (Math.ceil (n), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the estimated pose: the weighted mean of the particles, with a
+     * circular mean of the orientations.
+     * @param pose receives x [m], y [m] and yaw [rad]
+     */
+    public void getPose (double[] pose) {
+        double sx = 0, sy = 0, sc = 0, ss = 0;
+        for (int i = 0; i < count; i++) {
+            sx += pw[i] * px[i];
+            sy += pw[i] * py[i];
+            sc += pw[i] * Math.cos (pa[i]);
+            ss += pw[i] * Math.sin (pa[i]);
+        }
+        pose[0] = sx;
+        pose[1] = sy;
+        pose[2] = Math.atan2 (ss, sc);
+    }
+
+    /**
+     * Get the covariance of the particles.
+     * @param cov receives the variances of x, y and yaw, and the
+     * covariance of x and y [m^2, m^2, rad^2, m^2]
+     */
+    public void getCovariance (double[] cov) {
+        double[] mean = new double[3];
+        getPose (mean);
+        double vx = 0, vy = 0, va = 0, cxy = 0;
+        for (int i = 0; i < count; i++) {
+            double dx = px[i] - mean[0];
+            double dy = py[i] - mean[1];
+            double da = normalize (pa[i] - mean[2]);
+            vx  += pw[i] * dx * dx;
+            vy  += pw[i] * dy * dy;
+            va  += pw[i] * da * da;
+            cxy += pw[i] * dx * dy;
+        }
+        cov[0] = vx;
+        cov[1] = vy;
+        cov[2] = va;
+        cov[3] = cxy;
+    }
+
+    /**
+     * @return number of particles
+     */
+    public int getCount () {
+        return this.count;
+    }
+
+    /**
+     * @return X of the particles [m], shared with the localizer and valid
+     * up to getCount ()
+     */
+    public double[] getX () {
+        return this.px;
+    }
+
+    /**
+     * @return Y of the particles [m], shared with the localizer
+     */
+    public double[] getY () {
+        return this.py;
+    }
+
+    /**
+     * @return yaw of the particles [rad], shared with the localizer
+     */
+    public double[] getYaw () {
+        return this.pa;
+    }
+
+    /**
+     * @return weights of the particles, shared with the localizer
+     */
+    public double[] getWeights () {
+        return this.pw;
+    }
+
+    /**
+     * @return the distance transform of the map
+     */
+    public DistanceMap getDistanceMap () {
+        return this.field;
+    }
+
+    private static double normalize (double angle) {
+        return Math.atan2 (Math.sin (angle), Math.cos (angle));
+    }
+
+    /**
+     * Compute the log-posterior of a slice of the particles.
+     */
+    private class Weigh extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Weigh (int newFrom, int newTo) {
+            this.from = newFrom;
+            this.to   = newTo;
+        }
+
+        protected void compute () {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll (new Weigh (from, mid), new Weigh (mid, to));
+                return;
+            }
+            float[] dist = field.getDistances ();
+            int     w    = map.getWidth  ();
+            int     h    = map.getHeight ();
+            double  ox   = map.getOriginX ();
+            double  oy   = map.getOriginY ();
+            double  inv  = 1.0 / map.getScale ();
+            double  k    = -1.0 / (2 * sigmaHit * sigmaHit);
+            double  rnd  = zRand / beamMaxRange;
+            for (int i = from; i < to; i++) {
+                double c = Math.cos (pa[i]);
+                double s = Math.sin (pa[i]);
+                // Sensor pose in the map
+                double sx = px[i] + c * sensorX - s * sensorY;
+                double sy = py[i] + s * sensorX + c * sensorY;
+                double logw = 0;
+                for (int b = 0; b < beamCount; b++) {
+                    double r  = beamRange[b];
+                    // Beam direction rotated by the particle yaw
+                    double bc = c * beamCos[b] - s * beamSin[b];
+                    double bs = s * beamCos[b] + c * beamSin[b];
+                    int col = (int)Math.floor ((sx + r * bc - ox) * inv);
+                    int row = (int)Math.floor ((sy + r * bs - oy) * inv);
+                    double p = rnd;
+                    if (col >= 0 && row >= 0 && col < w && row < h) {
+                        double d = dist[row * w + col];
+                        p += zHit * Math.exp (d * d * k);
+                    }
+                    logw += Math.log (p);
+                }
+                // Posterior: the scan likelihood times the prior weight
+                pw[i] = logw + Math.log (pw[i]);
+            }
+        }
+    }
+}
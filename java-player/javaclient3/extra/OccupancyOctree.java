@@ -0,0 +1,353 @@
+/*
+ *  Player Java Client 3 - OccupancyOctree.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Occupancy octree accumulating point clouds over several frames.
+ * <br><br>
+ * The tree covers a cube centred on the origin whose edge is the leaf
+ * resolution times 2^depth. Every leaf holds the log-odds of being
+ * occupied: each point falling in a leaf raises it, and
+ * {@link #decay(float)} lowers all leaves so that obstacles which are no
+ * longer seen fade away. Inner nodes hold the maximum of their children,
+ * which lets queries skip free parts of the tree.
+ * <br><br>
+ * Free space is not raytraced: the rays from the sensor to the points do
+ * not lower the leaves they cross, so a leaf only becomes free again
+ * through {@link #decay(float)}.
+ * <br><br>
+ * Nodes live in primitive arrays and are never freed, so updating the tree
+ * does not create objects once it has grown to the explored volume. The
+ * leaf of every point is computed in parallel by fork/join tasks; the tree
+ * itself is updated by the calling thread. The tree is not thread safe.
+ * @author agent
+ * @see VoxelGridFilter
+ */
+public class OccupancyOctree {
+
+    // Number of points below which a slice is not split further
+    private static final int THRESHOLD = 8192;
+
+    private final float resolution;
+    private final int   depth;
+    private final float half;
+    private final ForkJoinPool pool;
+
+    // Log-odds added per hit, bounds and occupancy threshold
+    private float hit       = 0.85f;
+    private float minValue  = -2.0f;
+    private float maxValue  = 3.5f;
+    private float threshold = 0.0f;
+
+    // Children of each node (8 per node, 0 for none) and node values
+    private int[]   children;
+    private float[] values;
+    private int     nodes;
+
+    // Leaf keys of the last update
+    private long[]  leafKeys = new long[0];
+    // Nodes on the path of the leaf being updated, one per level
+    private final int[] path;
+    // Explicit stack of the traversal of occupied leaves
+    private int[]   stack;
+
+    /**
+     * Create an octree running on the common fork/join pool.
+     * @param newResolution edge length of a leaf [m]
+     * @param newDepth number of levels below the root (at most 20)
+     */
+    public OccupancyOctree (float newResolution, int newDepth) {
+        this (newResolution, newDepth, ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * Create an octree.
+     * @param newResolution edge length of a leaf [m]
+     * @param newDepth number of levels below the root (at most 20)
+     * @param newPool the pool the tree runs on
+     */
+    public OccupancyOctree (float newResolution, int newDepth,
+            ForkJoinPool newPool) {
+        if (newDepth < 1 || newDepth > 20)
+            throw new IllegalArgumentException ("Invalid depth: " + newDepth);
+        this.resolution = newResolution;
+        this.depth      = newDepth;
+        this.half       = newResolution * (1 << newDepth) / 2;
+        this.pool       = newPool;
+        this.path       = new int[newDepth];
+        this.stack      = new int[5 * (7 * newDepth + 1)];
+        clear ();
+    }
+
+    /**
+     * Set the sensor model. The values of existing nodes would be on the
+     * scale of the previous model, so the tree must be empty.
+     * @param newHit log-odds added for each point in a leaf
+     * @param newMin lower bound of the log-odds
+     * @param newMax upper bound of the log-odds
+     * @param newThreshold log-odds above which a leaf is occupied
+     * @throws IllegalStateException if the tree holds nodes (see
+     * {@link #clear()})
+     */
+    public void setModel (float newHit, float newMin, float newMax,
+            float newThreshold) {
+        if (nodes > 1)
+            throw new IllegalStateException
+                ("Cannot change the model of a non-empty tree");
+        if (!(newMin <= newMax))
+            throw new IllegalArgumentException
+                ("Invalid bounds: " + newMin + ", " + newMax);
+        values[0]      = newMin;
+        this.hit       = newHit;
+        this.minValue  = newMin;
+        this.maxValue  = newMax;
+        this.threshold = newThreshold;
+    }
+
+    /**
+     * Remove all nodes.
+     */
+    public void clear () {
+        children = new int[8 * 64];
+        values   = new float[64];
+        values[0] = minValue;
+        nodes    = 1;
+    }
+
+    /**
+     * Add the points of a cloud. Points outside the tree are ignored.
+     * Down-sampling the cloud first with a {@link VoxelGridFilter} of the
+     * same resolution gives one hit per leaf and frame.
+     * @param xyz coordinates (x0, y0, z0, x1, ...) [m]
+     * @param count number of points
+     */
+    public void insert (float[] xyz, int count) {
+        if (leafKeys.length < count)
+            leafKeys = new long[count];
+        pool.invoke (new ComputeKeys (xyz, 0, count));
+        for (int i = 0; i < count; i++)
+            if (leafKeys[i] >= 0)
+                update (leafKeys[i]);
+    }
+
+    /**
+     * Lower the log-odds of every node, e.g. once per frame, so that leaves
+     * which stop receiving points become free again.
+     * @param amount log-odds removed from each node
+     */
+    public void decay (float amount) {
+        for (int i = 0; i < nodes; i++)
+            values[i] = Math.max (values[i] - amount, minValue);
+    }
+
+    /**
+     * Check if the leaf holding a point is occupied.
+     * @param x X [m]
+     * @param y Y [m]
+     * @param z Z [m]
+     * @return true if occupied, false if free, unknown or outside the tree
+     */
+    public boolean isOccupied (float x, float y, float z) {
+        long key = key (x, y, z);
+        if (key < 0)
+            return false;
+        int node = 0;
+        for (int level = depth - 1; level >= 0; level--) {
+            if (values[node] <= threshold)
+                return false;
+            node = children[8 * node + octant (key, level)];
+            if (node == 0)
+                return false;
+        }
+        return values[node] > threshold;
+    }
+
+    /**
+     * Get the centres of the occupied leaves.
+     * @param out receives the coordinates (x0, y0, z0, x1, ...) [m]
+     * @return number of leaves written, limited by the size of the array
+     */
+    public int getOccupied (float[] out) {
+        int n = 0;
+        int max = out.length / 3;
+        // Each stack entry holds a node, its level and its integer corner
+        int[] st = stack;
+        int top = 0;
+        if (values[0] <= threshold)
+            return 0;
+        st = push (st, top, 0, depth, 0, 0, 0);
+        top += 5;
+        while (top > 0 && n < max) {
+            top -= 5;
+            int node  = st[top];
+            int level = st[top + 1];
+            int cx    = st[top + 2];
+            int cy    = st[top + 3];
+            int cz    = st[top + 4];
+            if (level == 0) {
+                out[3 * n]     = (cx + 0.5f) * resolution - half;
+                out[3 * n + 1] = (cy + 0.5f) * resolution - half;
+                out[3 * n + 2] = (cz + 0.5f) * resolution - half;
+                n++;
+                continue;
+            }
+            int size = 1 << (level - 1);
+            for (int o = 0; o < 8; o++) {
+                int child = children[8 * node + o];
+                if (child == 0 || values[child] <= threshold)
+                    continue;
+                st = push (st, top, child, level - 1,
+                        cx + (((o >> 2) & 1) * size),
+                        cy + (((o >> 1) & 1) * size),
+                        cz + ((o & 1) * size));
+                top += 5;
+            }
+        }
+        stack = st;
+        return n;
+    }
+
+    /**
+     * @return number of nodes in the tree
+     */
+    public int getNodeCount () {
+        return this.nodes;
+    }
+
+    /**
+     * @return edge length of a leaf [m]
+     */
+    public float getResolution () {
+        return this.resolution;
+    }
+
+    private static int[] push (int[] st, int top, int node, int level,
+            int cx, int cy, int cz) {
+        if (top + 5 > st.length) {
+            int[] bigger = new int[2 * st.length + 5];
+            System.arraycopy (st, 0, bigger, 0, top);
+            st = bigger;
+        }
+        st[top]     = node;
+        st[top + 1] = level;
+        st[top + 2] = cx;
+        st[top + 3] = cy;
+        st[top + 4] = cz;
+        return st;
+    }
+
+    /**
+     * Raise the leaf of a key, creating the nodes on its path.
+     */
+    private void update (long key) {
+        int node = 0;
+        for (int level = depth - 1; level >= 0; level--) {
+            path[level] = node;
+            int o = 8 * node + octant (key, level);
+            int child = children[o];
+            if (child == 0) {
+                child = newNode ();
+                children[o] = child;
+            }
+            node = child;
+        }
+        float v = Math.min (values[node] + hit, maxValue);
+        values[node] = v;
+        // Propagate the maximum up to the root
+        for (int level = 0; level < depth; level++) {
+            int parent = path[level];
+            if (values[parent] >= v)
+                break;
+            values[parent] = v;
+        }
+    }
+
+    private int newNode () {
+        if (nodes == values.length) {
+            int[] c = new int[2 * children.length];
+            System.arraycopy (children, 0, c, 0, children.length);
+            children = c;
+            float[] v = new float[2 * values.length];
+            System.arraycopy (values, 0, v, 0, values.length);
+            values = v;
+        }
+        values[nodes] = minValue;
+        return nodes++;
+    }
+
+    /**
+     * Index of the child holding a key at a given level.
+     */
+    private static int octant (long key, int level) {
+        int ix = (int)(key >>> 40) & 0xFFFFF;
+        int iy = (int)(key >>> 20) & 0xFFFFF;
+        int iz = (int)key & 0xFFFFF;
+        return (((ix >> level) & 1) << 2) | (((iy >> level) & 1) << 1) |
+               ((iz >> level) & 1);
+    }
+
+    /**
+     * Compute the leaf key of a point.
+     * @return the key, or -1 if the point is outside the tree
+     */
+    private long key (float x, float y, float z) {
+        int n = 1 << depth;
+        double fx = Math.floor ((x + half) / resolution);
+        double fy = Math.floor ((y + half) / resolution);
+        double fz = Math.floor ((z + half) / resolution);
+        if (!(fx >= 0 && fx < n && fy >= 0 && fy < n && fz >= 0 && fz < n))
+            return -1;
+        return ((long)fx << 40) | ((long)fy << 20) | (long)fz;
+    }
+
+    /**
+     * Compute the leaf keys of a slice of the cloud.
+     */
+    private class ComputeKeys extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final float[] xyz;
+        private final int     from;
+        private final int     to;
+
+        ComputeKeys (float[] newXyz, int newFrom, int newTo) {
+            this.xyz  = newXyz;
+            this.from = newFrom;
+            this.to   = newTo;
+        }
+
+        protected void compute () {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll (new ComputeKeys (xyz, from, mid),
+                           new ComputeKeys (xyz, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++)
+                leafKeys[i] = key (xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]);
+        }
+    }
+}
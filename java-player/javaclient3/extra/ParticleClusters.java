@@ -0,0 +1,284 @@
+/*
+ *  Player Java Client 3 - ParticleClusters.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.Arrays;
+
+/**
+ * Grid-based clustering of pose particles, extracting the modes (pose
+ * hypotheses) of a particle set such as the one returned by
+ * {@link javaclient3.LocalizeInterface#queryParticles()} or held by a
+ * {@link MonteCarloLocalizer}.
+ * <br><br>
+ * Particles are binned into cells of a 3D grid over x, y and yaw, kept in
+ * an open addressing hash table; cells touching each other (including
+ * diagonally, with yaw wrapping around) form a cluster. Each cluster gets
+ * its total weight, weighted mean pose (circular mean for the yaw) and
+ * covariance. Clusters are sorted by decreasing weight.
+ * <br><br>
+ * All the arrays are kept between calls and only grow, so clustering a
+ * particle set of the same size again does not allocate.
+ * @author agent
+ */
+public class ParticleClusters {
+
+    // Mask of a 21 bit cell coordinate inside a key
+    private static final long MASK = 0x1FFFFF;
+
+    // Cell size
+    private double cellXY    = 0.5;
+    private double cellA     = Math.toRadians (30);
+    private int    angleBins = 12;
+
+    // Hash table of the occupied cells: key, cluster of the cell
+    private long[] keys     = new long[0];
+    private int[]  clusterOf = new int[0];
+    private int    mask;
+    // Slot of the cell of each particle
+    private int[]  slotOf   = new int[0];
+    // Occupied slots, and the stack of the flood fill
+    private int[]  occupied = new int[0];
+    private int[]  stack    = new int[0];
+
+    // Statistics of the clusters: weight, sums and sorted order
+    private int      count;
+    private double[] weight = new double[0];
+    private double[] sumX   = new double[0];
+    private double[] sumY   = new double[0];
+    private double[] sumCos = new double[0];
+    private double[] sumSin = new double[0];
+    private double[] meanX  = new double[0];
+    private double[] meanY  = new double[0];
+    private double[] meanA  = new double[0];
+    private double[] cov    = new double[0];
+    private int[]    order  = new int[0];
+
+    /**
+     * Set the size of the cells. Particles in touching cells belong to
+     * the same cluster.
+     * @param size size of the cells in X and Y [m]
+     * @param angle size of the cells in yaw [rad], rounded so that a whole
+     * number of cells covers a turn
+     */
+    public void setCellSize (double size, double angle) {
+        if (!(size > 0) || !(angle > 0))
+            throw new IllegalArgumentException
+                ("Invalid cell size: " + size + ", " + angle);
+        this.cellXY    = size;
+        this.angleBins = Math.max (1, (int)Math.round (2 * Math.PI / angle));
+        this.cellA     = 2 * Math.PI / angleBins;
+    }
+
+    /**
+     * Cluster a set of particles.
+     * @param x X of the particles [m]
+     * @param y Y of the particles [m]
+     * @param a yaw of the particles [rad]
+     * @param w weights of the particles
+     * @param n number of particles
+     * @return number of clusters
+     */
+    public int cluster (double[] x, double[] y, double[] a, double[] w,
+            int n) {
+        prepare (n);
+        int cells = 0;
+        for (int i = 0; i < n; i++) {
+            long key = key ((long)Math.floor (x[i] / cellXY),
+                            (long)Math.floor (y[i] / cellXY),
+                            angleBin (a[i]));
+            int s = find (key);
+            if (clusterOf[s] == -2) {
+                keys[s]      = key;
+                clusterOf[s] = -1;
+                occupied[cells++] = s;
+            }
+            slotOf[i] = s;
+        }
+
+        // Label the connected cells
+        count = 0;
+        for (int c = 0; c < cells; c++) {
+            int s = occupied[c];
+            if (clusterOf[s] != -1)
+                continue;
+            int label = count++;
+            clusterOf[s] = label;
+            int top = 0;
+            stack[top++] = s;
+            while (top > 0) {
+                long key = keys[stack[--top]];
+                long bx  = key >>> 42;
+                long by  = (key >>> 21) & MASK;
+                long ba  = key & MASK;
+                for (int dx = -1; dx <= 1; dx++)
+                    for (int dy = -1; dy <= 1; dy++)
+                        for (int da = -1; da <= 1; da++) {
+                            long na = (ba + da + angleBins) % angleBins;
+                            int t = find (key (bx + dx, by + dy, na));
+                            if (clusterOf[t] == -1) {
+                                clusterOf[t] = label;
+                                stack[top++] = t;
+                            }
+                        }
+            }
+        }
+
+        // Weights and means
+        growClusters ();
+        Arrays.fill (weight, 0, count, 0);
+        Arrays.fill (sumX,   0, count, 0);
+        Arrays.fill (sumY,   0, count, 0);
+        Arrays.fill (sumCos, 0, count, 0);
+        Arrays.fill (sumSin, 0, count, 0);
+        Arrays.fill (cov,    0, 4 * count, 0);
+        for (int i = 0; i < n; i++) {
+            int k = clusterOf[slotOf[i]];
+            weight[k] += w[i];
+            sumX[k]   += w[i] * x[i];
+            sumY[k]   += w[i] * y[i];
+            sumCos[k] += w[i] * Math.cos (a[i]);
+            sumSin[k] += w[i] * Math.sin (a[i]);
+        }
+        for (int k = 0; k < count; k++) {
+            double s = (weight[k] > 0) ? 1 / weight[k] : 0;
+            meanX[k] = sumX[k] * s;
+            meanY[k] = sumY[k] * s;
+            meanA[k] = Math.atan2 (sumSin[k], sumCos[k]);
+        }
+        // Covariances around the means
+        for (int i = 0; i < n; i++) {
+            int k = clusterOf[slotOf[i]];
+            double dx = x[i] - meanX[k];
+            double dy = y[i] - meanY[k];
+            double da = Math.atan2 (Math.sin (a[i] - meanA[k]),
+                                    Math.cos (a[i] - meanA[k]));
+            cov[4 * k]     += w[i] * dx * dx;
+            cov[4 * k + 1] += w[i] * dy * dy;
+            cov[4 * k + 2] += w[i] * da * da;
+            cov[4 * k + 3] += w[i] * dx * dy;
+        }
+        for (int k = 0; k < count; k++) {
+            double s = (weight[k] > 0) ? 1 / weight[k] : 0;
+            for (int j = 0; j < 4; j++)
+                cov[4 * k + j] *= s;
+        }
+
+        // Sort by decreasing weight: few clusters, insertion sort
+        for (int k = 0; k < count; k++) {
+            int j = k;
+            while (j > 0 && weight[order[j - 1]] < weight[k]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = k;
+        }
+        return count;
+    }
+
+    private void prepare (int n) {
+        int size = Integer.highestOneBit (Math.max (n, 8)) * 4;
+        if (keys.length < size) {
+            keys      = new long[size];
+            clusterOf = new int[size];
+        }
+        mask = keys.length - 1;
+        // -2 marks a free slot
+        Arrays.fill (clusterOf, -2);
+        if (slotOf.length < n) {
+            slotOf   = new int[n];
+            occupied = new int[n];
+            stack    = new int[n];
+        }
+    }
+
+    private void growClusters () {
+        if (weight.length >= count)
+            return;
+        weight = new double[count];
+        sumX   = new double[count];
+        sumY   = new double[count];
+        sumCos = new double[count];
+        sumSin = new double[count];
+        meanX  = new double[count];
+        meanY  = new double[count];
+        meanA  = new double[count];
+        cov    = new double[4 * count];
+        order  = new int[count];
+    }
+
+    private long angleBin (double a) {
+        long b = (long)Math.floor ((a + Math.PI) / cellA) % angleBins;
+        return (b < 0) ? b + angleBins : b;
+    }
+
+    private static long key (long bx, long by, long ba) {
+        return ((bx & MASK) << 42) | ((by & MASK) << 21) | (ba & MASK);
+    }
+
+    /**
+     * Find the slot of a key, or the free slot it would go in.
+     */
+    private int find (long key) {
+        int s = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (clusterOf[s] != -2 && keys[s] != key)
+            s = (s + 1) & mask;
+        return s;
+    }
+
+    /**
+     * @return number of clusters found by the last call to cluster
+     */
+    public int getCount () {
+        return this.count;
+    }
+
+    /**
+     * Get the total weight of a cluster.
+     * @param i rank of the cluster, 0 for the heaviest
+     * @return the sum of the weights of its particles
+     */
+    public double getWeight (int i) {
+        return weight[order[i]];
+    }
+
+    /**
+     * Get the mean pose of a cluster.
+     * @param i rank of the cluster, 0 for the heaviest
+     * @param pose receives x [m], y [m] and yaw [rad]
+     */
+    public void getPose (int i, double[] pose) {
+        int k = order[i];
+        pose[0] = meanX[k];
+        pose[1] = meanY[k];
+        pose[2] = meanA[k];
+    }
+
+    /**
+     * Get the covariance of a cluster.
+     * @param i rank of the cluster, 0 for the heaviest
+     * @param c receives the variances of x, y and yaw, and the covariance
+     * of x and y [m^2, m^2, rad^2, m^2]
+     */
+    public void getCovariance (int i, double[] c) {
+        System.arraycopy (cov, 4 * order[i], c, 0, 4);
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ *  Player Java Client 3 - ScanMatcher.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javaclient3.structures.laser.PlayerLaserData;
+import javaclient3.structures.laser.PlayerLaserTrigTable;
+import javaclient3.structures.map.PlayerMapDataVector;
+
+/**
+ * Point-to-line ICP scan matcher for 2D laser scans.
+ * <br><br>
+ * The matcher aligns the points of a scan with a reference: either a
+ * previous scan, whose local line directions are estimated from
+ * neighbouring beams, or the segments of a vector map, sampled into points
+ * carrying the segment normal. Each iteration pairs every scan point with
+ * its nearest reference point using a {@link KdTree}, and solves for the
+ * rigid motion minimizing the distances from the points to the reference
+ * lines. The correspondence search runs in parallel on a fork/join pool.
+ * <br><br>
+ * Scans are converted to points in the robot frame, using the pose of the
+ * laser on the robot set with {@link #setSensorPose(double, double,
+ * double)}, so the poses and motions the matcher takes and returns are
+ * those of the robot rather than of the laser.
+ * <br><br>
+ * All working arrays are kept between calls and only grow, so matching
+ * scans of a steady size allocates nothing but the small fork/join tasks
+ * of each correspondence search. A matcher is not thread safe.
+ * <br><br>
+ * Typical use for odometry correction is {@link #update(PlayerLaserData,
+ * double[])}, called with each new scan and the odometry motion since the
+ * previous one as the initial guess.
+ * @author agent
+ */
+public class ScanMatcher {
+
+    // Number of points below which the correspondence search is not split
+    private static final int THRESHOLD = 256;
+
+    private final ForkJoinPool pool;
+    private final KdTree       tree;
+
+    // Parameters
+    private int    maxIterations       = 30;
+    private double maxCorrespondence   = 0.5;
+    private double maxNeighbour        = 0.3;
+    private double epsilonTranslation  = 1e-4;
+    private double epsilonRotation     = 1e-4;
+
+    // Pose of the laser on the robot [m, m, rad]
+    private double sensorX;
+    private double sensorY;
+    private double sensorA;
+
+    // Reference points and the normals of the lines through them
+    private float[] refX  = new float[0];
+    private float[] refY  = new float[0];
+    private float[] refNx = new float[0];
+    private float[] refNy = new float[0];
+    private int     refCount;
+
+    // Points being matched, and their correspondences
+    private float[] curX  = new float[0];
+    private float[] curY  = new float[0];
+    private int[]   match = new int[0];
+    private int     curCount;
+
+    // Pose increment of the current iteration
+    private final double[] increment = new double[3];
+
+    // Pose used by the current correspondence search
+    private float   poseC, poseS, poseX, poseY;
+
+    // Statistics of the last match
+    private int     iterations;
+    private int     correspondences;
+    private double  error;
+
+    /**
+     * Create a matcher running on the common fork/join pool.
+     */
+    public ScanMatcher () {
+        this (ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * Create a matcher.
+     * @param newPool the pool the correspondence search runs on
+     */
+    public ScanMatcher (ForkJoinPool newPool) {
+        this.pool = newPool;
+        this.tree = new KdTree (2, newPool);
+    }
+
+    /**
+     * Set the matching parameters.
+     * @param newMaxIterations maximum number of ICP iterations
+     * @param newMaxCorrespondence maximum distance between paired points [m]
+     * @param newMaxNeighbour maximum distance between neighbouring beams
+     * used to estimate a line direction [m]
+     */
+    public void setParameters (int newMaxIterations,
+            double newMaxCorrespondence, double newMaxNeighbour) {
+        this.maxIterations     = newMaxIterations;
+        this.maxCorrespondence = newMaxCorrespondence;
+        this.maxNeighbour      = newMaxNeighbour;
+    }
+
+    /**
+     * Set the convergence thresholds.
+     * @param translation translation increment below which ICP stops [m]
+     * @param rotation rotation increment below which ICP stops [rad]
+     */
+    public void setEpsilon (double translation, double rotation) {
+        this.epsilonTranslation = translation;
+        this.epsilonRotation    = rotation;
+    }
+
+    /**
+     * Set the pose of the laser on the robot. Scans set or matched
+     * afterwards are converted to the robot frame with it.
+     * @param x X [m]
+     * @param y Y [m]
+     * @param yaw orientation [rad]
+     */
+    public void setSensorPose (double x, double y, double yaw) {
+        this.sensorX = x;
+        this.sensorY = y;
+        this.sensorA = yaw;
+    }
+
+    /**
+     * Use a laser scan as the reference.
+     * @param scan the scan
+     */
+    public void setReference (PlayerLaserData scan) {
+        refCount = scanToPoints (scan, true);
+        float[] tx = curX;
+        float[] ty = curY;
+        ensureReference (refCount);
+        System.arraycopy (tx, 0, refX, 0, refCount);
+        System.arraycopy (ty, 0, refY, 0, refCount);
+        computeNormals ();
+        tree.build (refX, refY, refCount);
+    }
+
+    /**
+     * Use the segments of a vector map as the reference. Segments are
+     * sampled into points at a given spacing.
+     * @param map the vector map
+     * @param spacing distance between sampled points [m]
+     */
+    public void setReference (PlayerMapDataVector map, float spacing) {
+        setReference (map.getCoords (), map.getSegments_count (), spacing);
+    }
+
+    /**
+     * Use line segments as the reference. Segments are sampled into points
+     * at a given spacing.
+     * @param segments segment end points (x0, y0, x1, y1, ...) [m]
+     * @param count number of segments
+     * @param spacing distance between sampled points [m]
+     */
+    public void setReference (float[] segments, int count, float spacing) {
+        int total = 0;
+        for (int i = 0; i < count; i++)
+            total += samples (segments, i, spacing);
+        ensureReference (total);
+        int k = 0;
+        for (int i = 0; i < count; i++) {
+            float x0 = segments[4 * i];
+            float y0 = segments[4 * i + 1];
+            float dx = segments[4 * i + 2] - x0;
+            float dy = segments[4 * i + 3] - y0;
+            float len = (float)Math.sqrt (dx * dx + dy * dy);
+            float nx = (len > 0) ? -dy / len : 0;
+            float ny = (len > 0) ?  dx / len : 0;
+            int m = samples (segments, i, spacing);
+            for (int j = 0; j < m; j++, k++) {
+                float f = (m == 1) ? 0.5f : (float)j / (m - 1);
+                refX[k]  = x0 + f * dx;
+                refY[k]  = y0 + f * dy;
+                refNx[k] = nx;
+                refNy[k] = ny;
+            }
+        }
+        refCount = total;
+        tree.build (refX, refY, refCount);
+    }
+
+    private static int samples (float[] segments, int i, float spacing) {
+        float dx = segments[4 * i + 2] - segments[4 * i];
+        float dy = segments[4 * i + 3] - segments[4 * i + 1];
+        return 1 + (int)(Math.sqrt (dx * dx + dy * dy) / spacing);
+    }
+
+    /**
+     * Match a scan against the previous one, then make it the reference
+     * for the next call. The first call only sets the reference.
+     * @param scan the new scan
+     * @param delta on input, the guessed motion of the robot since the
+     * previous scan (x [m], y [m], yaw [rad]), e.g. from odometry; on
+     * output, the estimated motion
+     * @return true if the match converged
+     */
+    public boolean update (PlayerLaserData scan, double[] delta) {
+        boolean converged = false;
+        if (refCount > 0)
+            converged = match (scan, delta);
+        setReference (scan);
+        return converged;
+    }
+
+    /**
+     * Match a scan against the reference.
+     * @param scan the scan
+     * @param pose on input, the guessed pose of the robot that took the
+     * scan in the reference frame (x [m], y [m], yaw [rad]); on output,
+     * the estimated pose
+     * @return true if the match converged
+     */
+    public boolean match (PlayerLaserData scan, double[] pose) {
+        curCount = scanToPoints (scan, false);
+        return match (pose);
+    }
+
+    /**
+     * Match points against the reference.
+     * @param x X coordinates of the points in their own frame [m]
+     * @param y Y coordinates of the points in their own frame [m]
+     * @param count number of points
+     * @param pose on input, the guessed pose of the points in the
+     * reference frame (x [m], y [m], yaw [rad]); on output, the estimated
+     * pose
+     * @return true if the match converged
+     */
+    public boolean match (float[] x, float[] y, int count, double[] pose) {
+        ensureCurrent (count);
+        System.arraycopy (x, 0, curX, 0, count);
+        System.arraycopy (y, 0, curY, 0, count);
+        curCount = count;
+        return match (pose);
+    }
+
+    /**
+     * Run the ICP iterations on the current points.
+     */
+    private boolean match (double[] pose) {
+        iterations      = 0;
+        correspondences = 0;
+        error           = Double.NaN;
+        if (refCount == 0 || curCount == 0)
+            return false;
+        double px = pose[0];
+        double py = pose[1];
+        double pa = pose[2];
+        boolean converged = false;
+        float maxDist2 = (float)(maxCorrespondence * maxCorrespondence);
+        while (iterations < maxIterations && !converged) {
+            iterations++;
+            poseC = (float)Math.cos (pa);
+            poseS = (float)Math.sin (pa);
+            poseX = (float)px;
+            poseY = (float)py;
+            pool.invoke (new Correspond (0, curCount, maxDist2));
+
+            // Accumulate the normal equations of the linearized problem
+            double h00 = 0, h01 = 0, h02 = 0, h11 = 0, h12 = 0, h22 = 0;
+            double g0 = 0, g1 = 0, g2 = 0, sum = 0;
+            int n = 0;
+            double c = Math.cos (pa);
+            double s = Math.sin (pa);
+            for (int i = 0; i < curCount; i++) {
+                int j = match[i];
+                if (j < 0)
+                    continue;
+                double ax = curX[i];
+                double ay = curY[i];
+                double qx = c * ax - s * ay + px;
+                double qy = s * ax + c * ay + py;
+                double nx = refNx[j];
+                double ny = refNy[j];
+                double r  = nx * (qx - refX[j]) + ny * (qy - refY[j]);
+                // Derivative of the rotated point along the yaw
+                double ja = nx * (-s * ax - c * ay) + ny * (c * ax - s * ay);
+                h00 += nx * nx; h01 += nx * ny; h02 += nx * ja;
+                h11 += ny * ny; h12 += ny * ja; h22 += ja * ja;
+                g0  += nx * r;  g1  += ny * r;  g2  += ja * r;
+                sum += r * r;
+                n++;
+            }
+            correspondences = n;
+            if (n < 3)
+                return false;
+            error = Math.sqrt (sum / n);
+
+            // Solve H d = -g, slightly damped against degenerate geometry
+            double damp = 1e-6 * (h00 + h11 + h22);
+            double[] d = increment;
+            if (!solve (h00 + damp, h01, h02, h11 + damp, h12, h22 + damp,
+                    -g0, -g1, -g2, d))
+                return false;
+            px += d[0];
+            py += d[1];
+            pa  = Math.atan2 (Math.sin (pa + d[2]), Math.cos (pa + d[2]));
+            converged = Math.abs (d[0]) < epsilonTranslation &&
+                        Math.abs (d[1]) < epsilonTranslation &&
+                        Math.abs (d[2]) < epsilonRotation;
+        }
+        pose[0] = px;
+        pose[1] = py;
+        pose[2] = pa;
+        return converged;
+    }
+
+    /**
+     * Solve a symmetric 3x3 system by Cramer's rule, writing the solution
+     * into out.
+     * @return false if the system is singular
+     */
+    private static boolean solve (double a00, double a01, double a02,
+            double a11, double a12, double a22, double b0, double b1,
+            double b2, double[] out) {
+        double c00 = a11 * a22 - a12 * a12;
+        double c01 = a02 * a12 - a01 * a22;
+        double c02 = a01 * a12 - a02 * a11;
+        double det = a00 * c00 + a01 * c01 + a02 * c02;
+        if (Math.abs (det) < 1e-12)
+            return false;
+        double c11 = a00 * a22 - a02 * a02;
+        double c12 = a01 * a02 - a00 * a12;
+        double c22 = a00 * a11 - a01 * a01;
+        out[0] = (c00 * b0 + c01 * b1 + c02 * b2) / det;
+        out[1] = (c01 * b0 + c11 * b1 + c12 * b2) / det;
+        out[2] = (c02 * b0 + c12 * b1 + c22 * b2) / det;
+        return true;
+    }
+
+    /**
+     * Convert the valid readings of a scan to cartesian points in the
+     * robot frame, in scan order, into curX/curY.
+     */
+    private int scanToPoints (PlayerLaserData scan, boolean forReference) {
+        int n = scan.getRanges_count ();
+        float[] ranges = scan.getRanges ();
+        float maxRange = scan.getMax_range ();
+        PlayerLaserTrigTable trig = PlayerLaserTrigTable.get
+            (scan.getMin_angle (), scan.getResolution (), n);
+        float[] cos = trig.getCos ();
+        float[] sin = trig.getSin ();
+        float sc = (float)Math.cos (sensorA);
+        float ss = (float)Math.sin (sensorA);
+        float sx = (float)sensorX;
+        float sy = (float)sensorY;
+        ensureCurrent (n);
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            float r = ranges[i];
+            if (!(r > 0) || (maxRange > 0 && r >= maxRange))
+                continue;
+            float lx = r * cos[i];
+            float ly = r * sin[i];
+            curX[k] = sc * lx - ss * ly + sx;
+            curY[k] = ss * lx + sc * ly + sy;
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Estimate the normal of each reference point from its neighbours in
+     * scan order. Points without a close neighbour get a null normal and
+     * are never paired.
+     */
+    private void computeNormals () {
+        float max2 = (float)(maxNeighbour * maxNeighbour);
+        for (int i = 0; i < refCount; i++) {
+            int a = (i > 0 && dist2 (i, i - 1) <= max2) ? i - 1 : i;
+            int b = (i + 1 < refCount && dist2 (i, i + 1) <= max2) ? i + 1 : i;
+            float dx = refX[b] - refX[a];
+            float dy = refY[b] - refY[a];
+            float len = (float)Math.sqrt (dx * dx + dy * dy);
+            if (len > 0) {
+                refNx[i] = -dy / len;
+                refNy[i] =  dx / len;
+            } else {
+                refNx[i] = 0;
+                refNy[i] = 0;
+            }
+        }
+    }
+
+    private float dist2 (int i, int j) {
+        float dx = refX[i] - refX[j];
+        float dy = refY[i] - refY[j];
+        return dx * dx + dy * dy;
+    }
+
+    private void ensureReference (int n) {
+        if (refX.length < n) {
+            refX  = new float[n];
+            refY  = new float[n];
+            refNx = new float[n];
+            refNy = new float[n];
+        }
+    }
+
+    private void ensureCurrent (int n) {
+        if (curX.length < n) {
+            curX  = new float[n];
+            curY  = new float[n];
+            match = new int[n];
+        }
+    }
+
+    /**
+     * @return number of iterations of the last match
+     */
+    public int getIterations () {
+        return this.iterations;
+    }
+
+    /**
+     * @return number of paired points in the last iteration
+     */
+    public int getCorrespondences () {
+        return this.correspondences;
+    }
+
+    /**
+     * @return RMS point-to-line distance of the last iteration [m]
+     */
+    public double getError () {
+        return this.error;
+    }
+
+    /**
+     * Pair a slice of the current points with their nearest reference
+     * points.
+     */
+    private class Correspond extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int   from;
+        private final int   to;
+        private final float maxDist2;
+
+        Correspond (int newFrom, int newTo, float newMaxDist2) {
+            this.from     = newFrom;
+            this.to       = newTo;
+            this.maxDist2 = newMaxDist2;
+        }
+
+        protected void compute () {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll (new Correspond (from, mid, maxDist2),
+                           new Correspond (mid, to, maxDist2));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                float qx = poseC * curX[i] - poseS * curY[i] + poseX;
+                float qy = poseS * curX[i] + poseC * curY[i] + poseY;
+                int j = tree.nearest (qx, qy, 0);
+                if (j < 0 || (refNx[j] == 0 && refNy[j] == 0)) {
+                    match[i] = -1;
+                    continue;
+                }
+                float dx = refX[j] - qx;
+                float dy = refY[j] - qy;
+                match[i] = (dx * dx + dy * dy <= maxDist2) ? j : -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ *  Player Java Client 3 - ScanProjector.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import javaclient3.LaserInterface;
+import javaclient3.OdometryHistory;
+import javaclient3.RangerInterface;
+import javaclient3.structures.PlayerPose;
+import javaclient3.structures.PlayerPose3d;
+import javaclient3.structures.laser.PlayerLaserData;
+import javaclient3.structures.laser.PlayerLaserGeom;
+import javaclient3.structures.laser.PlayerLaserTrigTable;
+import javaclient3.structures.ranger.PlayerRangerConf;
+import javaclient3.structures.ranger.PlayerRangerData;
+import javaclient3.structures.ranger.PlayerRangerGeom;
+
+/**
+ * Projects laser and ranger readings into the world frame.
+ * <br><br>
+ * The robot pose at the time of a scan is interpolated from an
+ * {@link OdometryHistory}, and the sensor mounting pose is taken from the
+ * device geometry. The direction and origin of every beam in the robot
+ * frame are computed once per scan configuration, so that projecting a scan
+ * is a single branch-free pass over the ranges. Point i of the result
+ * always corresponds to reading i, including readings which are out of
+ * range; filtering them is left to the caller.
+ * <br><br>
+ * Projection does not allocate any objects once the beam tables are built.
+ * A projector is not thread safe; use one projector per thread.
+ * @author agent
+ */
+public class ScanProjector {
+
+    // History used to look up the robot pose
+    private OdometryHistory history;
+
+    // Sensor mounting pose in the robot frame [m, m, rad]
+    private double  mountX;
+    private double  mountY;
+    private double  mountA;
+    // Per-sensor mounting poses (e.g. sonar rings), or null
+    private PlayerPose3d[] mountPoses;
+
+    // Origin and direction of each beam in the robot frame
+    private float[] originX = new float[0];
+    private float[] originY = new float[0];
+    private float[] dirX    = new float[0];
+    private float[] dirY    = new float[0];
+
+    // Ranger readings converted to single precision
+    private float[] rangeBuffer = new float[0];
+
+    // Scan configuration the beam tables were built for
+    private boolean valid;
+    private int     beams;
+    private double  minAngle;
+    private double  resolution;
+
+    // Interpolated robot pose [m, m, rad]
+    private final double[] pose = new double[3];
+
+    /**
+     * Create a projector.
+     * @param history the history used to look up the robot pose
+     */
+    public ScanProjector (OdometryHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Set the sensor mounting pose in the robot frame.
+     * @param x X [m]
+     * @param y Y [m]
+     * @param yaw yaw [rad]
+     */
+    public void setMount (double x, double y, double yaw) {
+        this.mountX     = x;
+        this.mountY     = y;
+        this.mountA     = yaw;
+        this.mountPoses = null;
+        this.valid      = false;
+    }
+
+    /**
+     * Set the sensor mounting pose from the laser geometry.
+     * @param geom geometry as returned by
+     * {@link LaserInterface#getPlayerLaserGeom()}
+     */
+    public void setMount (PlayerLaserGeom geom) {
+        PlayerPose p = geom.getPose ();
+        setMount (p.getPx (), p.getPy (), p.getPa ());
+    }
+
+    /**
+     * Set the sensor mounting pose from the ranger geometry. If the geometry
+     * holds one pose per sensor element (e.g. a sonar ring), each reading
+     * is projected from the pose of its element, relative to the device
+     * pose, along the element's yaw.
+     * Otherwise the device is treated as a scanning sensor mounted at the
+     * device pose.
+     * @param geom geometry as returned by {@link RangerInterface#getGeom()}
+     */
+    public void setMount (PlayerRangerGeom geom) {
+        PlayerPose3d p = geom.getPose ();
+        setMount (p.getPx (), p.getPy (), p.getPyaw ());
+        PlayerPose3d[] poses = geom.getPoses ();
+        if (poses != null && geom.getPoses_count () > 1)
+            this.mountPoses = poses;
+    }
+
+    /**
+     * Project the current laser scan of a device, using the timestamp of
+     * its latest data.
+     * @param li the laser device
+     * @param x receives the world X coordinate of each reading [m]
+     * @param y receives the world Y coordinate of each reading [m]
+     * @return the number of points written, or -1 if no robot pose is known
+     */
+    public int project (LaserInterface li, float[] x, float[] y) {
+        return project (li.getData (), li.getTimestamp (), x, y);
+    }
+
+    /**
+     * Project a laser scan.
+     * @param data the scan
+     * @param timestamp time the scan was taken [s]
+     * @param x receives the world X coordinate of each reading [m]
+     * @param y receives the world Y coordinate of each reading [m]
+     * @return the number of points written, or -1 if no robot pose is known
+     */
+    public int project (PlayerLaserData data, double timestamp,
+            float[] x, float[] y) {
+        if (!history.getPoseAt (timestamp, pose))
+            return -1;
+        int n = data.getRanges_count ();
+        buildLaserTables (data.getMin_angle (), data.getResolution (), n);
+        project (data.getRanges (), n, x, y);
+        return n;
+    }
+
+    /**
+     * Project the current ranger data of a device, using the timestamp of
+     * its latest data and its current configuration.
+     * @param ri the ranger device
+     * @param x receives the world X coordinate of each reading [m]
+     * @param y receives the world Y coordinate of each reading [m]
+     * @return the number of points written, or -1 if no robot pose is known
+     */
+    public int project (RangerInterface ri, float[] x, float[] y) {
+        return project (ri.getData (), ri.getConf (), ri.getTimestamp (), x, y);
+    }
+
+    /**
+     * Project ranger data.
+     * @param data the readings
+     * @param conf the ranger configuration, used for the beam angles of
+     * scanning devices; may be null if per-element poses are set
+     * @param timestamp time the readings were taken [s]
+     * @param x receives the world X coordinate of each reading [m]
+     * @param y receives the world Y coordinate of each reading [m]
+     * @return the number of points written, or -1 if no robot pose is known
+     */
+    public int project (PlayerRangerData data, PlayerRangerConf conf,
+            double timestamp, float[] x, float[] y) {
+        if (!history.getPoseAt (timestamp, pose))
+            return -1;
+        int n = data.getRanges_count ();
+        if (mountPoses != null)
+            buildElementTables (n);
+        else
+            buildScanTables (conf.getMin_angle (), conf.getResolution (), n);
+        double[] ranges = data.getRanges ();
+        if (rangeBuffer.length < n)
+            rangeBuffer = new float[n];
+        for (int i = 0; i < n; i++)
+            rangeBuffer[i] = (float)ranges[i];
+        project (rangeBuffer, n, x, y);
+        return n;
+    }
+
+    /**
+     * Transform ranges along the current beam tables with the current
+     * robot pose.
+     */
+    private void project (float[] ranges, int n, float[] x, float[] y) {
+        float c  = (float)Math.cos (pose[2]);
+        float s  = (float)Math.sin (pose[2]);
+        float px = (float)pose[0];
+        float py = (float)pose[1];
+        for (int i = 0; i < n; i++) {
+            float r  = ranges[i];
+            float lx = originX[i] + r * dirX[i];
+            float ly = originY[i] + r * dirY[i];
+            x[i] = px + c * lx - s * ly;
+            y[i] = py + s * lx + c * ly;
+        }
+    }
+
+    /**
+     * Build the beam tables of a laser, reusing the shared trigonometric
+     * table of its scan configuration.
+     */
+    private void buildLaserTables (float newMinAngle, float newResolution,
+            int n) {
+        if (valid && mountPoses == null && n == beams &&
+                newMinAngle == minAngle && newResolution == resolution)
+            return;
+        PlayerLaserTrigTable trig =
+            PlayerLaserTrigTable.get (newMinAngle, newResolution, n);
+        float[] cos = trig.getCos ();
+        float[] sin = trig.getSin ();
+        ensureCapacity (n);
+        float mc = (float)Math.cos (mountA);
+        float ms = (float)Math.sin (mountA);
+        for (int i = 0; i < n; i++) {
+            originX[i] = (float)mountX;
+            originY[i] = (float)mountY;
+            dirX[i]    = mc * cos[i] - ms * sin[i];
+            dirY[i]    = ms * cos[i] + mc * sin[i];
+        }
+        setConfiguration (newMinAngle, newResolution, n);
+    }
+
+    /**
+     * Build the beam tables of a scanning ranger.
+     */
+    private void buildScanTables (double newMinAngle, double newResolution,
+            int n) {
+        if (valid && n == beams &&
+                newMinAngle == minAngle && newResolution == resolution)
+            return;
+        ensureCapacity (n);
+        for (int i = 0; i < n; i++) {
+            double angle = mountA + newMinAngle + i * newResolution;
+            originX[i] = (float)mountX;
+            originY[i] = (float)mountY;
+            dirX[i]    = (float)Math.cos (angle);
+            dirY[i]    = (float)Math.sin (angle);
+        }
+        setConfiguration (newMinAngle, newResolution, n);
+    }
+
+    /**
+     * Build the beam tables of a ranger with one pose per element.
+     */
+    private void buildElementTables (int n) {
+        if (valid && n == beams && Double.isNaN (minAngle))
+            return;
+        if (n > mountPoses.length)
+            throw new IllegalArgumentException
+                ("Geometry holds " + mountPoses.length + " poses, " + n +
+                        " readings received");
+        ensureCapacity (n);
+        // Element poses are given in the frame of the device
+        double mc = Math.cos (mountA);
+        double ms = Math.sin (mountA);
+        for (int i = 0; i < n; i++) {
+            PlayerPose3d p = mountPoses[i];
+            originX[i] = (float)(mountX + mc * p.getPx () - ms * p.getPy ());
+            originY[i] = (float)(mountY + ms * p.getPx () + mc * p.getPy ());
+            dirX[i]    = (float)Math.cos (mountA + p.getPyaw ());
+            dirY[i]    = (float)Math.sin (mountA + p.getPyaw ());
+        }
+        setConfiguration (Double.NaN, Double.NaN, n);
+    }
+
+    private void ensureCapacity (int n) {
+        if (originX.length < n) {
+            originX = new float[n];
+            originY = new float[n];
+            dirX    = new float[n];
+            dirY    = new float[n];
+        }
+    }
+
+    private void setConfiguration (double newMinAngle, double newResolution,
+            int n) {
+        this.minAngle   = newMinAngle;
+        this.resolution = newResolution;
+        this.beams      = n;
+        this.valid      = true;
+    }
+
+    /**
+     * @return the history used to look up the robot pose
+     */
+    public OdometryHistory getHistory () {
+        return this.history;
+    }
+}
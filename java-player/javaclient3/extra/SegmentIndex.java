@@ -0,0 +1,354 @@
+/*
+ *  Player Java Client 3 - SegmentIndex.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import javaclient3.structures.map.PlayerMapDataVector;
+
+/**
+ * Uniform grid index over the segments of a vector map, for ray casting,
+ * nearest segment and box queries that only look at the segments near
+ * the query instead of all of them.
+ * <br><br>
+ * Every grid cell lists the segments whose bounding box overlaps it; the
+ * lists are packed into a single array, indexed by the offset of each
+ * cell. Queries do not allocate and only read the index, so several
+ * threads may query it at once.
+ * @author agent
+ * @see PlayerMapDataVector#getCoords()
+ */
+public class SegmentIndex {
+
+    // Segment end points (x0, y0, x1, y1, ...) [m]
+    private final float[] coords;
+    private final int     count;
+
+    // Grid layout
+    private final float   minX;
+    private final float   minY;
+    private final float   cellSize;
+    private final int     cols;
+    private final int     rows;
+    // Segments of cell c are items[start[c]] to items[start[c + 1] - 1]
+    private final int[]   start;
+    private final int[]   items;
+
+    /**
+     * Index the segments of a vector map, with cells sized after the
+     * average segment length.
+     * @param map the vector map
+     */
+    public SegmentIndex (PlayerMapDataVector map) {
+        this (map.getCoords (), map.getSegments_count (), 0);
+    }
+
+    /**
+     * Index segments.
+     * @param newCoords end points (x0, y0, x1, y1, ...) [m], not copied
+     * @param newCount number of segments
+     * @param newCellSize edge of the grid cells [m], or 0 to use the
+     * average segment length
+     */
+    public SegmentIndex (float[] newCoords, int newCount, float newCellSize) {
+        this.coords = newCoords;
+        this.count  = newCount;
+
+        float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+        float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+        double length = 0;
+        for (int i = 0; i < newCount; i++) {
+            float ax = newCoords[4 * i],     ay = newCoords[4 * i + 1];
+            float bx = newCoords[4 * i + 2], by = newCoords[4 * i + 3];
+            x0 = Math.min (x0, Math.min (ax, bx));
+            y0 = Math.min (y0, Math.min (ay, by));
+            x1 = Math.max (x1, Math.max (ax, bx));
+            y1 = Math.max (y1, Math.max (ay, by));
+            length += Math.hypot (bx - ax, by - ay);
+        }
+        if (newCount == 0) {
+            x0 = y0 = 0;
+            x1 = y1 = 1;
+        }
+        float size = newCellSize;
+        if (!(size > 0))
+            size = (float)Math.max (length / Math.max (newCount, 1), 1e-3);
+        // Keep the grid to a few cells per segment
+        double extent = Math.max (x1 - x0, y1 - y0);
+        size = (float)Math.max (size, extent / Math.sqrt (4.0 * newCount + 16));
+        this.minX     = x0;
+        this.minY     = y0;
+        this.cellSize = size;
+        this.cols     = (int)((x1 - x0) / size) + 1;
+        this.rows     = (int)((y1 - y0) / size) + 1;
+
+        // Count the segments of each cell, then fill the packed lists
+        this.start = new int[cols * rows + 1];
+        for (int i = 0; i < newCount; i++)
+            forCells (i, null);
+        for (int c = 0, sum = 0; c <= cols * rows; c++) {
+            int n = start[c];
+            start[c] = sum;
+            sum += n;
+        }
+        this.items = new int[start[cols * rows]];
+        int[] fill = new int[cols * rows];
+        for (int i = 0; i < newCount; i++)
+            forCells (i, fill);
+    }
+
+    /**
+     * Count a segment in (fill == null) or add it to the cells its
+     * bounding box overlaps.
+     */
+    private void forCells (int i, int[] fill) {
+        int c0 = col (Math.min (coords[4 * i],     coords[4 * i + 2]));
+        int c1 = col (Math.max (coords[4 * i],     coords[4 * i + 2]));
+        int r0 = row (Math.min (coords[4 * i + 1], coords[4 * i + 3]));
+        int r1 = row (Math.max (coords[4 * i + 1], coords[4 * i + 3]));
+        for (int r = r0; r <= r1; r++)
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                if (fill == null)
+                    start[cell]++;
+                else
+                    items[start[cell] + fill[cell]++] = i;
+            }
+    }
+
+    private int col (double x) {
+        return Math.max (0, Math.min (cols - 1,
+                (int)Math.floor ((x - minX) / cellSize)));
+    }
+
+    private int row (double y) {
+        return Math.max (0, Math.min (rows - 1,
+                (int)Math.floor ((y - minY) / cellSize)));
+    }
+
+    /**
+     * @return number of indexed segments
+     */
+    public int size () {
+        return this.count;
+    }
+
+    /**
+     * @return edge of the grid cells [m]
+     */
+    public float getCellSize () {
+        return this.cellSize;
+    }
+
+    /**
+     * Find the first segment hit by a ray.
+     * @param x X of the origin [m]
+     * @param y Y of the origin [m]
+     * @param angle direction of the ray [rad]
+     * @param maxRange maximum range [m]
+     * @return distance to the first segment hit [m], or maxRange if none
+     */
+    public float raycast (double x, double y, double angle, float maxRange) {
+        double dx = Math.cos (angle);
+        double dy = Math.sin (angle);
+        // Clip the ray to the grid
+        double tIn  = 0;
+        double tOut = maxRange;
+        double gx0 = minX, gx1 = minX + cols * cellSize;
+        double gy0 = minY, gy1 = minY + rows * cellSize;
+        if (dx != 0) {
+            double a = (gx0 - x) / dx, b = (gx1 - x) / dx;
+            tIn  = Math.max (tIn,  Math.min (a, b));
+            tOut = Math.min (tOut, Math.max (a, b));
+        } else if (x < gx0 || x > gx1)
+            return maxRange;
+        if (dy != 0) {
+            double a = (gy0 - y) / dy, b = (gy1 - y) / dy;
+            tIn  = Math.max (tIn,  Math.min (a, b));
+            tOut = Math.min (tOut, Math.max (a, b));
+        } else if (y < gy0 || y > gy1)
+            return maxRange;
+        if (tIn > tOut)
+            return maxRange;
+
+        // Walk the cells along the ray (DDA), stopping once a hit lies
+        // before the exit of the current cell
+        double gx = (x + tIn * dx - minX) / cellSize;
+        double gy = (y + tIn * dy - minY) / cellSize;
+        int ix = Math.max (0, Math.min (cols - 1, (int)Math.floor (gx)));
+        int iy = Math.max (0, Math.min (rows - 1, (int)Math.floor (gy)));
+        int stepX = (dx > 0) ? 1 : -1;
+        int stepY = (dy > 0) ? 1 : -1;
+        double tMaxX = (dx != 0) ? tIn + ((ix + ((dx > 0) ? 1 : 0)) - gx) *
+            cellSize / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = (dy != 0) ? tIn + ((iy + ((dy > 0) ? 1 : 0)) - gy) *
+            cellSize / dy : Double.POSITIVE_INFINITY;
+        double tDeltaX = (dx != 0) ? Math.abs (cellSize / dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = (dy != 0) ? Math.abs (cellSize / dy) : Double.POSITIVE_INFINITY;
+        double best = maxRange;
+        while (true) {
+            int cell = iy * cols + ix;
+            for (int k = start[cell]; k < start[cell + 1]; k++) {
+                double t = intersect (items[k], x, y, dx, dy);
+                if (t < best)
+                    best = t;
+            }
+            double tExit = Math.min (tMaxX, tMaxY);
+            if (best <= tExit || tExit >= tOut)
+                return (float)best;
+            if (tMaxX < tMaxY) {
+                tMaxX += tDeltaX;
+                ix += stepX;
+                if (ix < 0 || ix >= cols)
+                    return (float)best;
+            } else {
+                tMaxY += tDeltaY;
+                iy += stepY;
+                if (iy < 0 || iy >= rows)
+                    return (float)best;
+            }
+        }
+    }
+
+    /**
+     * Intersect a ray with a segment.
+     * @return the distance along the ray, or infinity if they do not meet
+     */
+    private double intersect (int i, double x, double y, double dx,
+            double dy) {
+        double ax = coords[4 * i],     ay = coords[4 * i + 1];
+        double ex = coords[4 * i + 2] - ax;
+        double ey = coords[4 * i + 3] - ay;
+        double den = dx * ey - dy * ex;
+        if (den == 0)
+            return Double.POSITIVE_INFINITY;
+        double wx = ax - x, wy = ay - y;
+        double t = (wx * ey - wy * ex) / den;
+        double u = (wx * dy - wy * dx) / den;
+        if (t < 0 || u < 0 || u > 1)
+            return Double.POSITIVE_INFINITY;
+        return t;
+    }
+
+    /**
+     * Find the segment closest to a point.
+     * @param x X of the point [m]
+     * @param y Y of the point [m]
+     * @param maxDistance search radius [m]
+     * @param closest receives the closest point of the segment and its
+     * distance (x, y, distance), may be null
+     * @return index of the segment, or -1 if none lies within maxDistance
+     */
+    public int nearest (double x, double y, float maxDistance,
+            double[] closest) {
+        int best = -1;
+        double bestD2 = (double)maxDistance * maxDistance;
+        double bx = 0, by = 0;
+        int cx = (int)Math.floor ((x - minX) / cellSize);
+        int cy = (int)Math.floor ((y - minY) / cellSize);
+        // Rings beyond the search radius or past the grid are empty
+        double rings = Math.min (Math.ceil (maxDistance / cellSize) + 1,
+                Math.max (cols, rows) + Math.max (Math.abs ((double)cx),
+                                                  Math.abs ((double)cy)));
+        int maxRing = (int)rings;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Cells of the ring are at least (ring - 1) cells away
+            double near = (ring - 1) * (double)cellSize;
+            if (ring > 1 && near * near > bestD2)
+                break;
+            for (int r = cy - ring; r <= cy + ring; r++) {
+                if (r < 0 || r >= rows)
+                    continue;
+                boolean edge = (r == cy - ring || r == cy + ring);
+                for (int c = cx - ring; c <= cx + ring;
+                        c += (edge || ring == 0) ? 1 : 2 * ring) {
+                    if (c < 0 || c >= cols)
+                        continue;
+                    int cell = r * cols + c;
+                    for (int k = start[cell]; k < start[cell + 1]; k++) {
+                        int i = items[k];
+                        double ax = coords[4 * i],     ay = coords[4 * i + 1];
+                        double ex = coords[4 * i + 2] - ax;
+                        double ey = coords[4 * i + 3] - ay;
+                        double l2 = ex * ex + ey * ey;
+                        double u  = (l2 > 0) ?
+                            ((x - ax) * ex + (y - ay) * ey) / l2 : 0;
+                        u = Math.max (0, Math.min (1, u));
+                        double px = ax + u * ex, py = ay + u * ey;
+                        double d2 = (px - x) * (px - x) + (py - y) * (py - y);
+                        if (d2 < bestD2 || (d2 == bestD2 && best < 0)) {
+                            best   = i;
+                            bestD2 = d2;
+                            bx = px;
+                            by = py;
+                        }
+                    }
+                }
+            }
+        }
+        if (best >= 0 && closest != null) {
+            closest[0] = bx;
+            closest[1] = by;
+            closest[2] = Math.sqrt (bestD2);
+        }
+        return best;
+    }
+
+    /**
+     * Find the segments whose bounding box overlaps a box. Each segment is
+     * reported once.
+     * @param x0 lower X of the box [m]
+     * @param y0 lower Y of the box [m]
+     * @param x1 upper X of the box [m]
+     * @param y1 upper Y of the box [m]
+     * @param out receives the indices of the segments
+     * @return number of segments found; only the first out.length are
+     * written
+     */
+    public int query (double x0, double y0, double x1, double y1,
+            int[] out) {
+        int qc0 = col (x0), qc1 = col (x1);
+        int qr0 = row (y0), qr1 = row (y1);
+        int n = 0;
+        for (int r = qr0; r <= qr1; r++) {
+            for (int c = qc0; c <= qc1; c++) {
+                int cell = r * cols + c;
+                for (int k = start[cell]; k < start[cell + 1]; k++) {
+                    int i = items[k];
+                    float sx0 = Math.min (coords[4 * i],     coords[4 * i + 2]);
+                    float sx1 = Math.max (coords[4 * i],     coords[4 * i + 2]);
+                    float sy0 = Math.min (coords[4 * i + 1], coords[4 * i + 3]);
+                    float sy1 = Math.max (coords[4 * i + 1], coords[4 * i + 3]);
+                    if (sx1 < x0 || sx0 > x1 || sy1 < y0 || sy0 > y1)
+                        continue;
+                    // Report the segment from the first cell it shares
+                    // with the box only
+                    if (c != Math.max (col (sx0), qc0) ||
+                        r != Math.max (row (sy0), qr0))
+                        continue;
+                    if (n < out.length)
+                        out[n] = i;
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ *  Player Java Client 3 - VoxelGridFilter.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.extra;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javaclient3.structures.pointcloud3d.PlayerPointCloud3DData;
+
+/**
+ * Voxel grid down-sampling of point clouds. Space is divided into cubic
+ * voxels and all the points falling in a voxel are replaced by their
+ * centroid, with the average of their colors.
+ * <br><br>
+ * Points are accumulated into primitive hash tables by fork/join tasks,
+ * each working on a slice of the cloud; the partial tables are merged
+ * when the tasks join. Coordinates are expected as produced by
+ * {@link PlayerPointCloud3DData#getXyz()} and colors as produced by
+ * {@link PlayerPointCloud3DData#getRgba()}.
+ * @author agent
+ */
+public class VoxelGridFilter {
+
+    // Number of points below which a slice is not split further
+    private static final int THRESHOLD = 8192;
+    // Voxel indices are kept on 21 bits per axis
+    private static final int  BITS = 21;
+    private static final long MASK = (1L << BITS) - 1;
+    private static final int  BIAS = 1 << (BITS - 1);
+
+    private final float        leafSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a filter running on the common fork/join pool.
+     * @param size edge length of a voxel [m]
+     */
+    public VoxelGridFilter (float size) {
+        this (size, ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * Create a filter.
+     * @param size edge length of a voxel [m]
+     * @param newPool the pool the filter runs on
+     */
+    public VoxelGridFilter (float size, ForkJoinPool newPool) {
+        if (!(size > 0))
+            throw new IllegalArgumentException ("Invalid voxel size: " + size);
+        this.leafSize = size;
+        this.pool     = newPool;
+    }
+
+    /**
+     * @return edge length of a voxel [m]
+     */
+    public float getLeafSize () {
+        return this.leafSize;
+    }
+
+    /**
+     * Down-sample a point cloud.
+     * @param data the point cloud
+     * @param outXyz receives the coordinates of the centroids
+     * @param outRgba receives their average colors, may be null
+     * @return number of points written
+     * @see #filter(float[], int[], int, float[], int[])
+     */
+    public int filter (PlayerPointCloud3DData data, float[] outXyz,
+            int[] outRgba) {
+        return filter (data.getXyz (), data.getRgba (),
+                data.getPoints_count (), outXyz, outRgba);
+    }
+
+    /**
+     * Down-sample a point cloud. Non-finite points are skipped. The output
+     * arrays must be large enough for one point per occupied voxel, which
+     * is never more than the number of input points.
+     * @param xyz coordinates (x0, y0, z0, x1, ...) [m]
+     * @param rgba colors packed as 0xRRGGBBAA, may be null
+     * @param count number of points
+     * @param outXyz receives the coordinates of the centroids
+     * @param outRgba receives their average colors, may be null
+     * @return number of points written
+     */
+    public int filter (float[] xyz, int[] rgba, int count,
+            float[] outXyz, int[] outRgba) {
+        boolean colors = rgba != null && outRgba != null;
+        VoxelTable table = pool.invoke
+            (new Accumulate (xyz, colors ? rgba : null, 0, count));
+        return table.write (outXyz, colors ? outRgba : null);
+    }
+
+    /**
+     * Compute the key of the voxel holding a point.
+     */
+    private long key (float x, float y, float z) {
+        long ix = ((long)Math.floor (x / leafSize) + BIAS) & MASK;
+        long iy = ((long)Math.floor (y / leafSize) + BIAS) & MASK;
+        long iz = ((long)Math.floor (z / leafSize) + BIAS) & MASK;
+        return (ix << (2 * BITS)) | (iy << BITS) | iz;
+    }
+
+    /**
+     * Accumulate a slice of the cloud, splitting it among sub-tasks.
+     */
+    private class Accumulate extends RecursiveTask<VoxelTable> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final float[] xyz;
+        private final int[]   rgba;
+        private final int     from;
+        private final int     to;
+
+        Accumulate (float[] newXyz, int[] newRgba, int newFrom, int newTo) {
+            this.xyz  = newXyz;
+            this.rgba = newRgba;
+            this.from = newFrom;
+            this.to   = newTo;
+        }
+
+        protected VoxelTable compute () {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                Accumulate left  = new Accumulate (xyz, rgba, from, mid);
+                Accumulate right = new Accumulate (xyz, rgba, mid, to);
+                left.fork ();
+                VoxelTable r = right.compute ();
+                VoxelTable l = left.join ();
+                return l.merge (r);
+            }
+            VoxelTable table = new VoxelTable (rgba != null);
+            for (int i = from; i < to; i++) {
+                float x = xyz[3 * i];
+                float y = xyz[3 * i + 1];
+                float z = xyz[3 * i + 2];
+                if (Float.isNaN (x + y + z) || Float.isInfinite (x + y + z))
+                    continue;
+                table.add (key (x, y, z), x, y, z,
+                        (rgba != null) ? rgba[i] : 0);
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Open addressing hash table from voxel keys to point sums.
+     */
+    private static class VoxelTable {
+
+        private final boolean colors;
+        private long[]   keys;
+        private boolean[] used;
+        private int[]    counts;
+        private double[] sums;
+        private int[]    channels;
+        private int      size;
+
+        VoxelTable (boolean withColors) {
+            this.colors = withColors;
+            allocate (64);
+        }
+
+        private void allocate (int capacity) {
+            keys     = new long[capacity];
+            used     = new boolean[capacity];
+            counts   = new int[capacity];
+            sums     = new double[3 * capacity];
+            channels = colors ? new int[4 * capacity] : null;
+        }
+
+        private int slot (long key) {
+            int mask = keys.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int i = (int)(h >>> 32) & mask;
+            while (used[i] && keys[i] != key)
+                i = (i + 1) & mask;
+            return i;
+        }
+
+        void add (long key, double x, double y, double z, int c) {
+            int i = slot (key);
+            if (!used[i]) {
+                if (2 * (size + 1) > keys.length) {
+                    grow ();
+                    i = slot (key);
+                }
+                used[i] = true;
+                keys[i] = key;
+                size++;
+            }
+            counts[i]++;
+            sums[3 * i]     += x;
+            sums[3 * i + 1] += y;
+            sums[3 * i + 2] += z;
+            if (colors) {
+                channels[4 * i]     += (c >>> 24);
+                channels[4 * i + 1] += (c >> 16) & 0xFF;
+                channels[4 * i + 2] += (c >> 8)  & 0xFF;
+                channels[4 * i + 3] += c & 0xFF;
+            }
+        }
+
+        private void grow () {
+            long[]    oldKeys     = keys;
+            boolean[] oldUsed     = used;
+            int[]     oldCounts   = counts;
+            double[]  oldSums     = sums;
+            int[]     oldChannels = channels;
+            allocate (2 * oldKeys.length);
+            for (int j = 0; j < oldKeys.length; j++)
+                if (oldUsed[j])
+                    put (oldKeys[j], oldCounts[j], oldSums, oldChannels, j);
+        }
+
+        private void put (long key, int n, double[] s, int[] ch, int j) {
+            int i = slot (key);
+            if (!used[i]) {
+                used[i] = true;
+                keys[i] = key;
+            }
+            counts[i]       += n;
+            sums[3 * i]     += s[3 * j];
+            sums[3 * i + 1] += s[3 * j + 1];
+            sums[3 * i + 2] += s[3 * j + 2];
+            if (colors)
+                for (int c = 0; c < 4; c++)
+                    channels[4 * i + c] += ch[4 * j + c];
+        }
+
+        VoxelTable merge (VoxelTable other) {
+            VoxelTable big   = (size >= other.size) ? this : other;
+            VoxelTable small = (big == this) ? other : this;
+            for (int j = 0; j < small.keys.length; j++) {
+                if (!small.used[j])
+                    continue;
+                if (2 * (big.size + 1) > big.keys.length)
+                    big.grow ();
+                int i = big.slot (small.keys[j]);
+                if (!big.used[i])
+                    big.size++;
+                big.put (small.keys[j], small.counts[j], small.sums,
+                        small.channels, j);
+            }
+            return big;
+        }
+
+        int write (float[] outXyz, int[] outRgba) {
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (!used[i])
+                    continue;
+                int c = counts[i];
+                outXyz[3 * n]     = (float)(sums[3 * i] / c);
+                outXyz[3 * n + 1] = (float)(sums[3 * i + 1] / c);
+                outXyz[3 * n + 2] = (float)(sums[3 * i + 2] / c);
+                if (outRgba != null)
+                    outRgba[n] = ((channels[4 * i]     / c) << 24) |
+                                 ((channels[4 * i + 1] / c) << 16) |
+                                 ((channels[4 * i + 2] / c) << 8)  |
+                                 (channels[4 * i + 3]  / c);
+                n++;
+            }
+            return n;
+        }
+    }
+}
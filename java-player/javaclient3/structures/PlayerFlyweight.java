@@ -0,0 +1,117 @@
+/*
+ *  Player Java Client 3 - PlayerFlyweight.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.structures;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Base class for read-only views over an array of XDR encoded structures
+ * kept in a raw buffer. A view is positioned on one element at a time with
+ * {@link #moveTo(int)}; its getters decode the fields of that element
+ * directly from the buffer, so iterating over many elements does not
+ * create any objects.
+ * <br><br>
+ * A view stays valid only as long as the buffer it wraps. Views are not
+ * thread safe; use one view per thread.
+ * @author agent
+ */
+public abstract class PlayerFlyweight {
+
+    // The buffer holding the encoded elements
+    protected ByteBuffer buffer;
+    // Offset of the first element in the buffer [bytes]
+    protected int        base;
+    // Distance between two consecutive elements [bytes]
+    protected int        stride;
+    // Number of elements in the buffer
+    protected int        count;
+    // Index of the current element
+    protected int        index;
+    // Offset of the current element in the buffer [bytes]
+    protected int        offset;
+
+    /**
+     * @return size of one encoded element [bytes]
+     */
+    public abstract int getSize ();
+
+    /**
+     * Position the view over an array of densely packed elements.
+     * @param newBuffer buffer holding the encoded elements
+     * @param newBase offset of the first element [bytes]
+     * @param newCount number of elements
+     */
+    public void wrap (ByteBuffer newBuffer, int newBase, int newCount) {
+        wrap (newBuffer, newBase, getSize (), newCount);
+    }
+
+    /**
+     * Position the view over an array of elements embedded in larger
+     * records (e.g. the point part of a point cloud element).
+     * @param newBuffer buffer holding the encoded elements
+     * @param newBase offset of the first element [bytes]
+     * @param newStride distance between two consecutive elements [bytes]
+     * @param newCount number of elements
+     */
+    public void wrap (ByteBuffer newBuffer, int newBase, int newStride,
+            int newCount) {
+        if (newStride < getSize ())
+            throw new IllegalArgumentException
+                ("Stride " + newStride + " smaller than element size " +
+                        getSize ());
+        if (newBase + newCount * newStride > newBuffer.limit ())
+            throw new IndexOutOfBoundsException
+                ("Buffer too small for " + newCount + " elements");
+        this.buffer = newBuffer;
+        this.base   = newBase;
+        this.stride = newStride;
+        this.count  = newCount;
+        this.index  = 0;
+        this.offset = newBase;
+    }
+
+    /**
+     * Move the view to another element.
+     * @param newIndex index of the element
+     */
+    public void moveTo (int newIndex) {
+        if (newIndex < 0 || newIndex >= count)
+            throw new IndexOutOfBoundsException
+                ("Index " + newIndex + " out of range [0, " + count + ")");
+        this.index  = newIndex;
+        this.offset = base + newIndex * stride;
+    }
+
+    /**
+     * @return index of the current element
+     */
+    public int getIndex () {
+        return this.index;
+    }
+
+    /**
+     * @return number of elements the view is positioned over
+     */
+    public int getCount () {
+        return this.count;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Player Java Client 3 - PlayerPoint3dView.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.structures;
+
+/**
+ * Read-only view over XDR encoded points in 3D space (player_point_3d).
+ * @author agent
+ * @see PlayerPoint3d
+ */
+public class PlayerPoint3dView extends PlayerFlyweight {
+
+    /** Size of an encoded point: x, y and z as floats [bytes] */
+    public static final int SIZE = 12;
+
+    public int getSize () {
+        return SIZE;
+    }
+
+    /**
+     *
+     * @return X [m]
+     */
+    public float getPx () {
+        return buffer.getFloat (offset);
+    }
+
+    /**
+     *
+     * @return Y [m]
+     */
+    public float getPy () {
+        return buffer.getFloat (offset + 4);
+    }
+
+    /**
+     *
+     * @return Z [m]
+     */
+    public float getPz () {
+        return buffer.getFloat (offset + 8);
+    }
+
+    /**
+     * Copy the current point into a regular structure.
+     * @param p the structure to fill
+     * @return p
+     */
+    public PlayerPoint3d toPoint3d (PlayerPoint3d p) {
+        p.setPx (getPx ());
+        p.setPy (getPy ());
+        p.setPz (getPz ());
+        return p;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Player Java Client 3 - PlayerPoseView.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.structures;
+
+/**
+ * Read-only view over XDR encoded poses in the plane (player_pose2d).
+ * @author agent
+ * @see PlayerPose
+ */
+public class PlayerPoseView extends PlayerFlyweight {
+
+    /** Size of an encoded pose: x, y and yaw as doubles [bytes] */
+    public static final int SIZE = 24;
+
+    public int getSize () {
+        return SIZE;
+    }
+
+    /**
+     *
+     * @return X [m]
+     */
+    public double getPx () {
+        return buffer.getDouble (offset);
+    }
+
+    /**
+     *
+     * @return Y [m]
+     */
+    public double getPy () {
+        return buffer.getDouble (offset + 8);
+    }
+
+    /**
+     *
+     * @return yaw [rad]
+     */
+    public double getPa () {
+        return buffer.getDouble (offset + 16);
+    }
+
+    /**
+     * Copy the current pose into a regular structure.
+     * @param pp the structure to fill
+     * @return pp
+     */
+    public PlayerPose toPose (PlayerPose pp) {
+        pp.setPx (getPx ());
+        pp.setPy (getPy ());
+        pp.setPa (getPa ());
+        return pp;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Player Java Client 3 - PlayerBlobfinderBlobView.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.structures.blobfinder;
+
+import javaclient3.structures.*;
+
+/**
+ * Read-only view over XDR encoded blobs.
+ * @author agent
+ * @see PlayerBlobfinderBlob
+ */
+public class PlayerBlobfinderBlobView extends PlayerFlyweight {
+
+    /** Size of an encoded blob: 9 ints and a float [bytes] */
+    public static final int SIZE = 40;
+
+    public int getSize () {
+        return SIZE;
+    }
+
+    /**
+     * @return  Blob id.
+     */
+    public int getId () {
+        return buffer.getInt (offset);
+    }
+
+    /**
+     * @return  A descriptive color for the blob (packed 0x00RRGGBB).
+     */
+    public int getColor () {
+        return buffer.getInt (offset + 4);
+    }
+
+    /**
+     * @return  The blob area [pixels].
+     */
+    public int getArea () {
+        return buffer.getInt (offset + 8);
+    }
+
+    /**
+     * @return  The blob centroid [pixels].
+     */
+    public int getX () {
+        return buffer.getInt (offset + 12);
+    }
+
+    /**
+     * @return  The blob centroid [pixels].
+     */
+    public int getY () {
+        return buffer.getInt (offset + 16);
+    }
+
+    /**
+     * @return  Bounding box for the blob [pixels].
+     */
+    public int getLeft () {
+        return buffer.getInt (offset + 20);
+    }
+
+    /**
+     * @return  Bounding box for the blob [pixels].
+     */
+    public int getRight () {
+        return buffer.getInt (offset + 24);
+    }
+
+    /**
+     * @return  Bounding box for the blob [pixels].
+     */
+    public int getTop () {
+        return buffer.getInt (offset + 28);
+    }
+
+    /**
+     * @return  Bounding box for the blob [pixels].
+     */
+    public int getBottom () {
+        return buffer.getInt (offset + 32);
+    }
+
+    /**
+     * @return  Range to the blob center [meters]
+     */
+    public float getRange () {
+        return buffer.getFloat (offset + 36);
+    }
+
+    /**
+     * Copy the current blob into a regular structure.
+     * @return a new PlayerBlobfinderBlob holding the current blob
+     */
+    public PlayerBlobfinderBlob toBlob () {
+        PlayerBlobfinderBlob ppb = new PlayerBlobfinderBlob ();
+        ppb.setId     (getId     ());
+        ppb.setColor  (getColor  ());
+        ppb.setArea   (getArea   ());
+        ppb.setX      (getX      ());
+        ppb.setY      (getY      ());
+        ppb.setLeft   (getLeft   ());
+        ppb.setRight  (getRight  ());
+        ppb.setTop    (getTop    ());
+        ppb.setBottom (getBottom ());
+        ppb.setRange  (getRange  ());
+        return ppb;
+    }
+}
@@ -22,11 +22,18 @@
 
 package javaclient3.structures.blobfinder;
 
+import java.nio.ByteBuffer;
+
 import javaclient3.structures.*;
+import javaclient3.xdr.XdrBufferPool;
 
 /**
  * Data: detected blobs (PLAYER_BLOBFINDER_DATA_BLOBS)
  * The list of detected blobs, returned as data by blobfinder devices.
+ * <br><br>
+ * When the blobfinder interface runs in lazy decoding mode, the blobs 
+ * are kept as a raw XDR payload and can be read through a 
+ * {@link PlayerBlobfinderBlobView} without creating any objects.
  * @author Radu Bogdan Rusu
  * @version
  * <ul>
@@ -42,6 +49,17 @@ public class PlayerBlobfinderData implements PlayerConstants {
     // The list of blobs
     private PlayerBlobfinderBlob[] blobs;
 
+    // Raw XDR payload holding the undecoded blobs (lazy decoding mode)
+    private byte[]        payload;
+    // Position of the first blob inside the payload [bytes]
+    private int           payloadOffset;
+    // Number of blobs held in the payload
+    private int           payloadCount;
+    // Pool the payload buffer is released to
+    private XdrBufferPool payloadPool;
+    // Whether the payload blobs have been decoded already
+    private boolean       blobsDecoded = true;
+
 
     /**
      * @return  The image dimensions. [pixels]
@@ -77,14 +95,19 @@ public class PlayerBlobfinderData implements PlayerConstants {
      * @return  The number of blobs
      **/
     public synchronized int getBlobs_count () {
-
+        if (!blobsDecoded)
+            return this.payloadCount;
         return (this.blobs == null)?0:this.blobs.length;
     }
 
     /**
      * @return  The list of blobs
+     * @throws IllegalStateException if the payload was released before
+     * the blobs were decoded
      **/
     public synchronized PlayerBlobfinderBlob[] getBlobs () {
+        if (!blobsDecoded)
+            decodeBlobs ();
         return this.blobs;
     }
 
@@ -93,7 +116,74 @@ public class PlayerBlobfinderData implements PlayerConstants {
      *
      */
     public synchronized void setBlobs (PlayerBlobfinderBlob[] newBlobs) {
-        this.blobs = newBlobs;
+        this.blobs        = newBlobs;
+        this.blobsDecoded = true;
+    }
+
+    /**
+     * Attach the raw XDR payload holding the blobs. The blobs are only 
+     * materialized as objects on the first call to {@link #getBlobs()}; 
+     * use {@link #newBlobView()} to read them without creating objects.
+     * @param newPayload buffer holding the payload
+     * @param offset position of the first blob inside the payload [bytes]
+     * @param count number of blobs in the payload
+     * @param pool the pool the buffer is released to, may be null
+     */
+    public synchronized void setPayload (byte[] newPayload, int offset, 
+            int count, XdrBufferPool pool) {
+        release ();
+        this.payload       = newPayload;
+        this.payloadOffset = offset;
+        this.payloadCount  = count;
+        this.payloadPool   = pool;
+        this.blobs         = null;
+        this.blobsDecoded  = false;
+    }
+
+    /**
+     * Check if the structure still holds a raw payload.
+     * @return true if a payload is attached, false otherwise
+     */
+    public synchronized boolean hasPayload () {
+        return this.payload != null;
+    }
+
+    /**
+     * Create a view over the blobs held in the raw payload. The view is 
+     * positioned on the first blob and is only valid until 
+     * {@link #release()} is called.
+     * @return a new PlayerBlobfinderBlobView over the payload
+     * @throws IllegalStateException if no raw payload is attached
+     */
+    public synchronized PlayerBlobfinderBlobView newBlobView () {
+        if (payload == null)
+            throw new IllegalStateException ("No raw payload attached");
+        PlayerBlobfinderBlobView view = new PlayerBlobfinderBlobView ();
+        view.wrap (ByteBuffer.wrap (payload), payloadOffset, payloadCount);
+        return view;
     }
 
-}
\ No newline at end of file
+    /**
+     * Give the raw payload buffer back to its pool. If the blobs have not 
+     * been requested before the release they are no longer available 
+     * afterwards: {@link #getBlobs()} throws IllegalStateException, and 
+     * views created over the payload become invalid.
+     */
+    public synchronized void release () {
+        if (payload != null && payloadPool != null)
+            payloadPool.release (payload);
+        this.payload     = null;
+        this.payloadPool = null;
+    }
+
+    private void decodeBlobs () {
+        PlayerBlobfinderBlobView view = newBlobView ();
+        PlayerBlobfinderBlob[] elements = new PlayerBlobfinderBlob[view.getCount ()];
+        for (int i = 0; i < elements.length; i++) {
+            view.moveTo (i);
+            elements[i] = view.toBlob ();
+        }
+        this.blobs        = elements;
+        this.blobsDecoded = true;
+    }
+}
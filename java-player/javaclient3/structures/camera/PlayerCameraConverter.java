@@ -0,0 +1,307 @@
+/*
+ *  Player Java Client 3 - PlayerCameraConverter.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.structures.camera;
+
+import javaclient3.structures.PlayerConstants;
+
+/**
+ * Conversions between the raw camera pixel formats (MONO8, MONO16, RGB565
+ * and RGB888) and to packed ARGB pixels as used by
+ * java.awt.image.BufferedImage.TYPE_INT_ARGB.
+ * <br><br>
+ * Every conversion works on a rectangular region of the source image and
+ * can down-scale it in the same pass by keeping one pixel out of
+ * <i>step</i> in each direction. A region of w x h pixels converted with a
+ * step s produces an image of ceil(w/s) x ceil(h/s) pixels, written row by
+ * row into a caller-supplied array.
+ * <br><br>
+ * Multi-byte formats are in network byte order. Rows are processed by
+ * simple loops over primitive arrays, one loop per pixel format, which the
+ * JIT compiler turns into vector instructions where possible.
+ * @author agent
+ */
+public final class PlayerCameraConverter implements PlayerConstants {
+
+    // Row of ARGB pixels used between two formats, kept per thread and
+    // grown as needed
+    private static final ThreadLocal<int[]> rowBuffer =
+        new ThreadLocal<int[]> ();
+
+    private PlayerCameraConverter () { }
+
+    /**
+     * Get the size of a pixel in a given format.
+     * @param format the pixel format
+     * @return size of one pixel [bytes]
+     */
+    public static int getBytesPerPixel (int format) {
+        switch (format) {
+            case PLAYER_CAMERA_FORMAT_MONO8:  return 1;
+            case PLAYER_CAMERA_FORMAT_MONO16: return 2;
+            case PLAYER_CAMERA_FORMAT_RGB565: return 2;
+            case PLAYER_CAMERA_FORMAT_RGB888: return 3;
+            default:
+                throw new IllegalArgumentException
+                    ("Unsupported camera format: " + format);
+        }
+    }
+
+    /**
+     * Get the size of one dimension of a down-scaled region.
+     * @param length size of the region [pixels]
+     * @param step down-scaling factor
+     * @return size of the converted region [pixels]
+     */
+    public static int getScaledSize (int length, int step) {
+        return (length + step - 1) / step;
+    }
+
+    /**
+     * Convert a region of an image to packed ARGB pixels.
+     * @param src the source image
+     * @param srcOffset position of the image in src [bytes]
+     * @param srcWidth width of the source image [pixels]
+     * @param format format of the source image
+     * @param x left edge of the region [pixels]
+     * @param y top edge of the region [pixels]
+     * @param w width of the region [pixels]
+     * @param h height of the region [pixels]
+     * @param step down-scaling factor, 1 for none
+     * @param dst receives the converted pixels
+     * @param dstOffset position of the first pixel in dst
+     * @return number of pixels written
+     * @throws IllegalArgumentException if the region or the step is
+     * invalid, or if the region extends past the end of src
+     */
+    public static int toARGB (byte[] src, int srcOffset, int srcWidth,
+            int format, int x, int y, int w, int h, int step,
+            int[] dst, int dstOffset) {
+        int bpp    = getBytesPerPixel (format);
+        checkRegion (src, srcOffset, srcWidth, bpp, x, y, w, h, step);
+        int outW   = getScaledSize (w, step);
+        int outH   = getScaledSize (h, step);
+        int stride = srcWidth * bpp;
+        int d      = dstOffset;
+        for (int row = 0; row < outH; row++) {
+            int s = srcOffset + (y + row * step) * stride + x * bpp;
+            decodeRow (src, s, step * bpp, format, dst, d, outW);
+            d += outW;
+        }
+        return outW * outH;
+    }
+
+    /**
+     * Convert a region of an image to another pixel format.
+     * @param src the source image
+     * @param srcOffset position of the image in src [bytes]
+     * @param srcWidth width of the source image [pixels]
+     * @param srcFormat format of the source image
+     * @param x left edge of the region [pixels]
+     * @param y top edge of the region [pixels]
+     * @param w width of the region [pixels]
+     * @param h height of the region [pixels]
+     * @param step down-scaling factor, 1 for none
+     * @param dst receives the converted image
+     * @param dstOffset position of the converted image in dst [bytes]
+     * @param dstFormat format of the converted image
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the region or the step is
+     * invalid, or if the region extends past the end of src
+     */
+    public static int convert (byte[] src, int srcOffset, int srcWidth,
+            int srcFormat, int x, int y, int w, int h, int step,
+            byte[] dst, int dstOffset, int dstFormat) {
+        int srcBpp = getBytesPerPixel (srcFormat);
+        checkRegion (src, srcOffset, srcWidth, srcBpp, x, y, w, h, step);
+        int dstBpp = getBytesPerPixel (dstFormat);
+        int outW   = getScaledSize (w, step);
+        int outH   = getScaledSize (h, step);
+        int stride = srcWidth * srcBpp;
+        int rowLen = outW * dstBpp;
+        int d      = dstOffset;
+        int[] argb = (srcFormat == dstFormat) ? null : getRowBuffer (outW);
+        for (int row = 0; row < outH; row++) {
+            int s = srcOffset + (y + row * step) * stride + x * srcBpp;
+            if (argb == null)
+                copyRow (src, s, step, srcBpp, dst, d, outW);
+            else {
+                decodeRow (src, s, step * srcBpp, srcFormat, argb, 0, outW);
+                encodeRow (argb, 0, dstFormat, dst, d, outW);
+            }
+            d += rowLen;
+        }
+        return rowLen * outH;
+    }
+
+    /**
+     * Get the row buffer of the calling thread, at least n pixels long.
+     */
+    private static int[] getRowBuffer (int n) {
+        int[] row = rowBuffer.get ();
+        if (row == null || row.length < n) {
+            row = new int[n];
+            rowBuffer.set (row);
+        }
+        return row;
+    }
+
+    /**
+     * Check that a region lies within the image, and that the last pixel
+     * sampled from it is within the source array.
+     */
+    private static void checkRegion (byte[] src, int srcOffset,
+            int srcWidth, int bpp, int x, int y, int w, int h, int step) {
+        if (step < 1)
+            throw new IllegalArgumentException ("Invalid step: " + step);
+        if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > srcWidth)
+            throw new IllegalArgumentException
+                ("Invalid region " + w + "x" + h + "+" + x + "+" + y +
+                        " for an image of width " + srcWidth);
+        if (w == 0 || h == 0)
+            return;
+        long lastRow = y + (long)(getScaledSize (h, step) - 1) * step;
+        long lastCol = x + (long)(getScaledSize (w, step) - 1) * step;
+        long end     = srcOffset + (lastRow * srcWidth + lastCol + 1) * bpp;
+        if (srcOffset < 0 || end > src.length)
+            throw new IllegalArgumentException
+                ("Invalid region " + w + "x" + h + "+" + x + "+" + y +
+                        ": row " + lastRow + " is past the end of the image");
+    }
+
+    /**
+     * Copy a row of pixels keeping their format.
+     */
+    private static void copyRow (byte[] src, int s, int step, int bpp,
+            byte[] dst, int d, int n) {
+        if (step == 1) {
+            System.arraycopy (src, s, dst, d, n * bpp);
+            return;
+        }
+        int inc = step * bpp;
+        switch (bpp) {
+            case 1:
+                for (int i = 0; i < n; i++, s += inc)
+                    dst[d + i] = src[s];
+                break;
+            case 2:
+                for (int i = 0; i < n; i++, s += inc, d += 2) {
+                    dst[d]     = src[s];
+                    dst[d + 1] = src[s + 1];
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++, s += inc, d += 3) {
+                    dst[d]     = src[s];
+                    dst[d + 1] = src[s + 1];
+                    dst[d + 2] = src[s + 2];
+                }
+                break;
+        }
+    }
+
+    /**
+     * Decode a row of pixels to packed ARGB.
+     * @param inc distance between two consecutive source pixels [bytes]
+     */
+    private static void decodeRow (byte[] src, int s, int inc, int format,
+            int[] dst, int d, int n) {
+        switch (format) {
+            case PLAYER_CAMERA_FORMAT_MONO8:
+                for (int i = 0; i < n; i++, s += inc) {
+                    int v = src[s] & 0xFF;
+                    dst[d + i] = 0xFF000000 | (v << 16) | (v << 8) | v;
+                }
+                break;
+            case PLAYER_CAMERA_FORMAT_MONO16:
+                // Keep the most significant byte
+                for (int i = 0; i < n; i++, s += inc) {
+                    int v = src[s] & 0xFF;
+                    dst[d + i] = 0xFF000000 | (v << 16) | (v << 8) | v;
+                }
+                break;
+            case PLAYER_CAMERA_FORMAT_RGB565:
+                for (int i = 0; i < n; i++, s += inc) {
+                    int p = ((src[s] & 0xFF) << 8) | (src[s + 1] & 0xFF);
+                    int r = (p >> 11) & 0x1F;
+                    int g = (p >> 5)  & 0x3F;
+                    int b = p         & 0x1F;
+                    dst[d + i] = 0xFF000000 |
+                        (((r << 3) | (r >> 2)) << 16) |
+                        (((g << 2) | (g >> 4)) << 8) |
+                        ((b << 3) | (b >> 2));
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++, s += inc)
+                    dst[d + i] = 0xFF000000 |
+                        ((src[s]     & 0xFF) << 16) |
+                        ((src[s + 1] & 0xFF) << 8) |
+                        (src[s + 2]  & 0xFF);
+                break;
+        }
+    }
+
+    /**
+     * Encode a row of packed ARGB pixels. Grey levels are computed with
+     * the ITU-R BT.601 luma weights.
+     */
+    private static void encodeRow (int[] src, int s, int format,
+            byte[] dst, int d, int n) {
+        switch (format) {
+            case PLAYER_CAMERA_FORMAT_MONO8:
+                for (int i = 0; i < n; i++) {
+                    int p = src[s + i];
+                    dst[d + i] = (byte)((((p >> 16) & 0xFF) * 77 +
+                                         ((p >> 8)  & 0xFF) * 150 +
+                                         (p         & 0xFF) * 29) >> 8);
+                }
+                break;
+            case PLAYER_CAMERA_FORMAT_MONO16:
+                for (int i = 0; i < n; i++) {
+                    int p = src[s + i];
+                    int v = (((p >> 16) & 0xFF) * 77 +
+                             ((p >> 8)  & 0xFF) * 150 +
+                             (p         & 0xFF) * 29) >> 8;
+                    dst[d + 2 * i]     = (byte)v;
+                    dst[d + 2 * i + 1] = (byte)v;
+                }
+                break;
+            case PLAYER_CAMERA_FORMAT_RGB565:
+                for (int i = 0; i < n; i++) {
+                    int p = src[s + i];
+                    int v = ((p >> 8) & 0xF800) | ((p >> 5) & 0x07E0) |
+                            ((p >> 3) & 0x001F);
+                    dst[d + 2 * i]     = (byte)(v >> 8);
+                    dst[d + 2 * i + 1] = (byte)v;
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    int p = src[s + i];
+                    dst[d + 3 * i]     = (byte)(p >> 16);
+                    dst[d + 3 * i + 1] = (byte)(p >> 8);
+                    dst[d + 3 * i + 2] = (byte)p;
+                }
+                break;
+        }
+    }
+}
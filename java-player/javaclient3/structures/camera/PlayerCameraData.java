@@ -23,9 +23,19 @@
 package javaclient3.structures.camera;
 
 import javaclient3.structures.*;
+import javaclient3.xdr.XdrBufferPool;
 
 /**
  * Data: state (PLAYER_CAMERA_DATA_STATE)
+ * <br><br>
+ * When the camera interface runs in lazy decoding mode, the image is kept 
+ * inside the raw payload buffer and only copied out the first time 
+ * {@link #getImage()} is called. Call {@link #release()} once the frame is 
+ * no longer needed to give the payload buffer back to its pool.
+ * <br><br>
+ * Raw images can be converted to other pixel formats, or to packed ARGB
+ * pixels, with {@link #convert(int, byte[])} and {@link #toARGB(int[])};
+ * see {@link PlayerCameraConverter}.
  * @author Radu Bogdan Rusu
  * @version
  * <ul>
@@ -54,6 +64,15 @@ public class PlayerCameraData implements PlayerConstants {
     // to network byte ordering.
     private byte[] image;
 
+    // Raw payload holding the undecoded image (lazy decoding mode)
+    private byte[]        payload;
+    // Pool the payload buffer is released to
+    private XdrBufferPool payloadPool;
+    // Position and size of the image inside the payload [bytes]
+    private int           imageOffset;
+    private int           imageLength;
+    // Whether the image has been copied out of the payload already
+    private boolean       imageDecoded = true;
 
     /**
      * @return  Image dimensions [pixels].
@@ -149,6 +168,8 @@ public class PlayerCameraData implements PlayerConstants {
      * @return  Size of image data as stored in image buffer (bytes).
      **/
     public synchronized int getImage_count () {
+        if (!imageDecoded)
+            return this.imageLength;
         return (this.image == null)?0:this.image.length;
     }
 
@@ -156,8 +177,17 @@ public class PlayerCameraData implements PlayerConstants {
      * @return  Compressed image data (byte-aligned, row major order).
      *       Multi-byte image formats (such as MONO16) must be converted
      *       to network byte ordering.
+     * @throws IllegalStateException if the payload was released before
+     * the image was copied out of it
      */
     public synchronized byte[] getImage () {
+        if (!imageDecoded) {
+            checkPayload ();
+            byte[] img = new byte[imageLength];
+            System.arraycopy (payload, imageOffset, img, 0, imageLength);
+            this.image        = img;
+            this.imageDecoded = true;
+        }
         return this.image;
     }
 
@@ -167,6 +197,130 @@ public class PlayerCameraData implements PlayerConstants {
      *       to network byte ordering.
      */
     public synchronized void setImage (byte[] newImage) {
-        this.image = newImage;
+        this.image        = newImage;
+        this.imageDecoded = true;
     }
-}
\ No newline at end of file
+
+    /**
+     * Attach the raw payload holding the image. The image is copied out of 
+     * it on the first call to {@link #getImage()}. The scalar fields must be 
+     * set separately.
+     * @param newPayload buffer holding the payload
+     * @param offset position of the image inside the payload [bytes]
+     * @param length size of the image [bytes]
+     * @param pool the pool the buffer is released to, may be null
+     */
+    public synchronized void setPayload (byte[] newPayload, int offset, 
+            int length, XdrBufferPool pool) {
+        release ();
+        this.payload     = newPayload;
+        this.payloadPool = pool;
+        this.imageOffset = offset;
+        this.imageLength  = length;
+        this.image        = null;
+        this.imageDecoded = false;
+    }
+
+    /**
+     * Check if the frame still holds a raw payload.
+     * @return true if a payload is attached, false otherwise
+     */
+    public synchronized boolean hasPayload () {
+        return this.payload != null;
+    }
+
+    /**
+     * Give the raw payload buffer back to its pool. If the image has not 
+     * been requested before the release it is no longer available 
+     * afterwards: {@link #getImage()} and the conversions throw 
+     * IllegalStateException. Calling this method on a decoded frame has no 
+     * effect.
+     */
+    public synchronized void release () {
+        if (payload != null && payloadPool != null)
+            payloadPool.release (payload);
+        this.payload     = null;
+        this.payloadPool = null;
+    }
+
+    /**
+     * Convert the image to packed ARGB pixels.
+     * @param dst receives width x height pixels
+     * @return number of pixels written
+     */
+    public int toARGB (int[] dst) {
+        return toARGB (0, 0, getWidth (), getHeight (), 1, dst);
+    }
+
+    /**
+     * Convert a region of the image to packed ARGB pixels, down-scaling it
+     * in the same pass.
+     * @param x left edge of the region [pixels]
+     * @param y top edge of the region [pixels]
+     * @param w width of the region [pixels]
+     * @param h height of the region [pixels]
+     * @param step down-scaling factor, 1 for none
+     * @param dst receives the converted pixels
+     * @return number of pixels written
+     * @throws IllegalStateException if the image is compressed, or if the
+     * payload was released before the image was copied out of it
+     * @see PlayerCameraConverter#toARGB(byte[], int, int, int, int, int, int, int, int, int[], int)
+     */
+    public synchronized int toARGB (int x, int y, int w, int h, int step,
+            int[] dst) {
+        checkRaw ();
+        if (!imageDecoded)
+            return PlayerCameraConverter.toARGB (payload, imageOffset, width,
+                    format, x, y, w, h, step, dst, 0);
+        return PlayerCameraConverter.toARGB (image, 0, width,
+                format, x, y, w, h, step, dst, 0);
+    }
+
+    /**
+     * Convert the image to another pixel format.
+     * @param dstFormat the pixel format to convert to
+     * @param dst receives the converted image
+     * @return number of bytes written
+     */
+    public int convert (int dstFormat, byte[] dst) {
+        return convert (0, 0, getWidth (), getHeight (), 1, dstFormat, dst);
+    }
+
+    /**
+     * Convert a region of the image to another pixel format, down-scaling
+     * it in the same pass.
+     * @param x left edge of the region [pixels]
+     * @param y top edge of the region [pixels]
+     * @param w width of the region [pixels]
+     * @param h height of the region [pixels]
+     * @param step down-scaling factor, 1 for none
+     * @param dstFormat the pixel format to convert to
+     * @param dst receives the converted image
+     * @return number of bytes written
+     * @throws IllegalStateException if the image is compressed, or if the
+     * payload was released before the image was copied out of it
+     * @see PlayerCameraConverter#convert(byte[], int, int, int, int, int, int, int, int, byte[], int, int)
+     */
+    public synchronized int convert (int x, int y, int w, int h, int step,
+            int dstFormat, byte[] dst) {
+        checkRaw ();
+        if (!imageDecoded)
+            return PlayerCameraConverter.convert (payload, imageOffset, width,
+                    format, x, y, w, h, step, dst, 0, dstFormat);
+        return PlayerCameraConverter.convert (image, 0, width,
+                format, x, y, w, h, step, dst, 0, dstFormat);
+    }
+
+    private void checkRaw () {
+        if (compression != PLAYER_CAMERA_COMPRESS_RAW)
+            throw new IllegalStateException
+                ("Cannot convert a compressed image");
+        if (!imageDecoded)
+            checkPayload ();
+    }
+
+    private void checkPayload () {
+        if (payload == null)
+            throw new IllegalStateException ("Payload already released");
+    }
+}
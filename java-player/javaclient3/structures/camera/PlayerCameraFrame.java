@@ -0,0 +1,299 @@
+/*
+ *  Player Java Client 3 - PlayerCameraFrame.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.structures.camera;
+
+import java.nio.ByteBuffer;
+
+import javaclient3.structures.PlayerConstants;
+
+/**
+ * A camera frame held in a pooled, reference-counted buffer.
+ * <br><br>
+ * A frame is handed out with one reference. Every consumer sharing the
+ * frame takes its own reference with {@link #retain()} and gives it back
+ * with {@link #release()}; when the last reference is released the buffer
+ * returns to its {@link PlayerCameraFramePool} and is reused for a later
+ * frame. A frame must not be accessed after its holder released it.
+ * <br><br>
+ * The image is available without copying through
+ * {@link #getImageBuffer()}.
+ * @author agent
+ * @see PlayerCameraData
+ */
+public class PlayerCameraFrame implements PlayerConstants {
+
+    // Pool the frame returns to, may be null
+    private final PlayerCameraFramePool pool;
+    // Buffer holding the image
+    private final ByteBuffer            buffer;
+    // Number of holders of the frame
+    private int refCount;
+
+    // Image dimensions [pixels].
+    private int    width;
+    private int    height;
+    // Image bits-per-pixel (8, 16, 24, 32).
+    private int    bpp;
+    // Image format (must be compatible with depth).
+    private int    format;
+    // Scale divisor of the pixel values.
+    private int    fdiv;
+    // Image compression.
+    private int    compression;
+    // Size of the image stored in the buffer [bytes].
+    private int    imageCount;
+    // Time the frame was received [s].
+    private double timestamp;
+
+    /**
+     * Create a frame holding one reference.
+     * @param newPool the pool the frame returns to, may be null
+     * @param capacity size of the image buffer [bytes]
+     * @param direct true to allocate the buffer outside the Java heap
+     */
+    public PlayerCameraFrame (PlayerCameraFramePool newPool, int capacity,
+            boolean direct) {
+        this.pool   = newPool;
+        this.buffer = direct ? ByteBuffer.allocateDirect (capacity)
+                             : ByteBuffer.allocate (capacity);
+        this.refCount = 1;
+    }
+
+    /**
+     * Create a frame holding one reference over an existing image, without
+     * copying it. The frame does not belong to any pool.
+     * @param image the image
+     * @param length size of the image [bytes]
+     */
+    public PlayerCameraFrame (byte[] image, int length) {
+        this.pool       = null;
+        this.buffer     = ByteBuffer.wrap (image);
+        this.refCount   = 1;
+        this.imageCount = length;
+    }
+
+    /**
+     * Take the first reference on a frame coming out of the pool.
+     */
+    synchronized void reset () {
+        this.refCount   = 1;
+        this.imageCount = 0;
+    }
+
+    /**
+     * Take an additional reference on the frame.
+     * @return this frame
+     */
+    public synchronized PlayerCameraFrame retain () {
+        if (refCount <= 0)
+            throw new IllegalStateException ("Frame already released");
+        refCount++;
+        return this;
+    }
+
+    /**
+     * Give back a reference on the frame. The frame returns to its pool
+     * once all references are released.
+     */
+    public void release () {
+        synchronized (this) {
+            if (refCount <= 0)
+                throw new IllegalStateException ("Frame already released");
+            if (--refCount > 0)
+                return;
+        }
+        if (pool != null)
+            pool.recycle (this);
+    }
+
+    /**
+     * @return number of references held on the frame
+     */
+    public synchronized int getRefCount () {
+        return this.refCount;
+    }
+
+    /**
+     * Get a read-only view of the image, positioned at its first byte and
+     * limited to its size. The view shares the frame buffer and is only
+     * valid until the frame is released.
+     * @return the image
+     */
+    public ByteBuffer getImageBuffer () {
+        ByteBuffer view = buffer.asReadOnlyBuffer ();
+        view.limit (imageCount);
+        return view;
+    }
+
+    /**
+     * Get the writable buffer backing the frame, whose capacity may exceed
+     * the image size. Meant for the code filling the frame.
+     * @return the frame buffer
+     */
+    public ByteBuffer getBuffer () {
+        return this.buffer;
+    }
+
+    /**
+     * Copy the image into an array.
+     * @param dst the destination array
+     * @param offset position of the image in the array
+     */
+    public void getImage (byte[] dst, int offset) {
+        if (buffer.hasArray ())
+            System.arraycopy (buffer.array (), buffer.arrayOffset (),
+                    dst, offset, imageCount);
+        else
+            getImageBuffer ().get (dst, offset, imageCount);
+    }
+
+    /**
+     * @return size of the image buffer [bytes]
+     */
+    public int getCapacity () {
+        return buffer.capacity ();
+    }
+
+    /**
+     * @return true if the buffer is allocated outside the Java heap
+     */
+    public boolean isDirect () {
+        return buffer.isDirect ();
+    }
+
+    /**
+     * @return  Image dimensions [pixels].
+     **/
+    public synchronized int getWidth () {
+        return this.width;
+    }
+
+    /**
+     * @param newWidth  Image dimensions [pixels].
+     */
+    public synchronized void setWidth (int newWidth) {
+        this.width = newWidth;
+    }
+
+    /**
+     * @return  Image dimensions [pixels].
+     **/
+    public synchronized int getHeight () {
+        return this.height;
+    }
+
+    /**
+     * @param newHeight  Image dimensions [pixels].
+     */
+    public synchronized void setHeight (int newHeight) {
+        this.height = newHeight;
+    }
+
+    /**
+     * @return  Image bits-per-pixel (8, 16, 24, 32).
+     **/
+    public synchronized int getBpp () {
+        return this.bpp;
+    }
+
+    /**
+     * @param newBpp  Image bits-per-pixel (8, 16, 24, 32).
+     */
+    public synchronized void setBpp (int newBpp) {
+        this.bpp = newBpp;
+    }
+
+    /**
+     * @return  Image format (must be compatible with depth).
+     **/
+    public synchronized int getFormat () {
+        return this.format;
+    }
+
+    /**
+     * @param newFormat  Image format (must be compatible with depth).
+     */
+    public synchronized void setFormat (int newFormat) {
+        this.format = newFormat;
+    }
+
+    /**
+     * @return  Scale divisor of the pixel values.
+     **/
+    public synchronized int getFdiv () {
+        return this.fdiv;
+    }
+
+    /**
+     * @param newFdiv  Scale divisor of the pixel values.
+     */
+    public synchronized void setFdiv (int newFdiv) {
+        this.fdiv = newFdiv;
+    }
+
+    /**
+     * @return  Image compression; PLAYER_CAMERA_COMPRESS_RAW indicates no
+     *       compression.
+     */
+    public synchronized int getCompression () {
+        return this.compression;
+    }
+
+    /**
+     * @param newCompression  Image compression.
+     */
+    public synchronized void setCompression (int newCompression) {
+        this.compression = newCompression;
+    }
+
+    /**
+     * @return  Size of the image stored in the buffer [bytes].
+     **/
+    public synchronized int getImage_count () {
+        return this.imageCount;
+    }
+
+    /**
+     * @param newImageCount  Size of the image stored in the buffer [bytes].
+     */
+    public synchronized void setImage_count (int newImageCount) {
+        if (newImageCount > buffer.capacity ())
+            throw new IllegalArgumentException
+                ("Image of " + newImageCount + " bytes exceeds capacity " +
+                        buffer.capacity ());
+        this.imageCount = newImageCount;
+    }
+
+    /**
+     * @return  Time the frame was received [s].
+     **/
+    public synchronized double getTimestamp () {
+        return this.timestamp;
+    }
+
+    /**
+     * @param newTimestamp  Time the frame was received [s].
+     */
+    public synchronized void setTimestamp (double newTimestamp) {
+        this.timestamp = newTimestamp;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  Player Java Client 3 - PlayerCameraFramePool.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.structures.camera;
+
+/**
+ * Pool of camera frame buffers. Frames are taken with
+ * {@link #acquire(int)} and come back automatically once all their
+ * references are released, so that a steady stream of frames of the same
+ * size reuses a handful of buffers instead of allocating one per frame.
+ * <br><br>
+ * Buffers are allocated either on the Java heap or, for consumers handing
+ * images to native code, as direct buffers.
+ * @author agent
+ * @see PlayerCameraFrame
+ */
+public class PlayerCameraFramePool {
+
+    // Allocate direct buffers
+    private final boolean direct;
+    // Idle frames ready for reuse
+    private final PlayerCameraFrame[] free;
+    private int freeCount;
+
+    /**
+     * Create a pool of heap buffers keeping up to 4 idle frames.
+     */
+    public PlayerCameraFramePool () {
+        this (false, 4);
+    }
+
+    /**
+     * Create a pool.
+     * @param useDirect true to allocate direct buffers, false for heap buffers
+     * @param maxIdle maximum number of idle frames kept for reuse
+     */
+    public PlayerCameraFramePool (boolean useDirect, int maxIdle) {
+        this.direct = useDirect;
+        this.free   = new PlayerCameraFrame[maxIdle];
+    }
+
+    /**
+     * Take a frame able to hold an image of a given size. The frame is
+     * returned with one reference held by the caller.
+     * @param capacity minimum size of the image buffer [bytes]
+     * @return a frame
+     */
+    public PlayerCameraFrame acquire (int capacity) {
+        PlayerCameraFrame frame = null;
+        synchronized (this) {
+            for (int i = freeCount - 1; i >= 0; i--) {
+                if (free[i].getCapacity () >= capacity) {
+                    frame = free[i];
+                    free[i] = free[--freeCount];
+                    free[freeCount] = null;
+                    break;
+                }
+            }
+            // Idle frames are too small: drop one to make room
+            if (frame == null && freeCount == free.length && freeCount > 0)
+                free[--freeCount] = null;
+        }
+        if (frame == null)
+            return new PlayerCameraFrame (this, capacity, direct);
+        frame.reset ();
+        return frame;
+    }
+
+    /**
+     * Take back a frame whose last reference was released.
+     * @param frame the frame
+     */
+    synchronized void recycle (PlayerCameraFrame frame) {
+        if (freeCount < free.length)
+            free[freeCount++] = frame;
+    }
+
+    /**
+     * @return true if the pool allocates direct buffers
+     */
+    public boolean isDirect () {
+        return this.direct;
+    }
+
+    /**
+     * @return number of idle frames
+     */
+    public synchronized int getFreeCount () {
+        return this.freeCount;
+    }
+
+    /**
+     * Drop all idle frames.
+     */
+    public synchronized void clear () {
+        for (int i = 0; i < freeCount; i++)
+            free[i] = null;
+        freeCount = 0;
+    }
+}
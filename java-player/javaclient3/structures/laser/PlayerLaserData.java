@@ -22,11 +22,19 @@
 
 package javaclient3.structures.laser;
 
+import java.nio.ByteBuffer;
+
 import javaclient3.structures.*;
+import javaclient3.xdr.XdrBufferPool;
 
 /**
  * Data: scan (PLAYER_LASER_DATA_SCAN)
  * The basic laser data packet.  
+ * <br><br>
+ * When the laser interface runs in lazy decoding mode, the range and 
+ * intensity readings are kept as a raw XDR payload and only decoded the 
+ * first time they are requested. Call {@link #release()} once the scan is 
+ * no longer needed to give the payload buffer back to its pool.
  * @author Radu Bogdan Rusu
  * @version
  * <ul>
@@ -46,16 +54,30 @@ public class PlayerLaserData implements PlayerConstants {
     // Number of range readings.  
     private int ranges_count;
     // Range readings [m]. 
-    private float[] ranges = new float[PLAYER_LASER_MAX_SAMPLES];
+    private float[] ranges = new float[0];
     // Number of intensity readings 
     private int intensity_count;
     // Intensity readings. 
-    private byte[] intensity = new byte[PLAYER_LASER_MAX_SAMPLES];
+    private byte[] intensity = new byte[0];
     // A unique, increasing, ID for the scan 
     private int id;
 
     // X,Y cartesian position of scanned data [m] (not in player_laser_data)
-    private PlayerPoint2d points[] = new PlayerPoint2d[PLAYER_LASER_MAX_SAMPLES];
+    private PlayerPoint2d points[] = new PlayerPoint2d[0];
+
+    // X,Y cartesian position of scanned data as parallel arrays [m]
+    private float[] pointsX;
+    private float[] pointsY;
+
+    // Raw XDR payload holding the undecoded fields (lazy decoding mode)
+    private byte[]        payload;
+    // Pool the payload buffer is released to
+    private XdrBufferPool payloadPool;
+    // Which of the payload fields have been decoded already
+    private boolean       rangesDecoded    = true;
+    private boolean       intensityDecoded = true;
+    private boolean       pointsDecoded    = true;
+    private boolean       pointsXYDecoded  = false;
 
     /**
      * @return  Start and end angles for the laser scan [rad].  
@@ -134,8 +156,12 @@ public class PlayerLaserData implements PlayerConstants {
     
     /**
      * @return  Range readings [m]. 
+     * @throws IllegalStateException if the payload was released before
+     * the ranges were decoded
      **/
     public synchronized float[] getRanges () {
+        if (!rangesDecoded)
+            decodeRanges ();
         return this.ranges;
     }
 
@@ -145,6 +171,8 @@ public class PlayerLaserData implements PlayerConstants {
      */
     public synchronized void setRanges (float[] newRanges) {
         this.ranges = newRanges;
+        this.rangesDecoded   = true;
+        this.pointsXYDecoded = false;
     }
     
     /**
@@ -164,8 +192,12 @@ public class PlayerLaserData implements PlayerConstants {
     
     /**
      * @return  Intensity readings. 
+     * @throws IllegalStateException if the payload was released before
+     * the intensities were decoded
      **/
     public synchronized byte[] getIntensity () {
+        if (!intensityDecoded)
+            decodeIntensity ();
         return this.intensity;
     }
 
@@ -175,6 +207,7 @@ public class PlayerLaserData implements PlayerConstants {
      */
     public synchronized void setIntensity (byte[] newIntensity) {
         this.intensity = newIntensity;
+        this.intensityDecoded = true;
     }
     
     /**
@@ -196,6 +229,8 @@ public class PlayerLaserData implements PlayerConstants {
      * @return X,Y cartesian position of scanned data [m]
      **/
     public synchronized PlayerPoint2d[] getPoints () {
+        if (!pointsDecoded)
+            decodePoints ();
         return this.points;
     }
 
@@ -205,5 +240,137 @@ public class PlayerLaserData implements PlayerConstants {
      */
     public synchronized void setPoints (PlayerPoint2d[] newPoints) {
         this.points = newPoints;
+        this.pointsDecoded = true;
+    }
+
+    /**
+     * The X coordinates of the scanned points. The array may be longer 
+     * than the number of readings; only the first getRanges_count () 
+     * values are valid.
+     * @return X cartesian position of scanned data [m]
+     **/
+    public synchronized float[] getPointsX () {
+        if (!pointsXYDecoded)
+            decodePointsXY ();
+        return this.pointsX;
+    }
+
+    /**
+     * The Y coordinates of the scanned points. The array may be longer 
+     * than the number of readings; only the first getRanges_count () 
+     * values are valid.
+     * @return Y cartesian position of scanned data [m]
+     **/
+    public synchronized float[] getPointsY () {
+        if (!pointsXYDecoded)
+            decodePointsXY ();
+        return this.pointsY;
+    }
+
+    /**
+     * Set the cartesian position of the scanned data as parallel arrays. 
+     * The PlayerPoint2d array returned by getPoints () is rebuilt from 
+     * them on the next call.
+     * @param newPointsX X cartesian position of scanned data [m]
+     * @param newPointsY Y cartesian position of scanned data [m]
+     */
+    public synchronized void setPointsXY (float[] newPointsX, 
+            float[] newPointsY) {
+        this.pointsX         = newPointsX;
+        this.pointsY         = newPointsY;
+        this.pointsXYDecoded = true;
+        this.pointsDecoded   = false;
+    }
+
+    /**
+     * Attach the raw XDR payload of a PLAYER_LASER_DATA_SCAN message. The 
+     * ranges, intensities and cartesian points are decoded from it on first 
+     * access. The scalar fields (angles, counts, id) must be set separately.
+     * @param newPayload buffer holding the payload, starting at offset 0
+     * @param pool the pool the buffer is released to, may be null
+     */
+    public synchronized void setPayload (byte[] newPayload, XdrBufferPool pool) {
+        release ();
+        this.payload          = newPayload;
+        this.payloadPool      = pool;
+        this.rangesDecoded    = false;
+        this.intensityDecoded = false;
+        this.pointsDecoded    = false;
+        this.pointsXYDecoded  = false;
+    }
+
+    /**
+     * Check if the scan still holds an undecoded raw payload.
+     * @return true if a payload is attached, false otherwise
+     */
+    public synchronized boolean hasPayload () {
+        return this.payload != null;
+    }
+
+    /**
+     * Give the raw payload buffer back to its pool. Fields that have not 
+     * been decoded before the release are no longer available afterwards:
+     * their accessors throw IllegalStateException. Calling this method on
+     * a fully decoded scan has no effect.
+     */
+    public synchronized void release () {
+        if (payload != null && payloadPool != null)
+            payloadPool.release (payload);
+        this.payload     = null;
+        this.payloadPool = null;
+    }
+
+    // Offset of the ranges inside the payload [bytes]: 4 floats, 
+    // ranges_count and the XDR array length
+    private static final int RANGES_OFFSET = 24;
+
+    private void checkPayload () {
+        if (payload == null)
+            throw new IllegalStateException ("Payload already released");
+    }
+
+    private void decodeRanges () {
+        checkPayload ();
+        ByteBuffer bb = ByteBuffer.wrap (payload);
+        float[] r = new float[ranges_count];
+        for (int i = 0; i < ranges_count; i++)
+            r[i] = bb.getFloat (RANGES_OFFSET + 4 * i);
+        this.ranges        = r;
+        this.rangesDecoded = true;
+    }
+
+    private void decodeIntensity () {
+        checkPayload ();
+        // intensity_count and the XDR opaque length follow the ranges
+        int offset = RANGES_OFFSET + 4 * ranges_count + 8;
+        byte[] in = new byte[intensity_count];
+        System.arraycopy (payload, offset, in, 0, intensity_count);
+        this.intensity        = in;
+        this.intensityDecoded = true;
+    }
+
+    private void decodePointsXY () {
+        float[] r = getRanges ();
+        if (pointsX == null || pointsX.length < ranges_count) {
+            pointsX = new float[ranges_count];
+            pointsY = new float[ranges_count];
+        }
+        PlayerLaserTrigTable.get (min_angle, resolution, ranges_count)
+            .project (r, ranges_count, pointsX, pointsY);
+        this.pointsXYDecoded = true;
+    }
+
+    private void decodePoints () {
+        float[] x = getPointsX ();
+        float[] y = getPointsY ();
+        PlayerPoint2d[] p = new PlayerPoint2d[ranges_count];
+        for (int i = 0; i < ranges_count; i++) {
+            PlayerPoint2d pp2d = new PlayerPoint2d ();
+            pp2d.setPx (x[i]);
+            pp2d.setPy (y[i]);
+            p[i] = pp2d;
+        }
+        this.points        = p;
+        this.pointsDecoded = true;
     }
-}
\ No newline at end of file
+}
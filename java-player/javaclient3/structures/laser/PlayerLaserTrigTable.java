@@ -0,0 +1,154 @@
+/*
+ *  Player Java Client 3 - PlayerLaserTrigTable.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+
+package javaclient3.structures.laser;
+
+/**
+ * Precomputed cosine and sine of every beam angle for one laser scan
+ * configuration (start angle, angular resolution and number of beams).
+ * Tables are immutable and shared: use {@link #get(float, float, int)} to
+ * obtain the table for a configuration, which is only computed the first
+ * time that configuration is seen.
+ * @author agent
+ */
+public final class PlayerLaserTrigTable {
+
+    // Number of configurations kept in the shared cache
+    private static final int CACHE_SIZE = 8;
+
+    private static final PlayerLaserTrigTable[] cache =
+        new PlayerLaserTrigTable[CACHE_SIZE];
+    private static int cacheNext = 0;
+
+    // Start angle of the scan [rad]
+    private final float   minAngle;
+    // Angular resolution [rad]
+    private final float   resolution;
+    // Number of beams
+    private final int     count;
+    // Cosine and sine of each beam angle
+    private final float[] cos;
+    private final float[] sin;
+
+    private PlayerLaserTrigTable (float minAngle, float resolution, int count) {
+        this.minAngle   = minAngle;
+        this.resolution = resolution;
+        this.count      = count;
+        this.cos        = new float[count];
+        this.sin        = new float[count];
+        for (int i = 0; i < count; i++) {
+            double angle = minAngle + (double)i * resolution;
+            cos[i] = (float)Math.cos (angle);
+            sin[i] = (float)Math.sin (angle);
+        }
+    }
+
+    /**
+     * Get the table for a scan configuration, computing it if it is not in
+     * the shared cache.
+     * @param minAngle start angle of the scan [rad]
+     * @param resolution angular resolution [rad]
+     * @param count number of beams
+     * @return the trigonometric table for the configuration
+     */
+    public static PlayerLaserTrigTable get (float minAngle, float resolution,
+            int count) {
+        synchronized (cache) {
+            for (int i = 0; i < CACHE_SIZE; i++)
+                if (cache[i] != null &&
+                        cache[i].matches (minAngle, resolution, count))
+                    return cache[i];
+            PlayerLaserTrigTable table =
+                new PlayerLaserTrigTable (minAngle, resolution, count);
+            cache[cacheNext] = table;
+            cacheNext = (cacheNext + 1) % CACHE_SIZE;
+            return table;
+        }
+    }
+
+    /**
+     * Check if the table was computed for a scan configuration.
+     * @param newMinAngle start angle of the scan [rad]
+     * @param newResolution angular resolution [rad]
+     * @param newCount number of beams
+     * @return true if the table can be used for the configuration
+     */
+    public boolean matches (float newMinAngle, float newResolution,
+            int newCount) {
+        return count == newCount &&
+            Float.floatToIntBits (minAngle)   == Float.floatToIntBits (newMinAngle) &&
+            Float.floatToIntBits (resolution) == Float.floatToIntBits (newResolution);
+    }
+
+    /**
+     * Convert ranges to cartesian coordinates in the laser frame.
+     * @param ranges range readings [m]
+     * @param n number of readings to convert, at most the table size
+     * @param x receives the X coordinates [m]
+     * @param y receives the Y coordinates [m]
+     */
+    public void project (float[] ranges, int n, float[] x, float[] y) {
+        if (n > count)
+            throw new IllegalArgumentException
+                ("Table holds " + count + " beams, " + n + " requested");
+        for (int i = 0; i < n; i++) {
+            float r = ranges[i];
+            x[i] = r * cos[i];
+            y[i] = r * sin[i];
+        }
+    }
+
+    /**
+     * @return start angle of the scan [rad]
+     */
+    public float getMinAngle () {
+        return this.minAngle;
+    }
+
+    /**
+     * @return angular resolution [rad]
+     */
+    public float getResolution () {
+        return this.resolution;
+    }
+
+    /**
+     * @return number of beams
+     */
+    public int getCount () {
+        return this.count;
+    }
+
+    /**
+     * @return cosine of each beam angle; must not be modified
+     */
+    public float[] getCos () {
+        return this.cos;
+    }
+
+    /**
+     * @return sine of each beam angle; must not be modified
+     */
+    public float[] getSin () {
+        return this.sin;
+    }
+}
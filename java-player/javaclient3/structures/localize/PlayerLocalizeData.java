@@ -43,7 +43,7 @@ public class PlayerLocalizeData implements PlayerConstants {
     // The number of pose hypotheses. 
     private int hypoths_count;
     // The array of the hypotheses. 
-    private PlayerLocalizeHypoth[] hypoths = new PlayerLocalizeHypoth[PLAYER_LOCALIZE_MAX_HYPOTHS];
+    private PlayerLocalizeHypoth[] hypoths = new PlayerLocalizeHypoth[0];
 
 
     /**
@@ -22,13 +22,26 @@
 
 package javaclient3.structures.localize;
 
+import java.nio.ByteBuffer;
+
 import javaclient3.structures.*;
+import javaclient3.xdr.XdrBufferPool;
 
 /**
  * Request/reply: Get particles.
  * To get (usually a subset of) the current particle set (assuming
  * the underlying driver uses a particle filter), send a null
  * PLAYER_LOCALIZE_REQ_GET_PARTICLES request. 
+ * <br><br>
+ * When the localize interface runs in lazy decoding mode, the particles 
+ * are kept as a raw XDR payload and can be read through a 
+ * {@link PlayerLocalizeParticleView} without creating any objects.
+ * <br><br>
+ * Particles are otherwise decoded in bulk into a structure of arrays:
+ * {@link #getX()}, {@link #getY()} and {@link #getA()} hold the poses and
+ * {@link #getAlpha()} the weights. The PlayerLocalizeParticle array
+ * returned by {@link #getParticles()} is only built from them when first
+ * requested.
  * @author Radu Bogdan Rusu
  * @version
  * <ul>
@@ -44,7 +57,23 @@ public class PlayerLocalizeGetParticles implements PlayerConstants {
     // The number of particles included 
     private int particles_count;
     // The particles 
-    private PlayerLocalizeParticle[] particles = new PlayerLocalizeParticle[PLAYER_LOCALIZE_PARTICLES_MAX];
+    private PlayerLocalizeParticle[] particles = new PlayerLocalizeParticle[0];
+
+    // Poses of the particles [m, m, rad]
+    private double[]      x;
+    private double[]      y;
+    private double[]      a;
+    // Weights of the particles
+    private double[]      alpha;
+
+    // Raw XDR payload holding the undecoded particles (lazy decoding mode)
+    private byte[]        payload;
+    // Position of the first element inside the payload [bytes]
+    private int           payloadOffset;
+    // Pool the payload buffer is released to
+    private XdrBufferPool payloadPool;
+    // Whether the particles came from a raw payload
+    private boolean       fromPayload;
 
 
     /**
@@ -91,8 +120,14 @@ public class PlayerLocalizeGetParticles implements PlayerConstants {
     }
     /**
      * @return  The particles 
+     * @throws IllegalStateException if the payload was released before
+     * the particles were decoded
      **/
     public synchronized PlayerLocalizeParticle[] getParticles () {
+        if (particles == null && x != null)
+            buildParticles ();
+        else if (particles == null && fromPayload)
+            decodeParticles ();
         return this.particles;
     }
 
@@ -101,7 +136,199 @@ public class PlayerLocalizeGetParticles implements PlayerConstants {
      *
      */
     public synchronized void setParticles (PlayerLocalizeParticle[] newParticles) {
-        this.particles = newParticles;
+        this.particles   = newParticles;
+        this.fromPayload = false;
+        this.x           = null;
+        this.y           = null;
+        this.a           = null;
+        this.alpha       = null;
+    }
+
+    /**
+     * Get X of the particles. The array may be longer than needed; use
+     * getParticles_count () to bound it.
+     * @return X of the particles [m], or null if the particles were set
+     * as objects
+     * @throws IllegalStateException if the payload was released before
+     * the arrays were decoded
+     */
+    public synchronized double[] getX () {
+        if (x == null && fromPayload)
+            decodeArrays ();
+        return this.x;
+    }
+
+    /**
+     * Get Y of the particles.
+     * @return Y of the particles [m], or null if the particles were set
+     * as objects
+     * @throws IllegalStateException if the payload was released before
+     * the arrays were decoded
+     * @see #getX()
+     */
+    public synchronized double[] getY () {
+        if (y == null && fromPayload)
+            decodeArrays ();
+        return this.y;
+    }
+
+    /**
+     * Get the yaw of the particles.
+     * @return yaw of the particles [rad], or null if the particles were
+     * set as objects
+     * @throws IllegalStateException if the payload was released before
+     * the arrays were decoded
+     * @see #getX()
+     */
+    public synchronized double[] getA () {
+        if (a == null && fromPayload)
+            decodeArrays ();
+        return this.a;
+    }
+
+    /**
+     * Get the weights of the particles.
+     * @return the weights, or null if the particles were set as objects
+     * @throws IllegalStateException if the payload was released before
+     * the arrays were decoded
+     * @see #getX()
+     */
+    public synchronized double[] getAlpha () {
+        if (alpha == null && fromPayload)
+            decodeArrays ();
+        return this.alpha;
+    }
+
+    /**
+     * Set the particles as a structure of arrays. The particle array is
+     * built from them on the first call to {@link #getParticles()}.
+     * @param newX X of the particles [m]
+     * @param newY Y of the particles [m]
+     * @param newA yaw of the particles [rad]
+     * @param newAlpha weights of the particles
+     */
+    public synchronized void setArrays (double[] newX, double[] newY,
+            double[] newA, double[] newAlpha) {
+        this.x           = newX;
+        this.y           = newY;
+        this.a           = newA;
+        this.alpha       = newAlpha;
+        this.particles   = null;
+        this.fromPayload = false;
+    }
+
+    /**
+     * Decode XDR encoded particles into a structure of arrays.
+     * @param buffer buffer holding the encoded particles
+     * @param offset position of the first particle [bytes]
+     * @param count number of particles
+     * @param newX receives X of the particles, at least count long
+     * @param newY receives Y of the particles, at least count long
+     * @param newA receives the yaw of the particles, at least count long
+     * @param newAlpha receives the weights, at least count long
+     */
+    public static void decode (ByteBuffer buffer, int offset, int count,
+            double[] newX, double[] newY, double[] newA, double[] newAlpha) {
+        int o = offset;
+        for (int i = 0; i < count; i++, o += PlayerLocalizeParticleView.SIZE) {
+            newX[i]     = buffer.getDouble (o);
+            newY[i]     = buffer.getDouble (o + 8);
+            newA[i]     = buffer.getDouble (o + 16);
+            newAlpha[i] = buffer.getDouble (o + 24);
+        }
+    }
+
+    /**
+     * Attach the raw XDR payload holding the particles. The particles are only 
+     * materialized as objects on the first call to {@link #getParticles()}; 
+     * use {@link #newParticleView()} to read them without creating objects.
+     * @param newPayload buffer holding the payload
+     * @param offset position of the first element inside the payload [bytes]
+     * @param pool the pool the buffer is released to, may be null
+     */
+    public synchronized void setPayload (byte[] newPayload, int offset, 
+            XdrBufferPool pool) {
+        release ();
+        this.payload       = newPayload;
+        this.payloadOffset = offset;
+        this.payloadPool   = pool;
+        this.fromPayload   = true;
+        this.particles     = null;
+        this.x             = null;
+        this.y             = null;
+        this.a             = null;
+        this.alpha         = null;
+    }
+
+    /**
+     * Check if the structure still holds a raw payload.
+     * @return true if a payload is attached, false otherwise
+     */
+    public synchronized boolean hasPayload () {
+        return this.payload != null;
+    }
+
+    /**
+     * Create a view over the particles held in the raw payload. The view is 
+     * positioned on the first element and is only valid until 
+     * {@link #release()} is called.
+     * @return a new PlayerLocalizeParticleView over the payload
+     * @throws IllegalStateException if no raw payload is attached
+     */
+    public synchronized PlayerLocalizeParticleView newParticleView () {
+        if (payload == null)
+            throw new IllegalStateException ("No raw payload attached");
+        PlayerLocalizeParticleView view = new PlayerLocalizeParticleView ();
+        view.wrap (ByteBuffer.wrap (payload), payloadOffset, particles_count);
+        return view;
+    }
+
+    /**
+     * Give the raw payload buffer back to its pool. If the particles have not 
+     * been requested before the release they are no longer available 
+     * afterwards: their accessors throw IllegalStateException, and views 
+     * created over the payload become invalid.
+     */
+    public synchronized void release () {
+        if (payload != null && payloadPool != null)
+            payloadPool.release (payload);
+        this.payload     = null;
+        this.payloadPool = null;
+    }
+
+    private void decodeParticles () {
+        PlayerLocalizeParticleView view = newParticleView ();
+        PlayerLocalizeParticle[] elements = new PlayerLocalizeParticle[view.getCount ()];
+        for (int i = 0; i < elements.length; i++) {
+            view.moveTo (i);
+            elements[i] = view.toParticle ();
+        }
+        this.particles = elements;
     }
 
-}
\ No newline at end of file
+    private void decodeArrays () {
+        if (payload == null)
+            throw new IllegalStateException ("Payload already released");
+        double[] newX     = new double[particles_count];
+        double[] newY     = new double[particles_count];
+        double[] newA     = new double[particles_count];
+        double[] newAlpha = new double[particles_count];
+        decode (ByteBuffer.wrap (payload), payloadOffset, particles_count,
+                newX, newY, newA, newAlpha);
+        this.x     = newX;
+        this.y     = newY;
+        this.a     = newA;
+        this.alpha = newAlpha;
+    }
+
+    private void buildParticles () {
+        PlayerLocalizeParticle[] elements = new PlayerLocalizeParticle[particles_count];
+        for (int i = 0; i < particles_count; i++) {
+            PlayerLocalizeParticle plp = new PlayerLocalizeParticle ();
+            plp.setPose  (new PlayerPose (x[i], y[i], a[i]));
+            plp.setAlpha (alpha[i]);
+            elements[i] = plp;
+        }
+        this.particles = elements;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Player Java Client 3 - PlayerLocalizeParticleView.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.structures.localize;
+
+import javaclient3.structures.*;
+
+/**
+ * Read-only view over XDR encoded localization particles: a pose followed 
+ * by its weight.
+ * @author agent
+ * @see PlayerLocalizeParticle
+ */
+public class PlayerLocalizeParticleView extends PlayerFlyweight {
+
+    /** Size of an encoded particle: pose and alpha as doubles [bytes] */
+    public static final int SIZE = PlayerPoseView.SIZE + 8;
+
+    public int getSize () {
+        return SIZE;
+    }
+
+    /**
+     * @return X of the particle pose [m]
+     */
+    public double getPx () {
+        return buffer.getDouble (offset);
+    }
+
+    /**
+     * @return Y of the particle pose [m]
+     */
+    public double getPy () {
+        return buffer.getDouble (offset + 8);
+    }
+
+    /**
+     * @return yaw of the particle pose [rad]
+     */
+    public double getPa () {
+        return buffer.getDouble (offset + 16);
+    }
+
+    /**
+     * @return The weight coefficient for linear combination (alpha)
+     */
+    public double getAlpha () {
+        return buffer.getDouble (offset + 24);
+    }
+
+    /**
+     * Position a pose view over the poses of the same particles as this 
+     * view.
+     * @param view the pose view to position
+     * @return view
+     */
+    public PlayerPoseView poseView (PlayerPoseView view) {
+        view.wrap (buffer, base, stride, count);
+        view.moveTo (index);
+        return view;
+    }
+
+    /**
+     * Copy the current particle into a regular structure.
+     * @return a new PlayerLocalizeParticle holding the current particle
+     */
+    public PlayerLocalizeParticle toParticle () {
+        PlayerLocalizeParticle plp = new PlayerLocalizeParticle ();
+        plp.setPose  (new PlayerPose (getPx (), getPy (), getPa ()));
+        plp.setAlpha (getAlpha ());
+        return plp;
+    }
+}
@@ -51,7 +51,9 @@ public class PlayerMapData implements PlayerConstants {
     // The number of cells 
     private int data_count;
     // Cell occupancy value (empty = -1, unknown = 0, occupied = +1). 
-    private char[] data = new char[PLAYER_MAP_MAX_TILE_SIZE];
+    private char[] data = new char[0];
+    // Cell occupancy values as bytes, when decoded by the map interface
+    private byte[] cells;
 
 
     /**
@@ -125,9 +127,20 @@ public class PlayerMapData implements PlayerConstants {
         this.data_count = newData_count;
     }
     /**
+     * Get the cells as characters. When the tile was decoded as bytes,
+     * the characters are built on the first call. As in earlier versions,
+     * each character holds the unsigned value of its cell byte, so empty
+     * cells read '\u00FF'; cast them back to byte to get the signed
+     * occupancy values.
      * @return  Cell occupancy value (empty = -1, unknown = 0, occupied = +1). 
      **/
     public synchronized char[] getData () {
+        if (this.data == null) {
+            int n = Math.min (data_count, cells.length);
+            this.data = new char[n];
+            for (int i = 0; i < n; i++)
+                this.data[i] = (char)(cells[i] & 0xFF);
+        }
         return this.data;
     }
 
@@ -136,7 +149,33 @@ public class PlayerMapData implements PlayerConstants {
      *
      */
     public synchronized void setData (char[] newData) {
-        this.data = newData;
+        this.data  = newData;
+        this.cells = null;
+    }
+
+    /**
+     * Get the cells as bytes, row by row. This is how tiles are decoded by
+     * the map interface, unless they are written into a
+     * {@link PlayerMapGrid}, in which case the tile holds no cells.
+     * @return  Cell occupancy value (empty = -1, unknown = 0, occupied = +1),
+     * or null if the tile was written into a grid
+     **/
+    public synchronized byte[] getCells () {
+        if (this.cells == null && this.data != null && this.data.length > 0) {
+            this.cells = new byte[data.length];
+            for (int i = 0; i < data.length; i++)
+                this.cells[i] = (byte)data[i];
+        }
+        return this.cells;
+    }
+
+    /**
+     * @param newCells  Cell occupancy value (empty = -1, unknown = 0, occupied = +1). 
+     *
+     */
+    public synchronized void setCells (byte[] newCells) {
+        this.cells = newCells;
+        this.data  = (newCells == null) ? new char[0] : null;
     }
 
 }
\ No newline at end of file
@@ -47,7 +47,9 @@ public class PlayerMapDataVector implements PlayerConstants {
     // The number of line segments  
     private int segments_count;
     // Line segments 
-    private PlayerSegment[] segments = new PlayerSegment[PLAYER_MAP_MAX_SEGMENTS];
+    private PlayerSegment[] segments = new PlayerSegment[0];
+    // Line segments as end point coordinates, four floats per segment
+    private float[] coords;
 
 
     /**
@@ -124,6 +126,8 @@ public class PlayerMapDataVector implements PlayerConstants {
      * @return  Line segments 
      **/
     public synchronized PlayerSegment[] getSegments () {
+        if (segments == null)
+            buildSegments ();
         return this.segments;
     }
 
@@ -133,6 +137,55 @@ public class PlayerMapDataVector implements PlayerConstants {
      */
     public synchronized void setSegments (PlayerSegment[] newSegments) {
         this.segments = newSegments;
+        this.coords   = null;
     }
 
-}
\ No newline at end of file
+    /**
+     * Get the end points of the segments, four floats per segment. The
+     * array may be longer than needed; use getSegments_count () to bound
+     * it. If the segments were set as objects, the array is built from
+     * them on the first call.
+     * @return the coordinates (x0, y0, x1, y1, ...) [m]
+     **/
+    public synchronized float[] getCoords () {
+        if (coords == null)
+            buildCoords ();
+        return this.coords;
+    }
+
+    /**
+     * Set the segments as end point coordinates. The segment array is
+     * built from them on the first call to {@link #getSegments()}.
+     * @param newCoords the coordinates (x0, y0, x1, y1, ...) [m]
+     */
+    public synchronized void setCoords (float[] newCoords) {
+        this.coords   = newCoords;
+        this.segments = null;
+    }
+
+    private void buildSegments () {
+        PlayerSegment[] newSegments = new PlayerSegment[segments_count];
+        for (int i = 0; i < segments_count; i++) {
+            PlayerSegment seg = new PlayerSegment ();
+            seg.setX0 (coords[4 * i]);
+            seg.setY0 (coords[4 * i + 1]);
+            seg.setX1 (coords[4 * i + 2]);
+            seg.setY1 (coords[4 * i + 3]);
+            newSegments[i] = seg;
+        }
+        this.segments = newSegments;
+    }
+
+    private void buildCoords () {
+        int n = Math.min (segments_count, segments.length);
+        float[] newCoords = new float[4 * n];
+        for (int i = 0; i < n; i++) {
+            newCoords[4 * i]     = segments[i].getX0 ();
+            newCoords[4 * i + 1] = segments[i].getY0 ();
+            newCoords[4 * i + 2] = segments[i].getX1 ();
+            newCoords[4 * i + 3] = segments[i].getY1 ();
+        }
+        this.coords = newCoords;
+    }
+
+}
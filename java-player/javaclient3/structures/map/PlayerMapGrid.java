@@ -0,0 +1,274 @@
+/*
+ *  Player Java Client 3 - PlayerMapGrid.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+
+package javaclient3.structures.map;
+
+import java.nio.ByteBuffer;
+
+import javaclient3.structures.*;
+
+/**
+ * A whole occupancy grid map, assembled from the tiles delivered by a map
+ * device. Cells are stored row by row in a single byte array, with the
+ * occupancy values of the map interface (empty = -1, unknown = 0,
+ * occupied = +1); cell (0, 0) is the first one.
+ * <br><br>
+ * Tiles are written directly into the grid at their (col, row) offset as
+ * they are decoded, see
+ * {@link javaclient3.MapInterface#setGrid(PlayerMapGrid)}. A grid can also
+ * be backed by a buffer, such as a file mapped by a
+ * {@link javaclient3.MapCache}, in which case the cells are only copied to
+ * an array if {@link #getCells()} is called.
+ * @author agent
+ */
+public class PlayerMapGrid implements PlayerConstants {
+
+    // The size of the map [pixels]
+    private final int    width;
+    // The size of the map [pixels]
+    private final int    height;
+    // The scale of the map [m/pixel]
+    private final float  scale;
+    // The real-world pose of cell (0,0) in the map [m, m, rad]
+    private final double originX;
+    private final double originY;
+    private final double originA;
+    // Cell occupancy values, row by row, and a buffer over them
+    private volatile byte[]     cells;
+    private volatile ByteBuffer buffer;
+
+    /**
+     * Create an unknown grid with the layout of a map.
+     * @param info the map information
+     */
+    public PlayerMapGrid (PlayerMapInfo info) {
+        this (info.getWidth (), info.getHeight (), info.getScale (),
+              info.getOrigin ().getPx (), info.getOrigin ().getPy (),
+              info.getOrigin ().getPa ());
+    }
+
+    /**
+     * Create an unknown grid.
+     * @param newWidth the size of the map [pixels]
+     * @param newHeight the size of the map [pixels]
+     * @param newScale the scale of the map [m/pixel]
+     * @param x X of cell (0,0) [m]
+     * @param y Y of cell (0,0) [m]
+     * @param a orientation of the map [rad]
+     */
+    public PlayerMapGrid (int newWidth, int newHeight, float newScale,
+            double x, double y, double a) {
+        this (newWidth, newHeight, newScale, x, y, a,
+              new byte[newWidth * newHeight]);
+    }
+
+    /**
+     * Create a grid over existing cells.
+     * @param newWidth the size of the map [pixels]
+     * @param newHeight the size of the map [pixels]
+     * @param newScale the scale of the map [m/pixel]
+     * @param x X of cell (0,0) [m]
+     * @param y Y of cell (0,0) [m]
+     * @param a orientation of the map [rad]
+     * @param newCells occupancy values, row by row, at least
+     * width * height long
+     */
+    public PlayerMapGrid (int newWidth, int newHeight, float newScale,
+            double x, double y, double a, byte[] newCells) {
+        if (newWidth <= 0 || newHeight <= 0)
+            throw new IllegalArgumentException
+                ("Invalid map size: " + newWidth + "x" + newHeight);
+        if (newCells.length < newWidth * newHeight)
+            throw new IllegalArgumentException
+                ("Cell array too small for a " + newWidth + "x" + newHeight +
+                 " map");
+        this.width   = newWidth;
+        this.height  = newHeight;
+        this.scale   = newScale;
+        this.originX = x;
+        this.originY = y;
+        this.originA = a;
+        this.cells   = newCells;
+        this.buffer  = ByteBuffer.wrap (newCells);
+    }
+
+    /**
+     * Create a grid over a buffer of cells, e.g. a mapped file.
+     * @param newWidth the size of the map [pixels]
+     * @param newHeight the size of the map [pixels]
+     * @param newScale the scale of the map [m/pixel]
+     * @param x X of cell (0,0) [m]
+     * @param y Y of cell (0,0) [m]
+     * @param a orientation of the map [rad]
+     * @param newBuffer occupancy values, row by row, from the buffer
+     * position on; at least width * height remaining
+     */
+    public PlayerMapGrid (int newWidth, int newHeight, float newScale,
+            double x, double y, double a, ByteBuffer newBuffer) {
+        if (newWidth <= 0 || newHeight <= 0)
+            throw new IllegalArgumentException
+                ("Invalid map size: " + newWidth + "x" + newHeight);
+        if (newBuffer.remaining () < newWidth * newHeight)
+            throw new IllegalArgumentException
+                ("Cell buffer too small for a " + newWidth + "x" + newHeight +
+                 " map");
+        this.width   = newWidth;
+        this.height  = newHeight;
+        this.scale   = newScale;
+        this.originX = x;
+        this.originY = y;
+        this.originA = a;
+        this.buffer  = newBuffer.slice ();
+        this.buffer.limit (newWidth * newHeight);
+    }
+
+    /**
+     * @return the size of the map [pixels]
+     */
+    public int getWidth () {
+        return this.width;
+    }
+
+    /**
+     * @return the size of the map [pixels]
+     */
+    public int getHeight () {
+        return this.height;
+    }
+
+    /**
+     * @return the scale of the map [m/pixel]
+     */
+    public float getScale () {
+        return this.scale;
+    }
+
+    /**
+     * @return X of cell (0,0) [m]
+     */
+    public double getOriginX () {
+        return this.originX;
+    }
+
+    /**
+     * @return Y of cell (0,0) [m]
+     */
+    public double getOriginY () {
+        return this.originY;
+    }
+
+    /**
+     * @return orientation of the map [rad]
+     */
+    public double getOriginA () {
+        return this.originA;
+    }
+
+    /**
+     * Get the cells of the map. The array is shared with the grid, and is
+     * written to while tiles are being received. For a grid backed by a
+     * buffer, the cells are copied to an array on the first call, and the
+     * grid uses that array from then on.
+     * @return occupancy values, row by row
+     */
+    public synchronized byte[] getCells () {
+        if (this.cells == null) {
+            byte[] copy = new byte[width * height];
+            buffer.duplicate ().get (copy);
+            this.cells  = copy;
+            this.buffer = ByteBuffer.wrap (copy);
+        }
+        return this.cells;
+    }
+
+    /**
+     * Get a buffer over the cells of the map, without copying them.
+     * @return a buffer holding the occupancy values, row by row, from
+     * position 0
+     */
+    public synchronized ByteBuffer getBuffer () {
+        return this.buffer.duplicate ();
+    }
+
+    /**
+     * Get the occupancy value of a cell.
+     * @param col the column of the cell
+     * @param row the row of the cell
+     * @return the occupancy value, or 0 (unknown) outside the map
+     */
+    public byte getCell (int col, int row) {
+        if (col < 0 || row < 0 || col >= width || row >= height)
+            return 0;
+        byte[] c = this.cells;
+        return (c != null) ? c[row * width + col] :
+                             buffer.get (row * width + col);
+    }
+
+    /**
+     * Get the column of the cell holding a point. The map orientation is
+     * ignored, as by the map devices.
+     * @param x X of the point [m]
+     * @return the column, which may lie outside the map
+     */
+    public int getCol (double x) {
+        return (int)Math.floor ((x - originX) / scale);
+    }
+
+    /**
+     * Get the row of the cell holding a point.
+     * @param y Y of the point [m]
+     * @return the row, which may lie outside the map
+     */
+    public int getRow (double y) {
+        return (int)Math.floor ((y - originY) / scale);
+    }
+
+    /**
+     * @param col a column
+     * @return X of the centre of the cells of the column [m]
+     */
+    public double getX (int col) {
+        return originX + (col + 0.5) * scale;
+    }
+
+    /**
+     * @param row a row
+     * @return Y of the centre of the cells of the row [m]
+     */
+    public double getY (int row) {
+        return originY + (row + 0.5) * scale;
+    }
+
+    /**
+     * Check if a tile lies entirely within the map.
+     * @param col the tile origin [pixels]
+     * @param row the tile origin [pixels]
+     * @param tileWidth the size of the tile [pixels]
+     * @param tileHeight the size of the tile [pixels]
+     * @return true if the tile fits
+     */
+    public boolean contains (int col, int row, int tileWidth,
+            int tileHeight) {
+        return col >= 0 && row >= 0 && tileWidth >= 0 && tileHeight >= 0 &&
+               col + tileWidth <= width && row + tileHeight <= height;
+    }
+}
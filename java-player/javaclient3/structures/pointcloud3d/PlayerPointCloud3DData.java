@@ -22,12 +22,24 @@
 
 package javaclient3.structures.pointcloud3d;
 
+import java.nio.ByteBuffer;
+
 import javaclient3.structures.*;
+import javaclient3.xdr.XdrBufferPool;
 
 /**
  * Data: Get cloud (PLAYER_POINTCLOUD3D_DATA_STATE).
  * <br>
  * The basic 3dcloudpoint data packet.
+ * <br><br>
+ * When the pointcloud3d interface runs in lazy decoding mode, the points 
+ * are kept as a raw XDR payload and can be read through a 
+ * {@link PlayerPointCloud3DElementView} without creating any objects.
+ * <br><br>
+ * Points are otherwise decoded in bulk into a structure of arrays:
+ * {@link #getXyz()} holds the coordinates and {@link #getRgba()} the
+ * packed colors. The PlayerPointCloud3DElement array returned by
+ * {@link #getPoints()} is only built from them when first requested.
  * @author Radu Bogdan Rusu
  * @version
  * <ul>
@@ -37,7 +49,21 @@ import javaclient3.structures.*;
 public class PlayerPointCloud3DData implements PlayerConstants {
 
 	int points_count;
-	PlayerPointCloud3DElement[] points = new PlayerPointCloud3DElement[PLAYER_POINTCLOUD3D_MAX_POINTS];
+	PlayerPointCloud3DElement[] points = new PlayerPointCloud3DElement[0];
+
+    // Coordinates of the points (x0, y0, z0, x1, ...) [m]
+    private float[]       xyz;
+    // Colors of the points, packed as 0xRRGGBBAA
+    private int[]         rgba;
+
+    // Raw XDR payload holding the undecoded points (lazy decoding mode)
+    private byte[]        payload;
+    // Position of the first element inside the payload [bytes]
+    private int           payloadOffset;
+    // Pool the payload buffer is released to
+    private XdrBufferPool payloadPool;
+    // Whether the points came from a raw payload
+    private boolean       fromPayload;
 
     /**
      * @return 
@@ -56,8 +82,14 @@ public class PlayerPointCloud3DData implements PlayerConstants {
     
     /**
      * @return 
+     * @throws IllegalStateException if the payload was released before
+     * the points were decoded
      **/
     public synchronized PlayerPointCloud3DElement[] getPoints () {
+        if (points == null && xyz != null)
+            buildPoints ();
+        else if (points == null && fromPayload)
+            decodePoints ();
         return this.points;
     }
 
@@ -66,6 +98,171 @@ public class PlayerPointCloud3DData implements PlayerConstants {
      *
      */
     public synchronized void setPoints (PlayerPointCloud3DElement[] newPoints) {
-        this.points = newPoints;
+        this.points      = newPoints;
+        this.fromPayload = false;
+        this.xyz         = null;
+        this.rgba        = null;
+    }
+
+    /**
+     * Get the coordinates of the points, three floats per point. The array 
+     * may be longer than needed; use getPoints_count () to bound it.
+     * @return the coordinates (x0, y0, z0, x1, ...) [m], or null if the 
+     * points were set as objects
+     * @throws IllegalStateException if the payload was released before
+     * the arrays were decoded
+     */
+    public synchronized float[] getXyz () {
+        if (xyz == null && fromPayload)
+            decodeArrays ();
+        return this.xyz;
+    }
+
+    /**
+     * Get the colors of the points, packed as 0xRRGGBBAA. The array may be 
+     * longer than needed; use getPoints_count () to bound it.
+     * @return the colors, or null if the points were set as objects
+     * @throws IllegalStateException if the payload was released before
+     * the arrays were decoded
+     */
+    public synchronized int[] getRgba () {
+        if (rgba == null && fromPayload)
+            decodeArrays ();
+        return this.rgba;
+    }
+
+    /**
+     * Set the points as a structure of arrays. The element array is built 
+     * from them on the first call to {@link #getPoints()}.
+     * @param newXyz coordinates (x0, y0, z0, x1, ...) [m]
+     * @param newRgba colors, packed as 0xRRGGBBAA
+     */
+    public synchronized void setArrays (float[] newXyz, int[] newRgba) {
+        this.xyz         = newXyz;
+        this.rgba        = newRgba;
+        this.points      = null;
+        this.fromPayload = false;
+    }
+
+    /**
+     * Decode XDR encoded point cloud elements into a structure of arrays.
+     * @param buffer buffer holding the encoded elements
+     * @param offset position of the first element [bytes]
+     * @param count number of elements
+     * @param newXyz receives the coordinates, at least 3 * count long
+     * @param newRgba receives the packed colors, at least count long
+     */
+    public static void decode (ByteBuffer buffer, int offset, int count,
+            float[] newXyz, int[] newRgba) {
+        int o = offset;
+        for (int i = 0, j = 0; i < count; i++, j += 3, o += PlayerPointCloud3DElementView.SIZE) {
+            newXyz[j]     = buffer.getFloat (o);
+            newXyz[j + 1] = buffer.getFloat (o + 4);
+            newXyz[j + 2] = buffer.getFloat (o + 8);
+            newRgba[i]    = ((buffer.getInt (o + 16) & 0xFF) << 24) |
+                            ((buffer.getInt (o + 20) & 0xFF) << 16) |
+                            ((buffer.getInt (o + 24) & 0xFF) << 8)  |
+                            (buffer.getInt (o + 12)  & 0xFF);
+        }
+    }
+
+    /**
+     * Attach the raw XDR payload holding the points. The points are only 
+     * materialized as objects on the first call to {@link #getPoints()}; 
+     * use {@link #newPointView()} to read them without creating objects.
+     * @param newPayload buffer holding the payload
+     * @param offset position of the first element inside the payload [bytes]
+     * @param pool the pool the buffer is released to, may be null
+     */
+    public synchronized void setPayload (byte[] newPayload, int offset, 
+            XdrBufferPool pool) {
+        release ();
+        this.payload       = newPayload;
+        this.payloadOffset = offset;
+        this.payloadPool   = pool;
+        this.fromPayload   = true;
+        this.points        = null;
+        this.xyz           = null;
+        this.rgba          = null;
+    }
+
+    /**
+     * Check if the structure still holds a raw payload.
+     * @return true if a payload is attached, false otherwise
+     */
+    public synchronized boolean hasPayload () {
+        return this.payload != null;
+    }
+
+    /**
+     * Create a view over the points held in the raw payload. The view is 
+     * positioned on the first element and is only valid until 
+     * {@link #release()} is called.
+     * @return a new PlayerPointCloud3DElementView over the payload
+     * @throws IllegalStateException if no raw payload is attached
+     */
+    public synchronized PlayerPointCloud3DElementView newPointView () {
+        if (payload == null)
+            throw new IllegalStateException ("No raw payload attached");
+        PlayerPointCloud3DElementView view = new PlayerPointCloud3DElementView ();
+        view.wrap (ByteBuffer.wrap (payload), payloadOffset, points_count);
+        return view;
+    }
+
+    /**
+     * Give the raw payload buffer back to its pool. If the points have not 
+     * been requested before the release they are no longer available 
+     * afterwards: their accessors throw IllegalStateException, and views 
+     * created over the payload become invalid.
+     */
+    public synchronized void release () {
+        if (payload != null && payloadPool != null)
+            payloadPool.release (payload);
+        this.payload     = null;
+        this.payloadPool = null;
+    }
+
+    private void decodePoints () {
+        PlayerPointCloud3DElementView view = newPointView ();
+        PlayerPointCloud3DElement[] elements = new PlayerPointCloud3DElement[view.getCount ()];
+        for (int i = 0; i < elements.length; i++) {
+            view.moveTo (i);
+            elements[i] = view.toElement ();
+        }
+        this.points = elements;
+    }
+
+    private void decodeArrays () {
+        if (payload == null)
+            throw new IllegalStateException ("Payload already released");
+        float[] newXyz  = new float[3 * points_count];
+        int[]   newRgba = new int[points_count];
+        decode (ByteBuffer.wrap (payload), payloadOffset, points_count,
+                newXyz, newRgba);
+        this.xyz  = newXyz;
+        this.rgba = newRgba;
+    }
+
+    private void buildPoints () {
+        PlayerPointCloud3DElement[] elements = new PlayerPointCloud3DElement[points_count];
+        for (int i = 0; i < points_count; i++) {
+            PlayerPoint3d point = new PlayerPoint3d ();
+            point.setPx (xyz[3 * i]);
+            point.setPy (xyz[3 * i + 1]);
+            point.setPz (xyz[3 * i + 2]);
+
+            int c = rgba[i];
+            PlayerColor color = new PlayerColor ();
+            color.setRed   ((byte)(c >> 24));
+            color.setGreen ((byte)(c >> 16));
+            color.setBlue  ((byte)(c >> 8));
+            color.setAlpha ((byte)c);
+
+            PlayerPointCloud3DElement element = new PlayerPointCloud3DElement ();
+            element.setPoint (point);
+            element.setColor (color);
+            elements[i] = element;
+        }
+        this.points = elements;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+/*
+ *  Player Java Client 3 - PlayerPointCloud3DElementView.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.structures.pointcloud3d;
+
+import javaclient3.structures.*;
+
+/**
+ * Read-only view over XDR encoded 3D pointcloud elements: a 3D position 
+ * followed by its color.
+ * @author agent
+ * @see PlayerPointCloud3DElement
+ */
+public class PlayerPointCloud3DElementView extends PlayerFlyweight {
+
+    /** Size of an encoded element: 3 floats and 4 XDR encoded bytes [bytes] */
+    public static final int SIZE = 12 + 16;
+
+    public int getSize () {
+        return SIZE;
+    }
+
+    /**
+     * @return X [m]
+     */
+    public float getPx () {
+        return buffer.getFloat (offset);
+    }
+
+    /**
+     * @return Y [m]
+     */
+    public float getPy () {
+        return buffer.getFloat (offset + 4);
+    }
+
+    /**
+     * @return Z [m]
+     */
+    public float getPz () {
+        return buffer.getFloat (offset + 8);
+    }
+
+    /**
+     * @return Alpha (transparency) channel
+     */
+    public int getAlpha () {
+        return (byte)buffer.getInt (offset + 12);
+    }
+
+    /**
+     * @return Red color channel
+     */
+    public int getRed () {
+        return (byte)buffer.getInt (offset + 16);
+    }
+
+    /**
+     * @return Green color channel
+     */
+    public int getGreen () {
+        return (byte)buffer.getInt (offset + 20);
+    }
+
+    /**
+     * @return Blue color channel
+     */
+    public int getBlue () {
+        return (byte)buffer.getInt (offset + 24);
+    }
+
+    /**
+     * Position a point view over the positions of the same elements as 
+     * this view.
+     * @param view the point view to position
+     * @return view
+     */
+    public PlayerPoint3dView pointView (PlayerPoint3dView view) {
+        view.wrap (buffer, base, stride, count);
+        view.moveTo (index);
+        return view;
+    }
+
+    /**
+     * Copy the current element into a regular structure.
+     * @return a new PlayerPointCloud3DElement holding the current element
+     */
+    public PlayerPointCloud3DElement toElement () {
+        PlayerPoint3d point = new PlayerPoint3d ();
+        point.setPx (getPx ());
+        point.setPy (getPy ());
+        point.setPz (getPz ());
+
+        PlayerColor color = new PlayerColor ();
+        color.setAlpha (getAlpha ());
+        color.setRed   (getRed   ());
+        color.setGreen (getGreen ());
+        color.setBlue  (getBlue  ());
+
+        PlayerPointCloud3DElement pt = new PlayerPointCloud3DElement ();
+        pt.setPoint (point);
+        pt.setColor (color);
+        return pt;
+    }
+}
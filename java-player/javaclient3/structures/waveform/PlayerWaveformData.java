@@ -43,7 +43,7 @@ public class PlayerWaveformData implements PlayerConstants {
     // Samples - the number of bytes of raw data 
     private int data_count;
     // data - an array of raw data 
-    private byte[] data = new byte[PLAYER_WAVEFORM_DATA_MAX];
+    private byte[] data = new byte[0];
 
 
     /**
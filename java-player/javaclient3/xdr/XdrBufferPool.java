@@ -0,0 +1,130 @@
+/*
+ *  Player Java Client 3 - XdrBufferPool.java
+ *  Copyright (C) 2026 agent
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * $Id$
+ *
+ */
+package javaclient3.xdr;
+
+/**
+ * A pool of byte buffers used to hold raw XDR payloads. Buffers are handed
+ * out in power-of-two size classes, so a buffer acquired for a payload can
+ * be released and reused for any later payload of up to the same size.
+ * <br><br>
+ * The pool is thread safe: buffers are usually acquired on the reading
+ * thread and released by whoever consumes the decoded data.
+ * @author agent
+ */
+public class XdrBufferPool {
+
+    // Smallest size class handed out by the pool (1 << MIN_SHIFT bytes)
+    private static final int MIN_SHIFT = 6;
+    // Largest size class handed out by the pool (1 << MAX_SHIFT bytes)
+    private static final int MAX_SHIFT = 30;
+
+    // Free buffers for each size class
+    private byte[][][] free = new byte[MAX_SHIFT + 1][][];
+    // Number of free buffers for each size class
+    private int[]      freeCount = new int[MAX_SHIFT + 1];
+    // Maximum number of free buffers kept for each size class
+    private int        maxPerClass;
+
+    /**
+     * Create a pool keeping at most four free buffers for each size class.
+     */
+    public XdrBufferPool () { this (4); }
+
+    /**
+     * Create a pool.
+     * @param maxPerClass maximum number of free buffers kept for each size
+     * class; buffers released beyond this limit are left to the garbage
+     * collector
+     */
+    public XdrBufferPool (int maxPerClass) {
+        if (maxPerClass < 1)
+            throw new IllegalArgumentException
+                ("maxPerClass must be positive: " + maxPerClass);
+        this.maxPerClass = maxPerClass;
+    }
+
+    /**
+     * Get a buffer of at least the given length. The content of the
+     * returned buffer is undefined.
+     * @param minLength minimum length of the buffer [bytes]
+     * @return a buffer whose length is a power of two, not smaller than
+     * minLength
+     */
+    public synchronized byte[] acquire (int minLength) {
+        int shift = sizeClass (minLength);
+        if (freeCount[shift] > 0) {
+            int n = --freeCount[shift];
+            byte[] buffer = free[shift][n];
+            free[shift][n] = null;
+            return buffer;
+        }
+        return new byte[1 << shift];
+    }
+
+    /**
+     * Give a buffer back to the pool. Buffers that were not handed out by
+     * a pool (i.e. whose length is not a valid size class) are ignored.
+     * The caller must not touch the buffer afterwards.
+     * @param buffer the buffer to release, may be null
+     */
+    public synchronized void release (byte[] buffer) {
+        if (buffer == null)
+            return;
+        int length = buffer.length;
+        if (length < (1 << MIN_SHIFT) || (length & (length - 1)) != 0)
+            return;
+        int shift = Integer.numberOfTrailingZeros (length);
+        if (shift > MAX_SHIFT || freeCount[shift] >= maxPerClass)
+            return;
+        if (free[shift] == null)
+            free[shift] = new byte[maxPerClass][];
+        free[shift][freeCount[shift]++] = buffer;
+    }
+
+    /**
+     * Drop all free buffers held by the pool.
+     */
+    public synchronized void clear () {
+        for (int i = 0; i < free.length; i++) {
+            free[i]      = null;
+            freeCount[i] = 0;
+        }
+    }
+
+    /**
+     * Compute the size class for a requested length.
+     * @param minLength requested length [bytes]
+     * @return the power of two of the smallest class holding minLength bytes
+     */
+    private static int sizeClass (int minLength) {
+        if (minLength < 0)
+            throw new IllegalArgumentException
+                ("Negative buffer length: " + minLength);
+        if (minLength <= (1 << MIN_SHIFT))
+            return MIN_SHIFT;
+        int shift = 32 - Integer.numberOfLeadingZeros (minLength - 1);
+        if (shift > MAX_SHIFT)
+            throw new IllegalArgumentException
+                ("Buffer length too large: " + minLength);
+        return shift;
+    }
+}